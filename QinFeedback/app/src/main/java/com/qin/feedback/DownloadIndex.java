@@ -0,0 +1,195 @@
+package com.qin.feedback;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of finished downloads (name, size, SHA-1), so the Shiurim
+ * list can show ✓ marks without touching storage on every page.
+ *
+ * Loaded once per process from download_index.json. The download path adds
+ * entries as files complete; {@link #reconcile} re-lists the directory on a
+ * background thread to catch files deleted or copied in by hand.
+ */
+class DownloadIndex {
+
+    static class Entry {
+        final String name;
+        final long size;
+        final String sha1;
+
+        Entry(String name, long size, String sha1) {
+            this.name = name;
+            this.size = size;
+            this.sha1 = sha1;
+        }
+    }
+
+    private static DownloadIndex instance;
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    static synchronized DownloadIndex get(Context context) {
+        if (instance == null) {
+            instance = new DownloadIndex(new File(context.getApplicationContext().getFilesDir(), "download_index.json"));
+        }
+        return instance;
+    }
+
+    private DownloadIndex(File file) {
+        this.file = file;
+        load();
+    }
+
+    /** Same meaning as {@link Downloader#isComplete}, answered from memory. */
+    synchronized boolean isComplete(String name, long expectedSize) {
+        Entry e = entries.get(name);
+        return e != null && (expectedSize < 0 || e.size == expectedSize);
+    }
+
+    synchronized Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /** Records a finished download. Hashes the file, so call it off the UI thread. */
+    void add(File f) throws IOException {
+        Entry entry = new Entry(f.getName(), f.length(), sha1(f));
+        synchronized (this) {
+            entries.put(entry.name, entry);
+            save();
+        }
+    }
+
+    /**
+     * Brings the index in line with what is actually in dir: drops entries
+     * whose file is gone, (re)hashes files that are new or changed size.
+     * Background thread only. Returns true if anything changed.
+     */
+    boolean reconcile(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) files = new File[0];
+
+        Set<String> onDisk = new HashSet<>();
+        List<File> toHash = new ArrayList<>();
+        synchronized (this) {
+            for (File f : files) {
+                String name = f.getName();
+                if (!f.isFile() || isPartial(name)) continue;
+                onDisk.add(name);
+                Entry e = entries.get(name);
+                if (e == null || e.size != f.length()) toHash.add(f);
+            }
+        }
+
+        boolean changed = false;
+        for (File f : toHash) {
+            try {
+                Entry entry = new Entry(f.getName(), f.length(), sha1(f));
+                synchronized (this) {
+                    entries.put(entry.name, entry);
+                }
+                changed = true;
+            } catch (IOException e) {
+                // Unreadable right now; the next reconcile tries again
+            }
+        }
+        synchronized (this) {
+            // onDisk is a snapshot from before hashing: a download that finished
+            // since then is in entries but not in it, so check the file itself
+            Iterator<String> it = entries.keySet().iterator();
+            while (it.hasNext()) {
+                String name = it.next();
+                if (!onDisk.contains(name) && !new File(dir, name).isFile()) {
+                    it.remove();
+                    changed = true;
+                }
+            }
+            if (changed) save();
+        }
+        return changed;
+    }
+
+    /** Download leftovers (see Downloader / SegmentedDownload), never listed as done. */
+    private static boolean isPartial(String name) {
+        return name.endsWith(".part") || name.endsWith(".etag") || name.endsWith(".segs");
+    }
+
+    static String sha1(File f) throws IOException {
+        InputStream is = new FileInputStream(f);
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[65536];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                md.update(buffer, 0, n);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : md.digest()) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            return hex.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            is.close();
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // PERSISTENCE
+    // ═══════════════════════════════════════════════════════════════════
+
+    private void load() {
+        if (!file.exists()) return;
+        try {
+            JSONArray array = new JSONArray(ApiClient.readFully(new FileInputStream(file)));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                Entry e = new Entry(o.getString("name"), o.getLong("size"), o.optString("sha1", null));
+                entries.put(e.name, e);
+            }
+        } catch (Exception e) {
+            entries.clear();  // Rebuilt by the next reconcile
+        }
+    }
+
+    private void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            JSONArray array = new JSONArray();
+            for (Entry e : entries.values()) {
+                JSONObject o = new JSONObject();
+                o.put("name", e.name);
+                o.put("size", e.size);
+                if (e.sha1 != null) o.put("sha1", e.sha1);
+                array.put(o);
+            }
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                fos.write(array.toString().getBytes("UTF-8"));
+            } finally {
+                fos.close();
+            }
+            if (!tmp.renameTo(file)) tmp.delete();
+        } catch (Exception e) {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.qin.feedback;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent list of files waiting to be downloaded by {@link DownloadService}.
+ *
+ * One instance per process, shared by the service and the activity, saved to
+ * download_queue.json on every state change so the queue survives the
+ * activity being recreated and the process being killed overnight. Finished
+ * items leave the queue; the file on disk is the record from then on.
+ */
+class DownloadQueue {
+
+    static final int STATE_QUEUED = 0;
+    static final int STATE_ACTIVE = 1;
+    static final int STATE_WAITING = 2;  // Failed, retrying after backoff
+    static final int STATE_FAILED = 3;   // Out of retries; picking the file again re-queues it
+
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long BACKOFF_BASE_MS = 30 * 1000;
+    private static final long BACKOFF_MAX_MS = 30 * 60 * 1000;
+
+    interface Listener {
+        void onQueueChanged();
+    }
+
+    static class Item {
+        final String name;
+        final String url;
+        final String destPath;
+        final long size;
+        int state = STATE_QUEUED;
+        int attempts = 0;
+        long nextAttemptAt = 0;
+        String error;
+        volatile int percent = 0;  // Not persisted
+
+        Item(String name, String url, String destPath, long size) {
+            this.name = name;
+            this.url = url;
+            this.destPath = destPath;
+            this.size = size;
+        }
+    }
+
+    private static DownloadQueue instance;
+
+    private final File file;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Item> items = new ArrayList<>();
+    private final List<Listener> listeners = new ArrayList<>();
+    private volatile String lastReport;  // Throughput of the last finished download, for tuning
+
+    static synchronized DownloadQueue get(Context context) {
+        if (instance == null) {
+            instance = new DownloadQueue(new File(context.getApplicationContext().getFilesDir(), "download_queue.json"));
+        }
+        return instance;
+    }
+
+    private DownloadQueue(File file) {
+        this.file = file;
+        load();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // QUEUE
+    // ═══════════════════════════════════════════════════════════════════
+
+    /** Adds a file, or re-queues it if it failed. Returns false if it is already pending. */
+    synchronized boolean enqueue(String name, String url, String destPath, long size) {
+        Item existing = find(name);
+        if (existing != null) {
+            if (existing.state != STATE_FAILED) return false;
+            items.remove(existing);
+        }
+        items.add(new Item(name, url, destPath, size));
+        changed(true);
+        return true;
+    }
+
+    synchronized Item find(String name) {
+        for (Item item : items) {
+            if (item.name.equals(name)) return item;
+        }
+        return null;
+    }
+
+    /** Next item that may start now, in the order they were queued. */
+    synchronized Item nextReady(long now) {
+        for (Item item : items) {
+            if (item.state == STATE_QUEUED
+                    || (item.state == STATE_WAITING && item.nextAttemptAt <= now)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /** Earliest time a waiting item becomes ready, or 0 if none is waiting. */
+    synchronized long nextWakeUp() {
+        long earliest = 0;
+        for (Item item : items) {
+            if (item.state == STATE_WAITING && (earliest == 0 || item.nextAttemptAt < earliest)) {
+                earliest = item.nextAttemptAt;
+            }
+        }
+        return earliest;
+    }
+
+    synchronized int count(int state) {
+        int n = 0;
+        for (Item item : items) {
+            if (item.state == state) n++;
+        }
+        return n;
+    }
+
+    synchronized boolean hasPending() {
+        return count(STATE_QUEUED) + count(STATE_ACTIVE) + count(STATE_WAITING) > 0;
+    }
+
+    synchronized void markActive(Item item) {
+        item.state = STATE_ACTIVE;
+        item.percent = 0;
+        changed(true);
+    }
+
+    synchronized void markDone(Item item) {
+        items.remove(item);
+        changed(true);
+    }
+
+    /** Exponential backoff: 30 s, 1 min, 2 min ... capped at 30 min, then give up. */
+    synchronized void markFailed(Item item, String error, long now) {
+        item.attempts++;
+        item.error = error;
+        if (item.attempts >= MAX_ATTEMPTS) {
+            item.state = STATE_FAILED;
+        } else {
+            long delay = Math.min(BACKOFF_BASE_MS << (item.attempts - 1), BACKOFF_MAX_MS);
+            item.state = STATE_WAITING;
+            item.nextAttemptAt = now + delay;
+        }
+        changed(true);
+    }
+
+    /** Progress from a download thread; listeners hear about whole-percent steps only. */
+    void setProgress(Item item, long done, long total) {
+        if (total <= 0) return;
+        int percent = (int) (done * 100 / total);
+        if (percent != item.percent) {
+            item.percent = percent;
+            changed(false);
+        }
+    }
+
+    void setLastReport(String report) {
+        lastReport = report;
+        changed(false);
+    }
+
+    String getLastReport() {
+        return lastReport;
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // LISTENERS (main thread)
+    // ═══════════════════════════════════════════════════════════════════
+
+    void addListener(Listener listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    void removeListener(Listener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    private void changed(boolean persist) {
+        if (persist) save();
+        mainHandler.post(() -> {
+            List<Listener> copy;
+            synchronized (listeners) {
+                copy = new ArrayList<>(listeners);
+            }
+            for (Listener l : copy) {
+                l.onQueueChanged();
+            }
+        });
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // PERSISTENCE
+    // ═══════════════════════════════════════════════════════════════════
+
+    private void load() {
+        if (!file.exists()) return;
+        try {
+            JSONArray array = new JSONArray(ApiClient.readFully(new FileInputStream(file)));
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                Item item = new Item(o.getString("name"), o.getString("url"),
+                    o.getString("dest"), o.optLong("size", -1));
+                item.state = o.optInt("state", STATE_QUEUED);
+                item.attempts = o.optInt("attempts", 0);
+                item.nextAttemptAt = o.optLong("next_attempt_at", 0);
+                item.error = o.optString("error", null);
+                // Whatever was running when the process died starts again (and resumes its .part)
+                if (item.state == STATE_ACTIVE) item.state = STATE_QUEUED;
+                items.add(item);
+            }
+        } catch (Exception e) {
+            items.clear();
+        }
+    }
+
+    private void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            JSONArray array = new JSONArray();
+            for (Item item : items) {
+                JSONObject o = new JSONObject();
+                o.put("name", item.name);
+                o.put("url", item.url);
+                o.put("dest", item.destPath);
+                o.put("size", item.size);
+                o.put("state", item.state);
+                o.put("attempts", item.attempts);
+                o.put("next_attempt_at", item.nextAttemptAt);
+                if (item.error != null) o.put("error", item.error);
+                array.put(o);
+            }
+            FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                fos.write(array.toString().getBytes("UTF-8"));
+            } finally {
+                fos.close();
+            }
+            if (!tmp.renameTo(file)) tmp.delete();
+        } catch (Exception e) {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.qin.feedback;
+
+import android.app.AlarmManager;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Works through {@link DownloadQueue} in the background, a few files at a
+ * time, independent of which screen (if any) is showing.
+ *
+ * Runs in the foreground with a progress notification and holds wake and
+ * Wi-Fi locks while anything is downloading, so a series can be pulled
+ * overnight. Failed files are retried with backoff by the queue; the locks
+ * are let go during a backoff and a wake-up alarm restarts the pump, since
+ * a Handler delay stops counting while the CPU sleeps. The service stops
+ * itself once nothing is left.
+ */
+public class DownloadService extends Service {
+
+    static final String PREFS = "downloads";
+    static final String PREF_MAX_CONCURRENT = "max_concurrent";
+    static final String PREF_SEGMENTS = "segments";  // >1 = fetch big files as N parallel ranges
+    private static final int DEFAULT_MAX_CONCURRENT = 2;
+    private static final int DEFAULT_SEGMENTS = 1;
+
+    private static final int NOTIFICATION_ID = 1;
+    private static final String CHANNEL_ID = "downloads";
+    private static final long NOTIFY_INTERVAL_MS = 1000;  // Android drops updates posted faster
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<DownloadQueue.Item, Long> running = new HashMap<>();  // Item → scheduler request id
+
+    private DownloadQueue queue;
+    private DownloadIndex index;
+    private RequestScheduler scheduler;
+    private Downloader downloader;
+    private PowerManager.WakeLock wakeLock;
+    private WifiManager.WifiLock wifiLock;
+    private boolean foreground = false;
+    private long lastNotifyMs = 0;
+    private boolean notifyPending = false;
+
+    private final DownloadQueue.Listener queueListener = this::updateNotification;
+    private final Runnable notifyRunnable = this::postNotification;
+
+    /** Starts (or nudges) the service after something was queued. */
+    static void start(Context context) {
+        Intent intent = new Intent(context, DownloadService.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            context.startForegroundService(intent);
+        } else {
+            context.startService(intent);
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        queue = DownloadQueue.get(this);
+        index = DownloadIndex.get(this);
+        scheduler = new RequestScheduler(handler::post);
+        downloader = new Downloader(ApiClient.get());
+
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "QinBot:downloads");
+        wakeLock.setReferenceCounted(false);
+        WifiManager wm = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        wifiLock = wm.createWifiLock(WifiManager.WIFI_MODE_FULL, "QinBot:downloads");
+        wifiLock.setReferenceCounted(false);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            nm.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Downloads",
+                NotificationManager.IMPORTANCE_LOW));
+        }
+        queue.addListener(queueListener);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Must go foreground promptly after startForegroundService, even if there's nothing to do
+        startForeground(NOTIFICATION_ID, buildNotification());
+        foreground = true;
+        pump();
+        // Restarted after being killed: the queue on disk says what's left
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        queue.removeListener(queueListener);
+        handler.removeCallbacks(notifyRunnable);
+        cancelRetryAlarm();
+        scheduler.shutdown();  // In-flight downloads keep their .part files and resume next time
+        releaseLocks();
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // QUEUE PUMP (main thread)
+    // ═══════════════════════════════════════════════════════════════════
+
+    private void pump() {
+        cancelRetryAlarm();
+        int limit = maxConcurrent();
+        long now = System.currentTimeMillis();
+        while (running.size() < limit) {
+            DownloadQueue.Item item = queue.nextReady(now);
+            if (item == null) break;
+            startDownload(item);
+        }
+
+        if (!running.isEmpty()) {
+            acquireLocks();
+        } else {
+            // Nothing moving: don't hold the CPU/radio awake through a backoff wait
+            releaseLocks();
+        }
+
+        long wakeUp = queue.nextWakeUp();
+        if (wakeUp > 0) {
+            setRetryAlarm(Math.max(now, wakeUp));
+        } else if (running.isEmpty() && !queue.hasPending()) {
+            stopForeground(true);
+            foreground = false;
+            stopSelf();
+        }
+        updateNotification();
+    }
+
+    private void startDownload(final DownloadQueue.Item item) {
+        queue.markActive(item);
+        final File dest = new File(item.destPath);
+        final int segments = segments();
+        long id = scheduler.submit(RequestScheduler.PRIORITY_DOWNLOAD, RequestScheduler.GROUP_BACKGROUND, req -> {
+            try {
+                File dir = dest.getParentFile();
+                if (dir != null && !dir.exists()) dir.mkdirs();
+                if (!Downloader.isComplete(dest, item.size)) {
+                    Downloader.Report report = downloader.download(item.url, dest, item.size, segments,
+                        (done, total) -> queue.setProgress(item, done, total), req.call);
+                    queue.setLastReport(item.name + ": " + report.summary());
+                }
+                index.add(dest);  // Before markDone, so the list never shows it as neither queued nor ✓
+                return "";
+            } catch (IOException e) {
+                return e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+        }, (String error) -> {
+            running.remove(item);
+            if (error.isEmpty()) {
+                queue.markDone(item);
+            } else {
+                queue.markFailed(item, error, System.currentTimeMillis());
+            }
+            pump();
+        });
+        running.put(item, id);
+    }
+
+    private int maxConcurrent() {
+        SharedPreferences prefs = getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        int n = prefs.getInt(PREF_MAX_CONCURRENT, DEFAULT_MAX_CONCURRENT);
+        return Math.max(1, Math.min(n, 4));  // The scheduler only has 4 workers
+    }
+
+    private int segments() {
+        SharedPreferences prefs = getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        return Math.max(1, Math.min(prefs.getInt(PREF_SEGMENTS, DEFAULT_SEGMENTS), 8));
+    }
+
+    // Wakes the device for the next retry; onStartCommand() then pumps again
+    private void setRetryAlarm(long at) {
+        AlarmManager am = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, at, retryIntent());
+        } else {
+            am.setExact(AlarmManager.RTC_WAKEUP, at, retryIntent());
+        }
+    }
+
+    private void cancelRetryAlarm() {
+        AlarmManager am = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        am.cancel(retryIntent());
+    }
+
+    private PendingIntent retryIntent() {
+        Intent intent = new Intent(this, DownloadService.class);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return PendingIntent.getForegroundService(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        }
+        return PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    private void acquireLocks() {
+        if (!wakeLock.isHeld()) wakeLock.acquire();
+        if (!wifiLock.isHeld()) wifiLock.acquire();
+    }
+
+    private void releaseLocks() {
+        if (wakeLock.isHeld()) wakeLock.release();
+        if (wifiLock.isHeld()) wifiLock.release();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // NOTIFICATION
+    // ═══════════════════════════════════════════════════════════════════
+
+    // Progress arrives every percent per download: post at most once a second
+    private void updateNotification() {
+        if (!foreground || notifyPending) return;
+        notifyPending = true;
+        long wait = lastNotifyMs + NOTIFY_INTERVAL_MS - System.currentTimeMillis();
+        handler.postDelayed(notifyRunnable, Math.max(0, wait));
+    }
+
+    private void postNotification() {
+        notifyPending = false;
+        if (!foreground) return;
+        lastNotifyMs = System.currentTimeMillis();
+        NotificationManager nm = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        nm.notify(NOTIFICATION_ID, buildNotification());
+    }
+
+    @SuppressWarnings("deprecation")
+    private Notification buildNotification() {
+        Notification.Builder b = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+            ? new Notification.Builder(this, CHANNEL_ID)
+            : new Notification.Builder(this);
+        int active = queue.count(DownloadQueue.STATE_ACTIVE);
+        int waiting = queue.count(DownloadQueue.STATE_QUEUED) + queue.count(DownloadQueue.STATE_WAITING);
+        String text = active + " downloading, " + waiting + " waiting";
+        b.setSmallIcon(android.R.drawable.stat_sys_download)
+            .setContentTitle("📥 Shiurim")
+            .setContentText(text)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true);
+        if (running.size() == 1) {
+            DownloadQueue.Item item = running.keySet().iterator().next();
+            b.setProgress(100, item.percent, false);
+        }
+        return b.build();
+    }
+}
@@ -1,8 +1,15 @@
 package com.qin.feedback;
 
 import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
 import android.os.Bundle;
-import android.os.AsyncTask;
 import android.view.KeyEvent;
 import android.view.View;
 import android.widget.TextView;
@@ -10,28 +17,20 @@ import android.widget.ScrollView;
 import android.graphics.Color;
 import android.view.Gravity;
 import android.widget.LinearLayout;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
 import android.media.MediaRecorder;
 import android.speech.tts.TextToSpeech;
 import java.util.Locale;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.io.OutputStream;
-import java.io.InputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.FileOutputStream;
 import org.json.JSONObject;
 import org.json.JSONArray;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 import android.os.Environment;
 
 public class MainActivity extends Activity {
@@ -45,13 +44,45 @@ public class MainActivity extends Activity {
     private ScrollView responseScroll;
 
     private MediaRecorder recorder;
-    private boolean isRecording = false;
+    private volatile boolean isRecording = false;  // Also read by the profile probe
     private String audioFilePath;
+    private String audioContentType;
     private String lastTranscript = "";
     private static final int MAX_RECORDING_SECONDS = 30;
+
+    // Pipelined upload: stream the take to /audio while still recording (raw
+    // AMR / ADTS profiles), so the bridge can start decoding before the user stops
+    private static final boolean PIPELINED_UPLOAD = true;
+    private LiveAudioUpload liveUpload;
+
+    // Codec and bitrate for takes, negotiated with the bridge's /health
+    private static final String PREFS = "recording";
+    private static final String PREF_PROFILE = "profile";
+    private static final String PREF_OFFERED = "offered";  // The bridge's list the profile was chosen from
+    private RecordingProfile recordingProfile;
+    private RecordingProfile nextProfile;  // Negotiated; takes effect at the next voice prompt
+    private boolean negotiating = false;   // Profile probe running: no warm recorder meanwhile
+    private String probedOffered;          // Offered list already probed this launch
+    private final Object micLock = new Object();  // One MediaRecorder prepares at a time
+
+    // Voice activity detection: stop on a pause, and leave silence out of the upload
+    private static final boolean VOICE_ACTIVITY_DETECTION = true;
+    private static final int VAD_POLL_MS = 50;
+    private VoiceActivityDetector vad;
+    private long recordingStartedAt;
+    private final Runnable vadPoll = this::pollVoiceActivity;
+
+    // "2=Add" parts: recorded to separate files and transcribed in parallel
+    private final TranscriptJoiner appendParts = new TranscriptJoiner();
+    private final Map<Integer, Long> appendRequests = new HashMap<>();  // Part index → scheduler request
+    private File appendFile;             // Part being recorded
+    private int appendIndex = -1;
+    private LiveAudioUpload appendUpload;
+    private boolean sendWhenTranscribed = false;  // 1 pressed while parts were still out
     
     // Text-to-Speech
     private TextToSpeech tts;
+    private SpeechQueue speech;  // Sentence-at-a-time playback with skip/resume
     private boolean ttsReady = false;
     private boolean ttsEnabled = true;  // Toggle with * key
 
@@ -64,13 +95,28 @@ public class MainActivity extends Activity {
     private static final int STATE_RESPONSE = 5;  // New: viewing response with dynamic options
     private static final int STATE_RECORDING_APPEND = 6;  // Recording to append to existing transcript
     private static final int STATE_DOWNLOAD_LIST = 7;     // Viewing downloadable files
-    private static final int STATE_DOWNLOADING = 8;        // Download in progress
+    private static final int STATE_DOWNLOADING = 8;        // File list loading (downloads themselves run in DownloadService)
+    private static final int STATE_TRACE_STATS = 9;        // Hidden latency screen (long-press # on the menu)
+    private static final int STATE_PLAYER = 10;            // Playing a shiur in-app
     private int currentState = STATE_MENU;
     
     // Download state
-    private List<JSONObject> downloadFileList = new ArrayList<>();
-    private int downloadPage = 0;
     private static final int FILES_PER_PAGE = 9;
+    private FileListing fileListing = new FileListing(FILES_PER_PAGE);
+    private final Pager downloadPager = new Pager(FILES_PER_PAGE);
+    private boolean digitLongPressed = false;  // In the list: tap a number = play, hold = download
+
+    // In-app playback: shiurim not downloaded are streamed through a local proxy with a byte-range cache
+    private static final long START_BUFFER_BYTES = 96 * 1024;  // ~6 s at 128 kbps, buffered before playing
+    private static final int SEEK_STEP_MS = 30000;
+    private static final String PLAYBACK_PREFS = "playback";   // path → resume position
+    private RangeCache streamCache;
+    private StreamProxy streamProxy;
+    private MediaPlayer player;
+    private RemoteFile playing;
+    private boolean playerPrepared = false;
+    private int playerTicks = 0;
+    private final Runnable playerTick = this::updatePlayer;
 
     // Server
     private static final String SERVER_BASE = "https://qin.mordechaipotash.com";
@@ -79,29 +125,68 @@ public class MainActivity extends Activity {
     private static final String AUDIO_URL = SERVER_BASE + "/audio";
     private static final String CHAT_URL = SERVER_BASE + "/chat";
     private static final String FILES_URL = SERVER_BASE + "/files";
+    private static final String BATCH_URL = SERVER_BASE + "/batch";
+    private static final String HEALTH_URL = SERVER_BASE + "/health";
 
     // Menu data (initial menu from server)
     private Map<String, MenuItem> menuItems = new HashMap<>();
+    private MenuCache menuCache;
     
     // Dynamic options (parsed from response)
     private Map<String, String> dynamicOptions = new HashMap<>();
     private boolean hasDynamicOptions = false;
     private int rerollCount = 0;  // Track re-roll rounds for 20-questions escalation
     
+    private final ApiClient api = ApiClient.get();
+    private DownloadQueue downloadQueue;
+    private DownloadIndex downloadIndex;  // Finished downloads, so paging the list never hits storage
+    // Repaints the file list as queued downloads progress
+    private final DownloadQueue.Listener downloadListener = () -> {
+        if (currentState == STATE_DOWNLOAD_LIST) showDownloadPage();
+    };
+
+    // Opt-in: speculatively fetch the top follow-up options in the background
+    private static final boolean PREFETCH_OPTIONS = false;
+    private PrefetchEngine prefetch;
+
+    // Recent /action replies, reused within the TTL the bridge sends with each one
+    private final ResponseCache actionCache = new ResponseCache();
+    private int responseSeq = 0;  // Bumped per displayed response, so late refreshes can tell if it's still on screen
+
+    // All network calls go through here, so leaving a screen can cancel them
+    private RequestScheduler scheduler;
+
+    // Per-stage timings from pressing 1 (stop recording) to TTS starting
+    private InteractionTracer tracer;
+    private boolean poundLongPressed = false;
+
+    // Notes, reminders and takes that couldn't be sent; replayed when the network returns
+    private Outbox outbox;
+    private final Runnable outboxRetry = this::replayOutbox;
+    private static final String SAVED_OFFLINE = "📥 Saved offline - will send when back online";
+
+    // Registered here, not in the manifest: CONNECTIVITY_ACTION isn't delivered
+    // to manifest receivers on Android 7+
+    private final BroadcastReceiver connectivityReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            replayOutbox();
+        }
+    };
+
     private String pendingAction = null;
     private String voicePrompt = null;
 
-    // Pattern to match [1] Option text, [2] Another option, etc.
-    // Matches both [1] Option and 1. Option formats
-    private static final Pattern OPTION_PATTERN = Pattern.compile("(?:^|\\n)\\s*(?:\\[(\\d)\\]|(\\d)\\.)\\s*([^\\n\\[]+?)(?=\\n|$)", Pattern.MULTILINE);
+    // Built and prepare()d while the voice prompt is showing, so pressing 1 only has to start() it
+    private MediaRecorder warmRecorder = null;
+    private volatile long lastPreconnectAt = 0;  // Cleared by the worker if the warm-up failed
+    private static final long PRECONNECT_INTERVAL_MS = 20000;  // A pooled socket this fresh is still open
+
+    // Finds [1] Option / 1. Option lines and cleans text for speech (UI thread only)
+    private final OptionScanner optionScanner = new OptionScanner();
     private static final Pattern BACK_PATTERN = Pattern.compile("\\[0\\].*(?:back|menu|done|exit|cancel)", Pattern.CASE_INSENSITIVE);
 
-    private static class MenuItem {
-        String label;
-        String type;
-        String command;
-        String prompt;
-    }
+    private int streamSpokenSentences = 0;  // Sentences of the in-flight reply already queued to TTS
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -174,79 +259,73 @@ public class MainActivity extends Activity {
         layout.addView(responseScroll);
 
         setContentView(layout);
-        audioFilePath = getFilesDir().getAbsolutePath() + "/voice.3gp";
+        RecordingProfile savedProfile = RecordingProfile.forId(
+            getSharedPreferences(PREFS, MODE_PRIVATE).getString(PREF_PROFILE, null));
+        useProfile(savedProfile != null ? savedProfile : RecordingProfile.AMR_NB);
 
         // Initialize Text-to-Speech
         tts = new TextToSpeech(this, status -> {
             if (status == TextToSpeech.SUCCESS) {
                 tts.setLanguage(Locale.US);
                 tts.setSpeechRate(1.1f);  // Slightly faster
+                speech = new SpeechQueue(tts);
+                speech.setOnFirstSentence(() -> tracer.mark(InteractionTracer.TTS_START));
                 ttsReady = true;
             }
         });
 
+        scheduler = new RequestScheduler(this::runOnUiThread);
+        tracer = new InteractionTracer(getFilesDir());
+        outbox = Outbox.get(getFilesDir());
+        downloadQueue = DownloadQueue.get(this);
+        downloadIndex = DownloadIndex.get(this);
+        downloadQueue.addListener(downloadListener);
+        if (downloadQueue.hasPending()) {
+            DownloadService.start(this);  // Pick up where a killed process left off
+        }
+        if (PREFETCH_OPTIONS) {
+            prefetch = new PrefetchEngine(api, scheduler, CHAT_URL);
+        }
+
+        // Last good menu from disk first, so there is no "Loading..." wait
+        menuCache = new MenuCache(getFilesDir());
+        String cachedMenu = menuCache.load();
+        if (cachedMenu == null || !parseMenu(cachedMenu)) {
+            setupDefaultMenu();
+        }
+        showMainMenu();
+
         loadMenu();
+        // Fires once on registration too, so anything saved last time goes out now
+        registerReceiver(connectivityReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
     }
 
+    // Revalidates the cached menu; the screen only changes if the server's copy did
     private void loadMenu() {
-        new AsyncTask<Void, Void, String>() {
-            @Override
-            protected String doInBackground(Void... params) {
-                try {
-                    URL url = new URL(MENU_URL);
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    conn.setConnectTimeout(15000);
-                    conn.setReadTimeout(5000);
-
-                    if (conn.getResponseCode() == 200) {
-                        BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(conn.getInputStream()));
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            sb.append(line);
-                        }
-                        reader.close();
-                        return sb.toString();
-                    }
-                } catch (Exception e) {}
-                return null;
+        final String etag = menuCache.getEtag();
+        scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_BACKGROUND, req -> {
+            try {
+                return api.getIfNoneMatch(MENU_URL, etag, ApiClient.READ_TIMEOUT_SHORT, req.call);
+            } catch (Exception e) {
+                return null;  // Offline: keep showing the cached menu
             }
-
-            @Override
-            protected void onPostExecute(String result) {
-                if (result != null) {
-                    parseMenu(result);
-                } else {
-                    setupDefaultMenu();
-                    showMainMenu();
-                }
+        }, (ApiClient.Response resp) -> {
+            if (resp == null) return;  // Offline: keep showing the cached menu
+            replayOutbox();  // The bridge is reachable again
+            if (!resp.ok()) return;  // 304 or error
+            if (parseMenu(resp.body)) {
+                menuCache.save(resp.body, resp.etag);
+                if (currentState == STATE_MENU) showMainMenu();
             }
-        }.execute();
+        });
     }
 
-    private void parseMenu(String json) {
-        try {
-            JSONObject data = new JSONObject(json);
-            JSONObject items = data.getJSONObject("items");
-            
-            Iterator<String> keys = items.keys();
-            while (keys.hasNext()) {
-                String key = keys.next();
-                JSONObject item = items.getJSONObject(key);
-                
-                MenuItem mi = new MenuItem();
-                mi.label = item.optString("label", "Action " + key);
-                mi.type = item.optString("type", "instant");
-                mi.command = item.optString("command", null);
-                mi.prompt = item.optString("prompt", null);
-                menuItems.put(key, mi);
-            }
-            showMainMenu();
-        } catch (Exception e) {
-            setupDefaultMenu();
-            showMainMenu();
-        }
+    private boolean parseMenu(String json) {
+        Map<String, MenuItem> parsed = MenuItem.parseMenu(json);
+        if (parsed == null) return false;
+        // Swap in whole, so items the server dropped disappear too
+        menuItems = parsed;
+        return true;
     }
 
     private void setupDefaultMenu() {
@@ -269,6 +348,7 @@ public class MainActivity extends Activity {
 
     private void showMainMenu() {
         stopSpeaking();  // Stop any TTS when returning to menu
+        if (prefetch != null) prefetch.cancelAll();
         StringBuilder sb = new StringBuilder();
         
         // Fixed items first (1-3)
@@ -285,6 +365,10 @@ public class MainActivity extends Activity {
             }
         }
         sb.append("0: Exit");
+        int waiting = outbox.size();
+        if (waiting > 0) {
+            sb.append("\n📥 ").append(waiting).append(" waiting to send");
+        }
         
         // Restore header elements
         String ttsStatus = ttsEnabled ? "🔊" : "🔇";
@@ -308,14 +392,26 @@ public class MainActivity extends Activity {
         // Global: 0 or Back always goes back/exits
         if (key.equals("0") || keyCode == KeyEvent.KEYCODE_BACK) {
             if (isRecording) stopRecording();
+            releaseWarmRecorder();
+            cancelLiveUpload();
+            // Whatever this screen was waiting for is abandoned
+            scheduler.cancelGroup(RequestScheduler.GROUP_UI);
             
+            if (currentState == STATE_PLAYER) {
+                // Stop (the position is kept for next time) and go back to the list
+                stopPlayback();
+                openDownloadPage();
+                return true;
+            }
+            if (currentState == STATE_RECORDING_APPEND) {
+                // Cancel this part, return to confirm with the transcript so far
+                dropAppendPart();
+                showConfirm();
+                return true;
+            }
+            clearAppendParts();
             if (currentState == STATE_MENU) {
                 finish();
-            } else if (currentState == STATE_RECORDING_APPEND) {
-                // Cancel append, return to confirm with existing transcript
-                statusText.setText("1=Send  2=Add  3=Redo  0=Cancel");
-                statusText.setTextColor(Color.CYAN);
-                currentState = STATE_CONFIRM;
             } else if (currentState == STATE_RESPONSE && hasDynamicOptions && dynamicOptions.containsKey("0")) {
                 // [0] ← Back in dynamic options means go to main menu
                 showMainMenu();
@@ -325,6 +421,24 @@ public class MainActivity extends Activity {
             return true;
         }
 
+        // # on the menu: short press = Shiurim (on key up), long press = latency stats
+        if (keyCode == KeyEvent.KEYCODE_POUND && currentState == STATE_MENU) {
+            if (event.getRepeatCount() == 0) {
+                event.startTracking();
+                poundLongPressed = false;
+            }
+            return true;
+        }
+
+        // Shiurim list: a number plays (on key up), holding it downloads
+        if (currentState == STATE_DOWNLOAD_LIST && key.length() == 1 && Character.isDigit(key.charAt(0))) {
+            if (event.getRepeatCount() == 0) {
+                event.startTracking();
+                digitLongPressed = false;
+            }
+            return true;
+        }
+
         // Handle based on state
         switch (currentState) {
             case STATE_MENU:
@@ -341,11 +455,49 @@ public class MainActivity extends Activity {
                 return handleVoicePromptKey(key);
             case STATE_DOWNLOAD_LIST:
                 return handleDownloadListKey(key);
+            case STATE_PLAYER:
+                return handlePlayerKey(key);
         }
 
         return super.onKeyDown(keyCode, event);
     }
 
+    @Override
+    public boolean onKeyLongPress(int keyCode, KeyEvent event) {
+        if (keyCode == KeyEvent.KEYCODE_POUND && currentState == STATE_MENU) {
+            poundLongPressed = true;
+            showTraceStats();
+            return true;
+        }
+        if (currentState == STATE_DOWNLOAD_LIST) {
+            RemoteFile file = fileForKey(keyCodeToString(keyCode));
+            if (file != null) {
+                digitLongPressed = true;
+                downloadFile(file);
+                return true;
+            }
+        }
+        return super.onKeyLongPress(keyCode, event);
+    }
+
+    @Override
+    public boolean onKeyUp(int keyCode, KeyEvent event) {
+        if (keyCode == KeyEvent.KEYCODE_POUND && currentState == STATE_MENU
+                && event.isTracking() && !event.isCanceled() && !poundLongPressed) {
+            loadFileList();
+            return true;
+        }
+        if (currentState == STATE_DOWNLOAD_LIST && event.isTracking() && !event.isCanceled()
+                && !digitLongPressed) {
+            RemoteFile file = fileForKey(keyCodeToString(keyCode));
+            if (file != null) {
+                playFile(file);
+                return true;
+            }
+        }
+        return super.onKeyUp(keyCode, event);
+    }
+
     private String keyCodeToString(int keyCode) {
         if (keyCode >= KeyEvent.KEYCODE_0 && keyCode <= KeyEvent.KEYCODE_9) {
             return String.valueOf(keyCode - KeyEvent.KEYCODE_0);
@@ -372,12 +524,6 @@ public class MainActivity extends Activity {
             return true;
         }
         
-        // # key = Download Shiurim
-        if (key.equals("#")) {
-            loadFileList();
-            return true;
-        }
-        
         // FIXED ITEMS (1-3)
         if (key.equals("1")) {
             // Voice - go to voice input
@@ -387,6 +533,7 @@ public class MainActivity extends Activity {
             statusText.setTextColor(Color.CYAN);
             currentState = STATE_VOICE_PROMPT;
             pendingAction = "chat";
+            warmUpVoice();
             return true;
         }
         if (key.equals("2")) {
@@ -425,6 +572,7 @@ public class MainActivity extends Activity {
                 }
                 statusText.setTextColor(Color.CYAN);
                 currentState = STATE_VOICE_PROMPT;
+                warmUpVoice();
             }
             return true;
         }
@@ -445,11 +593,13 @@ public class MainActivity extends Activity {
         // 5 key = VOICE INPUT (always available, like from main menu)
         if (key.equals("5")) {
             stopSpeaking();
+            if (prefetch != null) prefetch.cancelAll();
             menuText.setVisibility(View.GONE);
             statusText.setText("Press 1 to speak");
             statusText.setTextColor(Color.CYAN);
             currentState = STATE_VOICE_PROMPT;
             pendingAction = "chat";  // Free-form follow-up
+            warmUpVoice();
             return true;
         }
         
@@ -469,14 +619,11 @@ public class MainActivity extends Activity {
             return true;
         }
         
-        // 9 key = voice input in response context (legacy, same as 5)
+        // 9 key = skip to the next sentence (was a second voice key; 5 still is)
         if (key.equals("9")) {
-            stopSpeaking();
-            menuText.setVisibility(View.GONE);
-            statusText.setText("Press 1 to speak");
-            statusText.setTextColor(Color.CYAN);
-            currentState = STATE_VOICE_PROMPT;
-            pendingAction = "chat";  // Free-form follow-up
+            if (speech != null && speech.isSpeaking()) {
+                speech.skip();
+            }
             return true;
         }
         
@@ -494,11 +641,18 @@ public class MainActivity extends Activity {
             return true;
         }
         
-        // # key = repeat last response
+        // # key = pause / resume where it stopped / repeat once finished
         if (key.equals("#")) {
+            if (speech != null && speech.isSpeaking()) {
+                stopSpeaking();
+                return true;
+            }
+            ttsEnabled = true;  // Force enable for resume/repeat
+            if (speech != null && speech.resume()) {
+                return true;
+            }
             String text = responseText.getText().toString();
             if (!text.isEmpty()) {
-                ttsEnabled = true;  // Force enable for repeat
                 speakResponse(text);
             }
             return true;
@@ -534,13 +688,13 @@ public class MainActivity extends Activity {
     private boolean handleConfirmKey(String key) {
         if (key.equals("1")) {
             // SEND
-            if (!lastTranscript.isEmpty()) {
-                if (pendingAction != null && menuItems.containsKey(pendingAction)) {
-                    executeAction(pendingAction, lastTranscript);
-                } else {
-                    // Free-form chat
-                    sendChat(lastTranscript);
-                }
+            if (appendParts.pendingCount() > 0) {
+                // Parts still transcribing: send as soon as the last one is in
+                sendWhenTranscribed = true;
+                statusText.setText("⏳ Finishing transcription...");
+                statusText.setTextColor(Color.YELLOW);
+            } else {
+                sendTranscript();
             }
             return true;
         } else if (key.equals("2")) {
@@ -551,6 +705,7 @@ public class MainActivity extends Activity {
             return true;
         } else if (key.equals("3")) {
             // REDO - start fresh
+            clearAppendParts();
             lastTranscript = "";
             transcriptText.setText("");
             startRecording();
@@ -558,155 +713,196 @@ public class MainActivity extends Activity {
         }
         return false;
     }
-    
+
+    private void sendTranscript() {
+        sendWhenTranscribed = false;
+        lastTranscript = appendParts.join(lastTranscript, null);
+        clearAppendParts();
+        if (!lastTranscript.isEmpty()) {
+            if (pendingAction != null && menuItems.containsKey(pendingAction)) {
+                executeAction(pendingAction, lastTranscript);
+            } else {
+                // Free-form chat
+                sendChat(lastTranscript);
+            }
+        } else {
+            showConfirm();
+        }
+    }
+
+    private void showConfirm() {
+        int pending = appendParts.pendingCount();
+        transcriptText.setText("You: " + appendParts.join(lastTranscript, "…"));
+        statusText.setText(pending > 0 ? "1=Send  2=Add  3=Redo  0=Cancel  ⏳" + pending
+            : "1=Send  2=Add  3=Redo  0=Cancel");
+        statusText.setTextColor(Color.CYAN);
+        currentState = STATE_CONFIRM;
+    }
+
     private void startRecordingAppend() {
-        // Same as startRecording but will append to lastTranscript
+        // Each part records to its own file, so earlier parts can still be uploading
+        final int index = appendParts.add();
+        String ext = audioFilePath.substring(audioFilePath.lastIndexOf('.'));
+        appendFile = new File(getFilesDir(), "voice_add_" + index + ext);
+        appendIndex = index;
         try {
-            recorder = new MediaRecorder();
-            recorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-            recorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
-            recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
-            recorder.setOutputFile(audioFilePath);
-            recorder.setMaxDuration(MAX_RECORDING_SECONDS * 1000);
-
-            recorder.setOnInfoListener((mr, what, extra) -> {
-                if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED) {
-                    stopRecordingAndTranscribeAppend();
-                }
-            });
-
-            recorder.prepare();
+            appendFile.delete();
+            recorder = prepareRecorder(appendFile.getPath(), true);
             recorder.start();
             isRecording = true;
             currentState = STATE_RECORDING_APPEND;
+            startVoiceActivityDetection();
+            if (PIPELINED_UPLOAD && recordingProfile.isStreamable()) {
+                appendUpload = new LiveAudioUpload(appendFile, vad);
+                transcribePart(index, appendFile, vad, appendUpload);
+            }
 
-            statusText.setText("🎤 Adding... (1=stop)");
+            statusText.setText(VOICE_ACTIVITY_DETECTION ? "🎤 Adding... (pause or 1=stop)" : "🎤 Adding... (1=stop)");
             statusText.setTextColor(Color.MAGENTA);
         } catch (Exception e) {
+            releaseRecorder();
+            appendParts.set(appendParts.generation(), index, "");
             statusText.setText("Mic Error!");
             statusText.setTextColor(Color.RED);
             isRecording = false;
             // Return to confirm state
-            statusText.setText("1=Send  2=Add  3=Redo  0=Cancel");
-            statusText.setTextColor(Color.CYAN);
-            currentState = STATE_CONFIRM;
+            showConfirm();
         }
     }
     
+    // Back to confirm straight away: the part transcribes while the user reads, sends or adds more
     private void stopRecordingAndTranscribeAppend() {
         stopRecording();
-        statusText.setText("🔄 Transcribing...");
-        statusText.setTextColor(Color.YELLOW);
-        transcribeAudioAppend();
+        if (appendUpload != null) {
+            appendUpload.finish();  // Most of it is on the server already
+            appendUpload = null;
+        } else {
+            transcribePart(appendIndex, appendFile, vad, null);
+        }
+        showConfirm();
     }
-    
-    private void transcribeAudioAppend() {
-        new AsyncTask<Void, Void, String>() {
-            @Override
-            protected String doInBackground(Void... params) {
-                File audioFile = new File(audioFilePath);
-                if (!audioFile.exists() || audioFile.length() == 0) {
-                    return "ERROR:No audio";
-                }
 
-                HttpURLConnection conn = null;
-                FileInputStream fis = null;
-
-                try {
-                    URL url = new URL(AUDIO_URL);
-                    conn = (HttpURLConnection) url.openConnection();
-                    conn.setDoOutput(true);
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "audio/3gpp");
-                    conn.setRequestProperty("X-Transcribe-Only", "true");
-                    conn.setConnectTimeout(15000);
-                    conn.setReadTimeout(60000);
-
-                    OutputStream os = conn.getOutputStream();
-                    fis = new FileInputStream(audioFile);
-                    byte[] buffer = new byte[4096];
-                    int bytesRead;
-                    while ((bytesRead = fis.read(buffer)) != -1) {
-                        os.write(buffer, 0, bytesRead);
-                    }
-                    os.flush();
-                    os.close();
-
-                    if (conn.getResponseCode() == 200) {
-                        BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(conn.getInputStream()));
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            sb.append(line);
-                        }
-                        reader.close();
-
-                        JSONObject json = new JSONObject(sb.toString());
-                        return json.optString("transcript", "");
-                    } else {
-                        return "ERROR:Server " + conn.getResponseCode();
+    // Recording of the current part abandoned (0, or nothing said)
+    private void dropAppendPart() {
+        if (appendUpload != null) {
+            appendUpload.cancel();
+            appendUpload = null;
+        }
+        Long id = appendRequests.remove(appendIndex);
+        if (id != null) scheduler.cancel(id);
+        appendParts.set(appendParts.generation(), appendIndex, "");
+        appendFile.delete();
+    }
+
+    private void clearAppendParts() {
+        for (long id : appendRequests.values()) {
+            scheduler.cancel(id);
+        }
+        appendRequests.clear();
+        appendParts.clear();
+        sendWhenTranscribed = false;
+    }
+
+    /**
+     * Transcribes one "2=Add" part. Parts run in parallel on the background
+     * group (so leaving the confirm screen's key handling alone doesn't cancel
+     * them); their transcripts are joined in recording order by appendParts.
+     */
+    private void transcribePart(final int index, final File partFile, final VoiceActivityDetector partVad,
+                                final LiveAudioUpload live) {
+        final int generation = appendParts.generation();
+        long id = scheduler.submit(RequestScheduler.PRIORITY_VOICE, RequestScheduler.GROUP_BACKGROUND, req -> {
+            File audioFile = null;
+            try {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("X-Transcribe-Only", "true");
+                ApiClient.Response resp;
+                if (live != null) {
+                    req.onCancel(live::cancel);  // Stop tailing the file, not just the socket
+                    resp = api.postChunked(AUDIO_URL, audioContentType, headers,
+                        ApiClient.READ_TIMEOUT_AUDIO, live, req.call);
+                } else {
+                    if (!partFile.exists() || partFile.length() == 0) {
+                        return "ERROR:No audio";
                     }
-                } catch (Exception e) {
-                    return "ERROR:" + e.getMessage();
-                } finally {
-                    try {
-                        if (fis != null) fis.close();
-                        if (conn != null) conn.disconnect();
-                    } catch (IOException e) {}
+                    audioFile = speechOnly(partFile, partVad);
+                    resp = api.postFile(AUDIO_URL, audioFile, audioContentType,
+                        headers, ApiClient.READ_TIMEOUT_AUDIO, req.call);
                 }
-            }
 
-            @Override
-            protected void onPostExecute(String result) {
-                if (result.startsWith("ERROR:")) {
-                    statusText.setText(result.substring(6));
-                    statusText.setTextColor(Color.RED);
-                    // Return to confirm state after error
+                if (resp.ok()) {
+                    JSONObject json = new JSONObject(resp.body);
+                    return json.optString("transcript", "");
+                } else {
+                    return "ERROR:Server " + resp.code;
+                }
+            } catch (Exception e) {
+                return "ERROR:" + e.getMessage();
+            } finally {
+                if (audioFile != null && audioFile != partFile) audioFile.delete();
+            }
+        }, (String result) -> {
+            appendRequests.remove(index);
+            if (generation != appendParts.generation()) return;  // Redone or cancelled since
+            if (result.startsWith("ERROR:") && live != null && !live.isCancelled()) {
+                // Live path failed: upload the finished file instead (at stop, if still recording)
+                if (isRecording && appendIndex == index) {
+                    appendUpload = null;
+                } else {
+                    transcribePart(index, partFile, partVad, null);
+                }
+                return;
+            }
+            partFile.delete();
+            if (result.startsWith("ERROR:")) {
+                appendParts.set(generation, index, "");
+                statusText.setText("⚠️ Part " + (index + 1) + ": " + result.substring(6));
+                statusText.setTextColor(Color.RED);
+                if (sendWhenTranscribed && appendParts.pendingCount() == 0) {
+                    sendWhenTranscribed = false;  // Let the user see what's missing before sending
                     statusText.postDelayed(() -> {
-                        statusText.setText("1=Send  2=Add  3=Redo  0=Cancel");
-                        statusText.setTextColor(Color.CYAN);
-                        currentState = STATE_CONFIRM;
+                        if (currentState == STATE_CONFIRM) showConfirm();
                     }, 2000);
-                } else {
-                    // APPEND to existing transcript
-                    if (!result.isEmpty()) {
-                        lastTranscript = lastTranscript + " " + result;
-                    }
-                    transcriptText.setText("You: " + lastTranscript);
-                    statusText.setText("1=Send  2=Add  3=Redo  0=Cancel");
-                    statusText.setTextColor(Color.CYAN);
-                    currentState = STATE_CONFIRM;
                 }
+                return;
+            }
+            appendParts.set(generation, index, result);
+            if (sendWhenTranscribed && appendParts.pendingCount() == 0) {
+                sendTranscript();
+            } else if (currentState == STATE_CONFIRM && !sendWhenTranscribed) {
+                showConfirm();
+            } else if (currentState == STATE_RECORDING_APPEND) {
+                transcriptText.setText("You: " + appendParts.join(lastTranscript, "…"));
             }
-        }.execute();
+        });
+        appendRequests.put(index, id);
     }
 
     private void startRecording() {
         try {
-            recorder = new MediaRecorder();
-            recorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-            recorder.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
-            recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
-            recorder.setOutputFile(audioFilePath);
-            recorder.setMaxDuration(MAX_RECORDING_SECONDS * 1000);
-
-            recorder.setOnInfoListener((mr, what, extra) -> {
-                if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED) {
-                    stopRecordingAndTranscribe();
-                }
-            });
-
-            recorder.prepare();
+            if (warmRecorder != null) {
+                // Already prepared on the prompt; its (empty) output file is open, so don't delete it
+                recorder = warmRecorder;
+                warmRecorder = null;
+            } else {
+                new File(audioFilePath).delete();  // Live upload must not pick up a stale take
+                recorder = prepareRecorder(audioFilePath, false);
+            }
             recorder.start();
             isRecording = true;
             currentState = STATE_RECORDING;
+            startVoiceActivityDetection();
+            if (PIPELINED_UPLOAD && recordingProfile.isStreamable()) {
+                startLiveUpload();
+            }
 
-            statusText.setText("🎤 Recording... (1=stop)");
+            statusText.setText(VOICE_ACTIVITY_DETECTION ? "🎤 Recording... (pause or 1=stop)" : "🎤 Recording... (1=stop)");
             statusText.setTextColor(Color.RED);
             transcriptText.setText("");
             lastTranscript = "";
+            clearAppendParts();
         } catch (Exception e) {
+            releaseRecorder();
             statusText.setText("Mic Error!");
             statusText.setTextColor(Color.RED);
             isRecording = false;
@@ -714,262 +910,564 @@ public class MainActivity extends Activity {
         }
     }
 
-    private void stopRecording() {
+    // Configured and prepared, ready to start(); append takes stop into the append flow at the limit
+    private MediaRecorder prepareRecorder(String path, final boolean append) throws IOException {
+        synchronized (micLock) {
+            return prepareRecorderLocked(path, append);
+        }
+    }
+
+    private MediaRecorder prepareRecorderLocked(String path, final boolean append) throws IOException {
+        MediaRecorder r = new MediaRecorder();
+        try {
+            r.setAudioSource(MediaRecorder.AudioSource.MIC);
+            configureEncoder(r, recordingProfile);
+            r.setOutputFile(path);
+            r.setMaxDuration(MAX_RECORDING_SECONDS * 1000);
+
+            r.setOnInfoListener((mr, what, extra) -> {
+                if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED) {
+                    if (append) {
+                        stopRecordingAndTranscribeAppend();
+                    } else {
+                        stopRecordingAndTranscribe();
+                    }
+                }
+            });
+
+            r.prepare();
+            return r;
+        } catch (IOException | RuntimeException e) {
+            r.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Entering the voice prompt: prepare the recorder and open the connection
+     * to the bridge while the user reads it. MediaRecorder's setup is what
+     * clipped the first syllable, and the upload otherwise pays DNS + TCP +
+     * TLS on top of the transcription.
+     */
+    private void warmUpVoice() {
+        if (isRecording) return;
+        releaseWarmRecorder();
+        if (nextProfile != null) {
+            useProfile(nextProfile);
+            nextProfile = null;
+        }
+        new File(audioFilePath).delete();  // Live upload must not pick up a stale take
+        if (!negotiating) {  // Else the probe has the MIC; negotiateProfile() warms up after it
+            try {
+                warmRecorder = prepareRecorder(audioFilePath, false);
+            } catch (Exception e) {
+                warmRecorder = null;  // startRecording tries again cold and reports the error
+            }
+        }
+        preconnect();
+    }
+
+    // A small request to the same host leaves a live TLS socket in ApiClient's pool for /audio.
+    // The answer also lists the recording profiles the bridge prefers.
+    private void preconnect() {
+        long now = System.currentTimeMillis();
+        if (now - lastPreconnectAt < PRECONNECT_INTERVAL_MS) return;
+        lastPreconnectAt = now;
+        scheduler.submit(RequestScheduler.PRIORITY_VOICE, RequestScheduler.GROUP_BACKGROUND, req -> {
+            try {
+                ApiClient.Response resp = api.get(HEALTH_URL, ApiClient.READ_TIMEOUT_SHORT, req.call);
+                JSONArray offered = resp.ok() ? new JSONObject(resp.body).optJSONArray("audio_profiles") : null;
+                if (offered == null) return null;  // Older bridge: keep the current profile
+                List<String> ids = new ArrayList<>();
+                for (int i = 0; i < offered.length(); i++) {
+                    ids.add(offered.optString(i));
+                }
+                return ids;
+            } catch (Exception e) {
+                lastPreconnectAt = 0;  // Try again next time
+                return null;
+            }
+        }, (List<String> offered) -> {
+            if (offered != null) negotiateProfile(offered);
+        });
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // RECORDING PROFILES
+    // ═══════════════════════════════════════════════════════════════════
+
+    private void useProfile(RecordingProfile profile) {
+        recordingProfile = profile;
+        audioFilePath = getFilesDir().getAbsolutePath() + "/voice" + profile.extension;
+        audioContentType = profile.contentType;
+    }
+
+    /**
+     * Picks the first profile in the bridge's order that this phone can
+     * actually record. Encoder support varies by device, so each candidate is
+     * test-prepared on a worker, with the warm recorder released first: a
+     * second MIC recorder can fail to prepare on low-end phones. The result
+     * is kept until the bridge's list changes, unless a probe failed; that
+     * one is tried again at the next launch.
+     */
+    private void negotiateProfile(final List<String> offered) {
+        final SharedPreferences prefs = getSharedPreferences(PREFS, MODE_PRIVATE);
+        final String key = offered.toString();
+        if (negotiating || isRecording || key.equals(prefs.getString(PREF_OFFERED, null))
+                || key.equals(probedOffered)) {
+            return;
+        }
+        negotiating = true;
+        probedOffered = key;
+        releaseWarmRecorder();
+
+        final RecordingProfile current = recordingProfile;
+        final boolean[] clean = {true};  // Every probe before the chosen one passed
+        scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_BACKGROUND, req -> {
+            for (RecordingProfile p : RecordingProfile.candidates(offered, Build.VERSION.SDK_INT)) {
+                if (isRecording) return null;  // The user started talking: the MIC is theirs, probe later
+                if (p == current || canRecord(p)) return p;
+                clean[0] = false;
+            }
+            return RecordingProfile.AMR_NB;  // Nothing prepared: the fallback every bridge decodes
+        }, (RecordingProfile chosen) -> {
+            negotiating = false;
+            if (chosen == null) {
+                probedOffered = null;
+            } else {
+                SharedPreferences.Editor edit = prefs.edit().putString(PREF_PROFILE, chosen.id);
+                if (clean[0]) edit.putString(PREF_OFFERED, key);
+                edit.apply();
+                if (chosen != recordingProfile) {
+                    nextProfile = chosen;  // Picked up by warmUpVoice()
+                }
+            }
+            if (currentState == STATE_VOICE_PROMPT && !isRecording && warmRecorder == null) {
+                warmUpVoice();
+            }
+        });
+    }
+
+    // Worker thread
+    private boolean canRecord(RecordingProfile profile) {
+        File probe = new File(getCacheDir(), "probe" + profile.extension);
+        synchronized (micLock) {
+            MediaRecorder r = new MediaRecorder();
+            try {
+                r.setAudioSource(MediaRecorder.AudioSource.MIC);
+                configureEncoder(r, profile);
+                r.setOutputFile(probe.getPath());
+                r.prepare();
+                return true;
+            } catch (Exception e) {
+                return false;
+            } finally {
+                r.release();
+                probe.delete();
+            }
+        }
+    }
+
+    private static void configureEncoder(MediaRecorder r, RecordingProfile profile) {
+        if (RecordingProfile.CONTAINER_3GP.equals(profile.container)) {
+            r.setOutputFormat(MediaRecorder.OutputFormat.THREE_GPP);
+        } else if (RecordingProfile.CODEC_AMR_WB.equals(profile.codec)) {
+            r.setOutputFormat(MediaRecorder.OutputFormat.AMR_WB);
+        } else if (RecordingProfile.CODEC_AAC_LC.equals(profile.codec)) {
+            r.setOutputFormat(MediaRecorder.OutputFormat.AAC_ADTS);
+        } else {
+            r.setOutputFormat(MediaRecorder.OutputFormat.AMR_NB);
+        }
+        if (RecordingProfile.CODEC_AMR_WB.equals(profile.codec)) {
+            r.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_WB);
+        } else if (RecordingProfile.CODEC_AAC_LC.equals(profile.codec)) {
+            r.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
+        } else {
+            r.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB);
+        }
+        r.setAudioSamplingRate(profile.sampleRate);
+        r.setAudioEncodingBitRate(profile.bitRate);
+    }
+
+    private void startVoiceActivityDetection() {
+        if (!VOICE_ACTIVITY_DETECTION) {
+            vad = null;
+            return;
+        }
+        vad = new VoiceActivityDetector();
+        recordingStartedAt = System.currentTimeMillis();
+        statusText.postDelayed(vadPoll, VAD_POLL_MS);
+    }
+
+    private void pollVoiceActivity() {
+        if (!isRecording || recorder == null || vad == null) return;
+        try {
+            vad.addSample(System.currentTimeMillis() - recordingStartedAt, recorder.getMaxAmplitude());
+        } catch (RuntimeException e) {
+            return;  // Recorder already stopped underneath us
+        }
+        if (!vad.shouldStop()) {
+            statusText.postDelayed(vadPoll, VAD_POLL_MS);
+            return;
+        }
+
+        boolean append = currentState == STATE_RECORDING_APPEND;
+        if (vad.heardSpeech()) {
+            // The user paused: same as pressing 1
+            if (append) {
+                stopRecordingAndTranscribeAppend();
+            } else {
+                stopRecordingAndTranscribe();
+            }
+            return;
+        }
+        // Nothing said: no point spending an upload and a Whisper run on silence
+        stopRecording();
+        cancelLiveUpload();
+        statusText.setText("🤫 Didn't hear anything");
+        statusText.setTextColor(Color.YELLOW);
+        if (append) {
+            dropAppendPart();
+            currentState = STATE_CONFIRM;
+            statusText.postDelayed(() -> {
+                if (currentState == STATE_CONFIRM) showConfirm();
+            }, 2000);
+        } else {
+            showMainMenuDelayed();
+        }
+    }
+
+    // Runs on a worker: the take with leading and trailing silence cut out. Raw AMR
+    // only (3GP would need remuxing); the whole take if no speech was detected.
+    private File speechOnly(File take, VoiceActivityDetector takeVad) {
+        if (takeVad == null || !takeVad.heardSpeech() || !recordingProfile.isTrimmable()) return take;
+        String name = take.getName();
+        int dot = name.lastIndexOf('.');
+        File trimmed = new File(take.getParentFile(), name.substring(0, dot) + "_speech" + name.substring(dot));
+        try {
+            if (AmrFrames.trim(take, trimmed, takeVad.keepFromMs(), takeVad.keepUntilMs()) > AmrFrames.HEADER_WB.length) {
+                return trimmed;
+            }
+        } catch (IOException e) {
+            // Send it untrimmed
+        }
+        return take;
+    }
+
+    private void releaseWarmRecorder() {
+        if (warmRecorder != null) {
+            warmRecorder.release();
+            warmRecorder = null;
+        }
+    }
+
+    private void releaseRecorder() {
         if (recorder != null) {
-            try { recorder.stop(); } catch (Exception e) {}
             recorder.release();
             recorder = null;
         }
+    }
+
+    private void stopRecording() {
+        statusText.removeCallbacks(vadPoll);
+        if (recorder != null) {
+            try { recorder.stop(); } catch (Exception e) {}
+            releaseRecorder();
+        }
         isRecording = false;
     }
 
     private void stopRecordingAndTranscribe() {
+        tracer.begin();
         stopRecording();
+        tracer.mark(InteractionTracer.RECORDER_STOPPED);
         statusText.setText("🔄 Transcribing...");
         statusText.setTextColor(Color.YELLOW);
-        transcribeAudio();
+        if (liveUpload != null) {
+            // Most of the audio is already on the server; send the tail and wait
+            liveUpload.finish();
+        } else {
+            transcribeAudio();
+        }
     }
 
-    private void transcribeAudio() {
-        new AsyncTask<Void, Void, String>() {
-            @Override
-            protected String doInBackground(Void... params) {
-                File audioFile = new File(audioFilePath);
-                if (!audioFile.exists() || audioFile.length() == 0) {
-                    return "ERROR:No audio";
-                }
+    private void startLiveUpload() {
+        final LiveAudioUpload upload = new LiveAudioUpload(new File(audioFilePath), vad);
+        liveUpload = upload;
 
-                HttpURLConnection conn = null;
-                FileInputStream fis = null;
-
-                try {
-                    URL url = new URL(AUDIO_URL);
-                    conn = (HttpURLConnection) url.openConnection();
-                    conn.setDoOutput(true);
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "audio/3gpp");
-                    conn.setRequestProperty("X-Transcribe-Only", "true");
-                    conn.setConnectTimeout(15000);
-                    conn.setReadTimeout(60000);
-
-                    OutputStream os = conn.getOutputStream();
-                    fis = new FileInputStream(audioFile);
-                    byte[] buffer = new byte[4096];
-                    int bytesRead;
-                    while ((bytesRead = fis.read(buffer)) != -1) {
-                        os.write(buffer, 0, bytesRead);
-                    }
-                    os.flush();
-                    os.close();
-
-                    if (conn.getResponseCode() == 200) {
-                        BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(conn.getInputStream()));
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            sb.append(line);
-                        }
-                        reader.close();
-
-                        JSONObject json = new JSONObject(sb.toString());
-                        return json.optString("transcript", "(empty)");
-                    } else {
-                        return "ERROR:Server " + conn.getResponseCode();
-                    }
-                } catch (Exception e) {
-                    return "ERROR:" + e.getMessage();
-                } finally {
-                    try {
-                        if (fis != null) fis.close();
-                        if (conn != null) conn.disconnect();
-                    } catch (IOException e) {}
+        scheduler.submit(RequestScheduler.PRIORITY_VOICE, RequestScheduler.GROUP_UI, req -> {
+            req.onCancel(upload::cancel);  // Stop tailing the file, not just the socket
+            try {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("X-Transcribe-Only", "true");
+                ApiClient.Response resp = api.postChunked(AUDIO_URL, audioContentType,
+                    headers, ApiClient.READ_TIMEOUT_AUDIO, upload, req.call);
+
+                if (resp.ok()) {
+                    JSONObject json = new JSONObject(resp.body);
+                    tracer.setServerTranscribeMs(json.optLong("transcribe_ms", -1));
+                    return json.optString("transcript", "(empty)");
+                } else {
+                    return "ERROR:Server " + resp.code;
                 }
+            } catch (Exception e) {
+                return "ERROR:" + e.getMessage();
+            }
+        }, e -> "ERROR:" + e, (String result) -> {
+            if (upload.isCancelled() || liveUpload != upload) return;
+            liveUpload = null;
+            if (result.startsWith("ERROR:")) {
+                // Live path failed: fall back to a plain upload of the finished
+                // file (stopRecordingAndTranscribe does this if still recording)
+                if (!isRecording) transcribeAudio();
+                return;
             }
+            handleTranscript(result);
+        });
+    }
 
-            @Override
-            protected void onPostExecute(String result) {
-                if (result.startsWith("ERROR:")) {
-                    statusText.setText(result.substring(6));
-                    statusText.setTextColor(Color.RED);
-                    showMainMenuDelayed();
+    private void cancelLiveUpload() {
+        if (liveUpload != null) {
+            liveUpload.cancel();
+            liveUpload = null;
+        }
+    }
+
+    private void transcribeAudio() {
+        // Where the transcript would have gone, in case the take has to wait in the outbox
+        final String actionKey = pendingAction != null && menuItems.containsKey(pendingAction) ? pendingAction : null;
+        final VoiceActivityDetector takeVad = vad;
+        scheduler.submit(RequestScheduler.PRIORITY_VOICE, RequestScheduler.GROUP_UI, req -> {
+            File take = new File(audioFilePath);
+            if (!take.exists() || take.length() == 0) {
+                return "ERROR:No audio";
+            }
+            File audioFile = speechOnly(take, takeVad);
+
+            try {
+                Map<String, String> headers = new HashMap<>();
+                headers.put("X-Transcribe-Only", "true");
+                ApiClient.Response resp = api.postFile(AUDIO_URL, audioFile, audioContentType,
+                    headers, ApiClient.READ_TIMEOUT_AUDIO, req.call);
+
+                if (resp.ok()) {
+                    JSONObject json = new JSONObject(resp.body);
+                    tracer.setServerTranscribeMs(json.optLong("transcribe_ms", -1));
+                    return json.optString("transcript", "(empty)");
                 } else {
-                    lastTranscript = result;
-                    transcriptText.setText("You: " + result);
-                    statusText.setText("1=Send  2=Add  3=Redo  0=Cancel");
-                    statusText.setTextColor(Color.CYAN);
-                    currentState = STATE_CONFIRM;
+                    return "ERROR:Server " + resp.code;
+                }
+            } catch (IOException e) {
+                if (!req.call.isCancelled() && isOffline(e)) {
+                    outbox.addAudio(audioFile, audioContentType, actionKey,
+                        actionKey != null ? menuItems.get(actionKey) : null);
+                    return "SAVED:" + SAVED_OFFLINE;
                 }
+                return "ERROR:" + e.getMessage();
+            } catch (Exception e) {
+                return "ERROR:" + e.getMessage();
             }
-        }.execute();
+        }, e -> "ERROR:" + e, (String result) -> {
+            handleTranscript(result);
+        });
+    }
+
+    private void handleTranscript(String result) {
+        if (result.startsWith("SAVED:")) {
+            tracer.abandon();
+            statusText.setText(result.substring(6));
+            statusText.setTextColor(Color.YELLOW);
+            showMainMenuDelayed();
+        } else if (result.startsWith("ERROR:")) {
+            tracer.abandon();
+            statusText.setText(result.substring(6));
+            statusText.setTextColor(Color.RED);
+            showMainMenuDelayed();
+        } else {
+            tracer.mark(InteractionTracer.TRANSCRIPT);
+            lastTranscript = result;
+            transcriptText.setText("You: " + result);
+            statusText.setText("1=Send  2=Add  3=Redo  0=Cancel");
+            statusText.setTextColor(Color.CYAN);
+            currentState = STATE_CONFIRM;
+        }
     }
 
     private void executeAction(final String actionKey, final String voiceInput) {
+        tracer.mark(InteractionTracer.SEND);
         currentState = STATE_SENDING;
         MenuItem item = menuItems.get(actionKey);
+        final String cacheKey = ResponseCache.key(actionKey, item != null ? item.label : null, voiceInput);
+
+        // Seen recently: show it now, no round trip. Stale → show it anyway and refresh behind it.
+        ResponseCache.Entry cached = actionCache.get(cacheKey);
+        if (cached != null) {
+            displayResponse(cached.response);
+            if (cached.isFresh()) {
+                showResponseMarker("🕒 " + ResponseCache.formatAge(cached.ageMs()));
+            } else {
+                showResponseMarker("🕒 " + ResponseCache.formatAge(cached.ageMs()) + " ⟳");
+                refreshAction(actionKey, voiceInput, cacheKey, cached.response);
+            }
+            return;
+        }
+
         menuText.setVisibility(View.GONE);
         statusText.setText("⏳ " + (item != null ? item.label : "Working..."));
         statusText.setTextColor(Color.YELLOW);
 
-        new AsyncTask<Void, Void, String>() {
-            @Override
-            protected String doInBackground(Void... params) {
-                HttpURLConnection conn = null;
-                try {
-                    URL url = new URL(ACTION_URL);
-                    conn = (HttpURLConnection) url.openConnection();
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "application/json");
-                    conn.setConnectTimeout(15000);
-                    conn.setReadTimeout(120000);
-                    conn.setDoOutput(true);
-
-                    JSONObject json = new JSONObject();
-                    json.put("action", actionKey);
-                    if (voiceInput != null) {
-                        json.put("voice_input", voiceInput);
-                    }
+        scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_UI,
+            req -> fetchAction(actionKey, voiceInput, cacheKey, voiceInput != null, req.call),
+            e -> Reply.text("Error: " + e), (Reply response) -> displayResponse(response));
+    }
 
-                    OutputStream os = conn.getOutputStream();
-                    os.write(json.toString().getBytes("UTF-8"));
-                    os.close();
-
-                    if (conn.getResponseCode() == 200) {
-                        BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(conn.getInputStream()));
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            sb.append(line);
-                        }
-                        reader.close();
-
-                        JSONObject responseJson = new JSONObject(sb.toString());
-                        return responseJson.optString("response", sb.toString());
-                    } else {
-                        return "Server error: " + conn.getResponseCode();
-                    }
-                } catch (Exception e) {
-                    return "Error: " + e.getMessage();
-                } finally {
-                    if (conn != null) conn.disconnect();
-                }
+    // Runs on a scheduler worker; successful replies go into the cache with the bridge's TTL.
+    // With queueOffline, a voice action that can't reach the bridge waits in the outbox.
+    private Reply fetchAction(String actionKey, String voiceInput, String cacheKey,
+                              boolean queueOffline, ApiClient.Call call) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("action", actionKey);
+            if (voiceInput != null) {
+                json.put("voice_input", voiceInput);
             }
 
-            @Override
-            protected void onPostExecute(String response) {
-                displayResponse(response);
+            ApiClient.Response resp = api.postJson(ACTION_URL, json.toString(),
+                ApiClient.READ_TIMEOUT_LLM, call);
+            if (resp.ok()) {
+                JSONObject responseJson = new JSONObject(resp.body);
+                Reply response = Reply.fromJson(responseJson);
+                actionCache.put(cacheKey, response, responseJson.optInt("ttl", 0));
+                return response;
+            } else {
+                return Reply.text("Server error: " + resp.code);
             }
-        }.execute();
+        } catch (IOException e) {
+            if (queueOffline && !call.isCancelled() && isOffline(e)) {
+                outbox.addAction(actionKey, menuItems.get(actionKey), voiceInput);
+                return Reply.text(SAVED_OFFLINE);
+            }
+            return Reply.text("Error: " + e.getMessage());
+        } catch (Exception e) {
+            return Reply.text("Error: " + e.getMessage());
+        }
+    }
+
+    // Stale-while-revalidate: if the user is still reading the stale answer, swap in the new one
+    private void refreshAction(String actionKey, String voiceInput, final String cacheKey, final Reply staleResponse) {
+        final int shownSeq = responseSeq;
+        scheduler.submit(RequestScheduler.PRIORITY_SPECULATIVE, RequestScheduler.GROUP_BACKGROUND,
+            req -> fetchAction(actionKey, voiceInput, cacheKey, false, req.call),
+            (Reply fresh) -> {
+                ResponseCache.Entry entry = actionCache.get(cacheKey);
+                boolean stillShown = currentState == STATE_RESPONSE && responseSeq == shownSeq;
+                if (!stillShown || entry == null || !entry.isFresh()) return;  // Moved on, or refresh failed
+                if (fresh.equals(staleResponse)) {
+                    showResponseMarker("🕒 just now");
+                } else {
+                    displayResponse(fresh);
+                    showResponseMarker("✨ Updated");
+                }
+            });
+    }
+
+    private void showResponseMarker(String marker) {
+        String ttsStatus = ttsEnabled ? "🔊" : "🔇";
+        statusText.setText(ttsStatus + " *=TTS 9=Skip #=Pause  " + marker);
     }
 
     private void sendChat(final String text) {
+        tracer.mark(InteractionTracer.SEND);
         currentState = STATE_SENDING;
         menuText.setVisibility(View.GONE);
         statusText.setText("⏳ Thinking...");
         statusText.setTextColor(Color.YELLOW);
-
-        new AsyncTask<Void, Void, String>() {
-            @Override
-            protected String doInBackground(Void... params) {
-                HttpURLConnection conn = null;
-                try {
-                    URL url = new URL(CHAT_URL);
-                    conn = (HttpURLConnection) url.openConnection();
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "application/json");
-                    conn.setConnectTimeout(15000);
-                    conn.setReadTimeout(120000);
-                    conn.setDoOutput(true);
-
-                    JSONObject json = new JSONObject();
-                    json.put("text", text);
-
-                    OutputStream os = conn.getOutputStream();
-                    os.write(json.toString().getBytes("UTF-8"));
-                    os.close();
-
-                    if (conn.getResponseCode() == 200) {
-                        BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(conn.getInputStream()));
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            sb.append(line);
-                        }
-                        reader.close();
-
-                        JSONObject responseJson = new JSONObject(sb.toString());
-                        return responseJson.optString("response", sb.toString());
-                    } else {
-                        return "Server error: " + conn.getResponseCode();
-                    }
-                } catch (Exception e) {
-                    return "Error: " + e.getMessage();
-                } finally {
-                    if (conn != null) conn.disconnect();
-                }
-            }
-
-            @Override
-            protected void onPostExecute(String response) {
-                displayResponse(response);
-            }
-        }.execute();
+        requestChat(text, true);
     }
 
     private void sendFollowUp(final String optionText) {
+        tracer.mark(InteractionTracer.SEND);
+        // Prefetched answer: show it without a round trip
+        Reply cached = prefetch != null ? prefetch.takeCached(optionText) : null;
+        if (cached != null) {
+            displayResponse(cached);
+            return;
+        }
+
         currentState = STATE_SENDING;
         statusText.setText("⏳ " + optionText.substring(0, Math.min(20, optionText.length())) + "...");
         statusText.setTextColor(Color.YELLOW);
 
-        new AsyncTask<Void, Void, String>() {
-            @Override
-            protected String doInBackground(Void... params) {
-                HttpURLConnection conn = null;
-                try {
-                    URL url = new URL(CHAT_URL);
-                    conn = (HttpURLConnection) url.openConnection();
-                    conn.setRequestMethod("POST");
-                    conn.setRequestProperty("Content-Type", "application/json");
-                    conn.setConnectTimeout(15000);
-                    conn.setReadTimeout(120000);
-                    conn.setDoOutput(true);
-
-                    JSONObject json = new JSONObject();
-                    json.put("text", optionText);
-
-                    OutputStream os = conn.getOutputStream();
-                    os.write(json.toString().getBytes("UTF-8"));
-                    os.close();
-
-                    if (conn.getResponseCode() == 200) {
-                        BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(conn.getInputStream()));
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            sb.append(line);
-                        }
-                        reader.close();
-
-                        JSONObject responseJson = new JSONObject(sb.toString());
-                        return responseJson.optString("response", sb.toString());
-                    } else {
-                        return "Server error: " + conn.getResponseCode();
-                    }
-                } catch (Exception e) {
-                    return "Error: " + e.getMessage();
-                } finally {
-                    if (conn != null) conn.disconnect();
+        // Already being prefetched: wait for that instead of asking twice
+        if (prefetch != null && prefetch.awaitInFlight(optionText, response -> {
+                if (response != null) {
+                    displayResponse(response);
+                } else {
+                    requestChat(optionText, false);
                 }
-            }
+            })) {
+            return;
+        }
+        requestChat(optionText, false);
+    }
 
-            @Override
-            protected void onPostExecute(String response) {
-                displayResponse(response);
+    // Streams /chat: text is rendered and spoken as it arrives, then
+    // displayResponse() does the final parse once the reply is complete.
+    // queueOffline: what the user said goes to the outbox if the bridge can't be reached
+    private void requestChat(final String text, final boolean queueOffline) {
+        streamSpokenSentences = 0;
+
+        scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_UI, req -> {
+            final StringBuilder partial = new StringBuilder();
+            final Reply[] finalResponse = new Reply[1];
+            try {
+                JSONObject json = new JSONObject();
+                json.put("text", text);
+                json.put("stream", true);
+
+                ApiClient.Response resp = api.postJsonStream(CHAT_URL, json.toString(),
+                    ApiClient.READ_TIMEOUT_LLM, line -> {
+                        if (!line.startsWith("data:")) return;
+                        try {
+                            JSONObject event = new JSONObject(line.substring(5).trim());
+                            if (event.optBoolean("done")) {
+                                if (!event.has("response")) event.put("response", partial.toString());
+                                finalResponse[0] = Reply.fromJson(event);
+                            } else {
+                                partial.append(event.optString("delta", ""));
+                                final String soFar = partial.toString();
+                                req.post(() -> showPartialResponse(soFar));
+                            }
+                        } catch (Exception e) {}
+                    }, req.call);
+                if (resp.body == null) {
+                    return finalResponse[0] != null ? finalResponse[0] : Reply.parse(partial.toString());
+                } else if (resp.ok()) {
+                    // Bridge without streaming support: plain JSON reply
+                    return Reply.fromJson(new JSONObject(resp.body));
+                } else {
+                    return Reply.text("Server error: " + resp.code);
+                }
+            } catch (Exception e) {
+                if (partial.length() > 0) {
+                    return Reply.parse(partial + "\n\n⚠️ Connection lost");
+                }
+                if (queueOffline && e instanceof IOException && !req.call.isCancelled() && isOffline((IOException) e)) {
+                    outbox.addChat(text);
+                    return Reply.text(SAVED_OFFLINE);
+                }
+                return Reply.text("Error: " + e.getMessage());
             }
-        }.execute();
+        }, e -> Reply.text("Error: " + e), (Reply response) -> displayResponse(response));
+    }
+
+    private void showPartialResponse(String partial) {
+        tracer.mark(InteractionTracer.FIRST_TOKEN);
+        titleText.setVisibility(View.GONE);
+        menuText.setVisibility(View.GONE);
+        optionsText.setText("");
+        responseText.setText(partial);
+        speakCompletedSentences(partial);
     }
 
     // ═══════════════════════════════════════════════════════════════════
@@ -984,98 +1482,110 @@ public class MainActivity extends Activity {
         statusText.setText("⏳ Loading...");
         statusText.setTextColor(Color.YELLOW);
         
-        new AsyncTask<Void, Void, String>() {
-            @Override
-            protected String doInBackground(Void... params) {
-                try {
-                    URL url = new URL(FILES_URL);
-                    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                    conn.setConnectTimeout(15000);
-                    conn.setReadTimeout(10000);
-                    if (conn.getResponseCode() == 200) {
-                        BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(conn.getInputStream()));
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = reader.readLine()) != null) sb.append(line);
-                        reader.close();
-                        return sb.toString();
-                    }
-                } catch (Exception e) {
-                    return "ERROR:" + e.getMessage();
-                }
-                return "ERROR:Failed to load";
+        // Catch files deleted or copied in by hand, while the list loads
+        scheduler.submit(RequestScheduler.PRIORITY_LIST, RequestScheduler.GROUP_BACKGROUND,
+            req -> downloadIndex.reconcile(musicDir()),
+            (Boolean changed) -> {
+                if (changed && currentState == STATE_DOWNLOAD_LIST) showDownloadPage();
+            });
+        
+        fileListing = new FileListing(FILES_PER_PAGE);
+        downloadPager.reset(0);
+        loadFilePage(0, false);
+    }
+    
+    // Fetches one page of the listing; speculative = the page after the one on screen
+    private void loadFilePage(final int page, final boolean speculative) {
+        final FileListing listing = fileListing;
+        final String cursor = listing.cursorFor(page);
+        if (!listing.startLoading(page)) return;
+        int priority = speculative ? RequestScheduler.PRIORITY_SPECULATIVE : RequestScheduler.PRIORITY_LIST;
+        scheduler.submit(priority, RequestScheduler.GROUP_UI, req -> {
+            try {
+                return FileListing.fetch(api, FILES_URL, cursor, FILES_PER_PAGE, req.call);
+            } catch (IOException e) {
+                return "ERROR:" + e.getMessage();
             }
-            
-            @Override
-            protected void onPostExecute(String result) {
-                if (result.startsWith("ERROR:")) {
-                    statusText.setText(result.substring(6));
-                    statusText.setTextColor(Color.RED);
-                    showMainMenuDelayed();
-                    return;
-                }
-                try {
-                    JSONObject json = new JSONObject(result);
-                    JSONArray files = json.getJSONArray("files");
-                    downloadFileList.clear();
-                    for (int i = 0; i < files.length(); i++) {
-                        downloadFileList.add(files.getJSONObject(i));
-                    }
-                    downloadPage = 0;
-                    showDownloadPage();
-                } catch (Exception e) {
-                    statusText.setText("Parse error");
-                    statusText.setTextColor(Color.RED);
-                    showMainMenuDelayed();
-                }
+        }, e -> "ERROR:" + e, (Object result) -> {
+            if (listing != fileListing) return;  // The list was reopened since
+            boolean onScreen = page == 0 && currentState == STATE_DOWNLOADING
+                || currentState == STATE_DOWNLOAD_LIST && downloadPager.page() == page;
+            if (result instanceof String) {
+                listing.failed(page);
+                if (!onScreen) return;  // A prefetch: the page is fetched again when it's opened
+                statusText.setText(((String) result).substring(6));
+                statusText.setTextColor(Color.RED);
+                if (page == 0) showMainMenuDelayed();
+                return;
+            }
+            listing.loaded(page, (FileListing.Page) result);
+            if (page == 0 && currentState == STATE_DOWNLOADING) {
+                downloadPager.reset(listing.total());
+            } else {
+                downloadPager.resize(listing.total());
             }
-        }.execute();
+            if (onScreen) openDownloadPage();
+        });
+    }
+    
+    // Shows the pager's current page, fetching it if needed and the next one ahead of time
+    private void openDownloadPage() {
+        int page = downloadPager.page();
+        if (fileListing.page(page) == null) loadFilePage(page, false);
+        if (downloadPager.hasNext()) loadFilePage(page + 1, true);
+        showDownloadPage();
     }
     
     private void showDownloadPage() {
         currentState = STATE_DOWNLOAD_LIST;
-        int start = downloadPage * FILES_PER_PAGE;
-        int end = Math.min(start + FILES_PER_PAGE, downloadFileList.size());
+        int start = downloadPager.start();
+        int end = downloadPager.end();
+        List<RemoteFile> files = fileListing.page(downloadPager.page());
         
         StringBuilder sb = new StringBuilder();
-        sb.append("📥 SHIURIM (").append(downloadFileList.size()).append(" files)\n\n");
-        
-        // Check which are already downloaded
-        File musicDir = new File(Environment.getExternalStoragePublicDirectory(
-            Environment.DIRECTORY_MUSIC), "Weinberger");
+        sb.append("📥 SHIURIM (").append(fileListing.total()).append(" files)");
+        int queued = downloadQueue.count(DownloadQueue.STATE_ACTIVE)
+            + downloadQueue.count(DownloadQueue.STATE_QUEUED)
+            + downloadQueue.count(DownloadQueue.STATE_WAITING);
+        if (queued > 0) {
+            sb.append(" ⬇").append(queued);
+        }
+        if (downloadQueue.getLastReport() != null) {
+            sb.append("\n⚡ ").append(downloadQueue.getLastReport());
+        }
+        sb.append("\n\n");
         
-        for (int i = start; i < end; i++) {
-            try {
-                JSONObject file = downloadFileList.get(i);
-                String name = file.getString("name");
-                double sizeMb = file.getDouble("size_mb");
-                int key = (i - start) + 1;
-                
-                // Check if already downloaded
-                String displayName = name.replace(".mp3", "").replace("_", " ");
-                // Truncate long names for Qin screen
-                if (displayName.length() > 28) {
-                    displayName = displayName.substring(0, 25) + "...";
-                }
-                
-                boolean exists = musicDir.exists() && 
-                    new File(musicDir, name).exists();
-                String check = exists ? " ✓" : "";
-                
-                sb.append(key).append(": ").append(displayName)
-                  .append(check).append("\n");
-            } catch (Exception e) {}
+        if (files == null) {
+            sb.append("⏳ Loading...");
+        } else {
+            sb.append("1-9=▶ Play  hold=📥 Save\n");
+        }
+        for (int i = start; files != null && i < end && i - start < files.size(); i++) {
+            RemoteFile file = files.get(i - start);
+            int key = (i - start) + 1;
+            
+            // Check if already downloaded
+            String displayName = file.name.replace(".mp3", "").replace("_", " ");
+            // Truncate long names for Qin screen
+            if (displayName.length() > 28) {
+                displayName = displayName.substring(0, 25) + "...";
+            }
+            
+            boolean exists = downloadIndex.isComplete(file.name, file.size);
+            String check = exists ? " ✓" : queueMarker(downloadQueue.find(file.name));
+            
+            sb.append(key).append(": ").append(displayName)
+              .append(check).append("\n");
         }
         
         responseText.setText(sb.toString());
         
         // Navigation hints
         StringBuilder nav = new StringBuilder();
-        if (end < downloadFileList.size()) {
+        if (downloadPager.hasNext()) {
             nav.append("*=Next page  ");
         }
-        if (downloadPage > 0) {
+        if (downloadPager.hasPrev()) {
             nav.append("#=Prev  ");
         }
         nav.append("0=Back");
@@ -1086,169 +1596,272 @@ public class MainActivity extends Activity {
         menuText.setVisibility(View.GONE);
     }
     
+    private static String queueMarker(DownloadQueue.Item item) {
+        if (item == null) return "";
+        switch (item.state) {
+            case DownloadQueue.STATE_ACTIVE: return " ⬇" + item.percent + "%";
+            case DownloadQueue.STATE_QUEUED: return " ⏸";
+            case DownloadQueue.STATE_WAITING: return " 🔁";
+            default: return " ❌";
+        }
+    }
+    
     private boolean handleDownloadListKey(String key) {
         if (key.equals("*")) {
-            // Next page
-            int maxPage = (downloadFileList.size() - 1) / FILES_PER_PAGE;
-            if (downloadPage < maxPage) {
-                downloadPage++;
-                showDownloadPage();
+            // Next page; its cursor comes with this one, so a page that failed to load is retried first
+            if (fileListing.page(downloadPager.page()) == null || downloadPager.next()) {
+                openDownloadPage();
             }
             return true;
         }
         if (key.equals("#")) {
             // Previous page
-            if (downloadPage > 0) {
-                downloadPage--;
-                showDownloadPage();
+            if (downloadPager.prev()) {
+                openDownloadPage();
             }
             return true;
         }
         
-        // Number key = download that file
-        try {
-            int num = Integer.parseInt(key);
-            if (num >= 1 && num <= 9) {
-                int index = downloadPage * FILES_PER_PAGE + (num - 1);
-                if (index < downloadFileList.size()) {
-                    downloadFile(downloadFileList.get(index));
-                    return true;
-                }
-            }
-        } catch (NumberFormatException e) {}
-        
         return false;
     }
     
-    private void downloadFile(final JSONObject fileInfo) {
-        currentState = STATE_DOWNLOADING;
+    // The file a number key points at on this page, or null
+    private RemoteFile fileForKey(String key) {
+        if (key.length() != 1 || !Character.isDigit(key.charAt(0))) return null;
+        int index = downloadPager.indexForKey(key.charAt(0) - '0');
+        return index >= 0 ? fileListing.get(index) : null;
+    }
+    
+    // Queues the file for DownloadService; the list shows its progress from then on
+    private void downloadFile(final RemoteFile fileInfo) {
         try {
-            final String name = fileInfo.getString("name");
-            final String path = fileInfo.getString("path");
-            final double sizeMb = fileInfo.getDouble("size_mb");
+            final String name = fileInfo.name;
+            final String path = fileInfo.path;
+            final long size = fileInfo.size;
             
-            statusText.setText("📥 " + String.format("%.0fMB", sizeMb) + "...");
-            statusText.setTextColor(Color.YELLOW);
-            responseText.setText("Downloading:\n" + name.replace("_", " "));
+            File outFile = new File(musicDir(), name);
+            if (downloadIndex.isComplete(name, size)) {
+                statusText.setText("✓ Already downloaded!");
+                statusText.setTextColor(Color.GREEN);
+                return;
+            }
             
-            new AsyncTask<Void, Integer, String>() {
-                @Override
-                protected String doInBackground(Void... params) {
-                    HttpURLConnection conn = null;
-                    InputStream is = null;
-                    FileOutputStream fos = null;
-                    try {
-                        // Create Music/Weinberger directory
-                        File musicDir = new File(
-                            Environment.getExternalStoragePublicDirectory(
-                                Environment.DIRECTORY_MUSIC), "Weinberger");
-                        if (!musicDir.exists()) musicDir.mkdirs();
-                        
-                        File outFile = new File(musicDir, name);
-                        
-                        // Skip if already exists and same size
-                        if (outFile.exists()) {
-                            long existingSize = outFile.length();
-                            long expectedSize = (long)(sizeMb * 1024 * 1024);
-                            if (Math.abs(existingSize - expectedSize) < 100000) {
-                                return "EXISTS";
-                            }
-                        }
-                        
-                        URL url = new URL(SERVER_BASE + path);
-                        conn = (HttpURLConnection) url.openConnection();
-                        conn.setConnectTimeout(30000);
-                        conn.setReadTimeout(120000);
-                        
-                        int total = conn.getContentLength();
-                        is = conn.getInputStream();
-                        fos = new FileOutputStream(outFile);
-                        
-                        byte[] buffer = new byte[8192];
-                        int bytesRead;
-                        int totalRead = 0;
-                        
-                        while ((bytesRead = is.read(buffer)) != -1) {
-                            fos.write(buffer, 0, bytesRead);
-                            totalRead += bytesRead;
-                            if (total > 0) {
-                                publishProgress((totalRead * 100) / total);
-                            }
-                        }
-                        fos.flush();
-                        
-                        return "OK:" + outFile.getAbsolutePath();
-                    } catch (Exception e) {
-                        return "ERROR:" + e.getMessage();
-                    } finally {
-                        try { if (is != null) is.close(); } catch (IOException e) {}
-                        try { if (fos != null) fos.close(); } catch (IOException e) {}
-                        if (conn != null) conn.disconnect();
-                    }
-                }
-                
-                @Override
-                protected void onProgressUpdate(Integer... values) {
-                    statusText.setText("📥 " + values[0] + "%");
-                }
-                
-                @Override
-                protected void onPostExecute(String result) {
-                    if (result.equals("EXISTS")) {
-                        statusText.setText("✓ Already downloaded!");
-                        statusText.setTextColor(Color.GREEN);
-                    } else if (result.startsWith("OK:")) {
-                        statusText.setText("✅ Downloaded!");
-                        statusText.setTextColor(Color.GREEN);
-                        if (ttsEnabled && ttsReady) {
-                            tts.speak("Downloaded", TextToSpeech.QUEUE_FLUSH, null);
-                        }
-                    } else {
-                        statusText.setText("❌ " + result.substring(6));
-                        statusText.setTextColor(Color.RED);
-                    }
-                    // Return to file list after delay
-                    statusText.postDelayed(() -> showDownloadPage(), 2000);
-                }
-            }.execute();
+            if (downloadQueue.enqueue(name, SERVER_BASE + path, outFile.getAbsolutePath(), size)) {
+                DownloadService.start(this);
+                showDownloadPage();
+                statusText.setText("📥 Queued: " + name.replace("_", " "));
+            } else {
+                showDownloadPage();
+                statusText.setText("📥 Already in queue");
+            }
+            statusText.setTextColor(Color.YELLOW);
         } catch (Exception e) {
             statusText.setText("Error: " + e.getMessage());
             statusText.setTextColor(Color.RED);
-            showMainMenuDelayed();
         }
     }
     
+    private static File musicDir() {
+        return new File(Environment.getExternalStoragePublicDirectory(
+            Environment.DIRECTORY_MUSIC), "Weinberger");
+    }
+    
     // ═══════════════════════════════════════════════════════════════════
-
-    private void displayResponse(String response) {
-        // Parse dynamic options from response
-        dynamicOptions.clear();
-        hasDynamicOptions = false;
+    // SHIURIM PLAYER
+    // ═══════════════════════════════════════════════════════════════════
+    
+    // Plays a finished download from disk; anything else streams through the proxy and its cache
+    private void playFile(final RemoteFile file) {
+        stopPlayback();
+        playing = file;
+        currentState = STATE_PLAYER;
+        clearResponseArea();
+        menuText.setVisibility(View.GONE);
+        titleText.setText("▶ " + file.name.replace(".mp3", "").replace("_", " "));
+        statusText.setText("⏳ Buffering...");
+        statusText.setTextColor(Color.YELLOW);
         
-        String mainText = response;
-        StringBuilder optionsSb = new StringBuilder();
+        SharedPreferences prefs = getSharedPreferences(PLAYBACK_PREFS, MODE_PRIVATE);
+        final int resumeMs = prefs.getInt(file.path + ".pos", 0);
+        final int durationMs = prefs.getInt(file.path + ".dur", 0);
+        if (downloadIndex.isComplete(file.name, file.size)) {
+            startPlayer(file, new File(musicDir(), file.name).getAbsolutePath(), resumeMs);
+            return;
+        }
         
-        Matcher matcher = OPTION_PATTERN.matcher(response);
-        while (matcher.find()) {
-            // Group 1 = [1] format, Group 2 = 1. format, Group 3 = option text
-            String key = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
-            String option = matcher.group(3).trim();
-            if (key != null && !option.isEmpty()) {
-                dynamicOptions.put(key, option);
-                hasDynamicOptions = true;
-                optionsSb.append("[").append(key).append("] ").append(option).append("\n");
+        if (streamProxy == null) {
+            streamCache = RangeCache.get(new File(getCacheDir(), "streams"));
+            streamProxy = new StreamProxy(api, streamCache);
+        }
+        final StreamProxy proxy = streamProxy;
+        scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_UI, req -> {
+            try {
+                String url = proxy.register(file.path, SERVER_BASE + file.path, file.size);
+                // The first seconds from the start (headers) and from where playback resumes
+                proxy.prefetch(file.path, 0, START_BUFFER_BYTES, req.call);
+                if (resumeMs > 0 && durationMs > 0 && file.size > 0) {
+                    proxy.prefetch(file.path, file.size * resumeMs / durationMs, START_BUFFER_BYTES, req.call);
+                }
+                return url;
+            } catch (IOException e) {
+                return "ERROR:" + e.getMessage();
+            }
+        }, e -> "ERROR:" + e, (String result) -> {
+            if (playing != file) return;
+            if (result.startsWith("ERROR:")) {
+                statusText.setText("❌ " + result.substring(6) + "  0=Back");
+                statusText.setTextColor(Color.RED);
+                return;
             }
+            startPlayer(file, result, resumeMs);
+        });
+    }
+    
+    private void startPlayer(final RemoteFile file, String source, final int resumeMs) {
+        player = new MediaPlayer();
+        playerPrepared = false;
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        player.setOnPreparedListener(mp -> {
+            if (playing != file) return;
+            playerPrepared = true;
+            if (resumeMs > 0 && resumeMs < mp.getDuration() - SEEK_STEP_MS) mp.seekTo(resumeMs);
+            mp.start();
+            updatePlayer();
+        });
+        player.setOnCompletionListener(mp -> {
+            forgetResume(file);
+            updatePlayer();
+            statusText.removeCallbacks(playerTick);
+            statusText.setText("✓ Finished  5=Again 0=Back");
+            statusText.setTextColor(Color.GREEN);
+        });
+        player.setOnErrorListener((mp, what, extra) -> {
+            saveResume();
+            releasePlayer();
+            statusText.setText("❌ Playback error (" + what + ")  0=Back");
+            statusText.setTextColor(Color.RED);
+            return true;
+        });
+        try {
+            player.setDataSource(source);
+            player.prepareAsync();
+        } catch (IOException e) {
+            releasePlayer();
+            statusText.setText("❌ " + e.getMessage() + "  0=Back");
+            statusText.setTextColor(Color.RED);
         }
-        
-        // Remove options from main text for cleaner display
-        if (hasDynamicOptions) {
-            mainText = response.replaceAll("(?:^|\\n)\\s*(?:\\[\\d\\]|\\d\\.)\\s*[^\\n]+", "").trim();
+    }
+    
+    private boolean handlePlayerKey(String key) {
+        if (player == null || !playerPrepared) return true;
+        if (key.equals("5")) {
+            if (player.isPlaying()) {
+                player.pause();
+                saveResume();
+            } else {
+                player.start();
+            }
+        } else if (key.equals("4")) {
+            player.seekTo(Math.max(0, player.getCurrentPosition() - SEEK_STEP_MS));
+        } else if (key.equals("6")) {
+            player.seekTo(Math.min(player.getDuration(), player.getCurrentPosition() + SEEK_STEP_MS));
+        }
+        updatePlayer();
+        return true;
+    }
+    
+    // Position, buffer and keys; repeats every second while the player is on screen
+    private void updatePlayer() {
+        statusText.removeCallbacks(playerTick);
+        if (currentState != STATE_PLAYER || player == null || !playerPrepared) return;
+        int position = player.getCurrentPosition();
+        int duration = player.getDuration();
+        StringBuilder sb = new StringBuilder();
+        sb.append(player.isPlaying() ? "▶ " : "⏸ ")
+          .append(formatTime(position)).append(" / ").append(formatTime(duration)).append("\n");
+        if (streamCache != null && playing.size > 0) {
+            long cached = streamCache.cachedBytes(playing.path);
+            if (cached > 0) {
+                sb.append(String.format(Locale.US, "💾 %.1f of %.1f MB cached\n",
+                    cached / 1048576.0, playing.size / 1048576.0));
+            }
+        }
+        responseText.setText(sb.toString());
+        statusText.setText("5=" + (player.isPlaying() ? "Pause" : "Play") + " 4=-30s 6=+30s 0=Back");
+        statusText.setTextColor(Color.CYAN);
+        if (++playerTicks % 10 == 0) saveResume();
+        statusText.postDelayed(playerTick, 1000);
+    }
+    
+    private static String formatTime(int ms) {
+        int s = Math.max(0, ms) / 1000;
+        return s >= 3600
+            ? String.format(Locale.US, "%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60)
+            : String.format(Locale.US, "%d:%02d", s / 60, s % 60);
+    }
+    
+    // Where to pick up next time; also the duration, to guess the byte offset to buffer from
+    private void saveResume() {
+        if (player == null || !playerPrepared || playing == null) return;
+        int position = player.getCurrentPosition();
+        int duration = player.getDuration();
+        if (duration > 0 && position > duration - SEEK_STEP_MS) {
+            forgetResume(playing);  // Heard to the end
+            return;
+        }
+        getSharedPreferences(PLAYBACK_PREFS, MODE_PRIVATE).edit()
+            .putInt(playing.path + ".pos", position)
+            .putInt(playing.path + ".dur", duration)
+            .apply();
+    }
+    
+    private void forgetResume(RemoteFile file) {
+        getSharedPreferences(PLAYBACK_PREFS, MODE_PRIVATE).edit()
+            .remove(file.path + ".pos")
+            .remove(file.path + ".dur")
+            .apply();
+    }
+    
+    private void stopPlayback() {
+        saveResume();
+        releasePlayer();
+        playing = null;
+    }
+    
+    private void releasePlayer() {
+        statusText.removeCallbacks(playerTick);
+        if (player != null) {
+            player.release();
+            player = null;
+        }
+        playerPrepared = false;
+    }
+    
+    // ═══════════════════════════════════════════════════════════════════
+
+    private void displayResponse(Reply reply) {
+        tracer.mark(InteractionTracer.REPLY);
+        responseSeq++;
+        // Options arrive split out by the bridge (or scraped by Reply for old bridges),
+        // with reserved keys already dropped
+        dynamicOptions.clear();
+        hasDynamicOptions = reply.optionCount() > 0;
+        StringBuilder optionsSb = new StringBuilder();
+        for (int i = 0; i < reply.optionCount(); i++) {
+            dynamicOptions.put(reply.keys[i], reply.texts[i]);
+            optionsSb.append("[").append(reply.keys[i]).append("] ").append(reply.texts[i]).append("\n");
         }
         
-        responseText.setText(mainText);
+        responseText.setText(reply.body);
         
-        // Speak the response immediately (speed is priority)
-        speakResponse(mainText);
+        // Speak the response immediately (speed is priority).
+        // If streaming already started speaking, only queue what's left.
+        if (streamSpokenSentences > 0) {
+            speakRemainingSentences(reply.body);
+        } else {
+            speakCleaned(reply.speech);
+        }
+        streamSpokenSentences = 0;
         
         // Hide header elements to maximize response space
         titleText.setVisibility(View.GONE);
@@ -1257,20 +1870,17 @@ public class MainActivity extends Activity {
         String ttsStatus = ttsEnabled ? "🔊" : "🔇";
         // Always add [5] Voice and [8] Re-roll to options display (reserved keys)
         if (hasDynamicOptions) {
-            // Remove any AI-generated options for reserved keys 5, 8, 9
-            dynamicOptions.remove("5");
-            dynamicOptions.remove("8");
-            dynamicOptions.remove("9");
             optionsSb.append("[5] 🎤 Voice\n");
             optionsSb.append("[8] 🔄 Shuffle\n");
             optionsSb.append("[0] ← Menu");
             optionsText.setText(optionsSb.toString().trim());
             optionsText.setVisibility(View.VISIBLE);
-            statusText.setText(ttsStatus + " *=TTS #=Repeat");
+            statusText.setText(ttsStatus + " *=TTS 9=Skip #=Pause");
+            if (prefetch != null) prefetch.onOptions(dynamicOptions);
         } else {
             optionsText.setText("[5] 🎤 Voice\n[8] 🔄 Shuffle\n[0] ← Menu");
             optionsText.setVisibility(View.VISIBLE);
-            statusText.setText(ttsStatus + " *=TTS #=Repeat");
+            statusText.setText(ttsStatus + " *=TTS 9=Skip #=Pause");
         }
         
         statusText.setTextColor(Color.GREEN);
@@ -1283,28 +1893,60 @@ public class MainActivity extends Activity {
         transcriptText.setText("");
         rerollCount = 0;  // Reset 20-questions counter on new response
         currentState = STATE_RESPONSE;
+        tracer.mark(InteractionTracer.DISPLAYED);
     }
 
-    @SuppressWarnings("deprecation")
     private void speakResponse(String text) {
-        if (!ttsEnabled || !ttsReady || tts == null) return;
-        
-        // Stop any current speech
-        tts.stop();
-        
-        // Clean text for speech (remove excessive formatting)
-        String cleanText = text
-            .replaceAll("\\n+", ". ")           // Newlines to pauses
-            .replaceAll("[\\[\\]\\|\\-]{2,}", " ")  // Remove table chars
-            .replaceAll("\\s+", " ")            // Collapse whitespace
-            .trim();
-        
-        // Speak immediately (using deprecated API for older Android)
-        tts.speak(cleanText, TextToSpeech.QUEUE_FLUSH, null);
+        speakCleaned(cleanForSpeech(text));
+    }
+
+    private void speakCleaned(String text) {
+        if (!ttsEnabled || !ttsReady || speech == null) return;
+
+        // Replaces any current speech; the first sentence starts as soon as it is synthesized
+        tracer.mark(InteractionTracer.SPEAK_QUEUED);
+        speech.speak(Sentences.split(text, true));
+    }
+
+    // Clean text for speech (newlines to pauses, drop table chars, collapse whitespace)
+    private static String cleanForSpeech(String text) {
+        return OptionScanner.cleanForSpeech(text);
+    }
+
+    // Queue each newly completed sentence of a streaming reply, so speech
+    // starts on the first sentence instead of after the whole generation
+    private void speakCompletedSentences(String partial) {
+        if (!ttsEnabled || !ttsReady || speech == null) return;
+
+        OptionScanner scan = optionScanner.scan(partial);
+        String body = scan.bodyText();
+        // Once the closing option lines start arriving, the body text above them is complete
+        boolean bodyComplete = scan.endsWithOptions();
+        List<String> sentences = Sentences.split(body, bodyComplete);
+        for (int i = streamSpokenSentences; i < sentences.size(); i++) {
+            if (i == 0) {
+                tracer.mark(InteractionTracer.SPEAK_QUEUED);
+                speech.clear();
+            }
+            speech.append(cleanForSpeech(sentences.get(i)));
+        }
+        streamSpokenSentences = Math.max(streamSpokenSentences, sentences.size());
+    }
+
+    private void speakRemainingSentences(String text) {
+        if (!ttsEnabled || !ttsReady || speech == null) return;
+
+        List<String> sentences = Sentences.split(text, true);
+        for (int i = streamSpokenSentences; i < sentences.size(); i++) {
+            speech.append(cleanForSpeech(sentences.get(i)));
+        }
     }
     
+    // Keeps the position, so # can pick up from the interrupted sentence
     private void stopSpeaking() {
-        if (tts != null) {
+        if (speech != null) {
+            speech.stop();
+        } else if (tts != null) {
             tts.stop();
         }
     }
@@ -1320,14 +1962,72 @@ public class MainActivity extends Activity {
         }, 1000);
     }
 
+    // ═══════════════════════════════════════════════════════════════════
+    // OFFLINE OUTBOX
+    // ═══════════════════════════════════════════════════════════════════
+
+    // Sends whatever is waiting, unless a replay is running or backing off
+    private void replayOutbox() {
+        if (!outbox.isDue() || !isOnline()) return;
+        statusText.removeCallbacks(outboxRetry);
+        scheduler.submit(RequestScheduler.PRIORITY_DOWNLOAD, RequestScheduler.GROUP_BACKGROUND,
+            req -> outbox.replay(api, BATCH_URL, req.call),
+            (Outbox.Result result) -> {
+                if (result == null) return;
+                if (result.failed) {
+                    // No broadcast comes if the network stayed up and only the bridge was down
+                    statusText.postDelayed(outboxRetry, outbox.msUntilDue());
+                }
+                if (result.sent > 0 && currentState == STATE_MENU) {
+                    showMainMenu();
+                    statusText.setText("📤 Sent " + result.sent + " saved");
+                }
+            });
+    }
+
+    // Connection refused, no route or unknown host: the request never got to the
+    // bridge, so it's safe to send again later. A timeout or reset is not: the
+    // bridge may already have run it, whether or not the network is up now.
+    private boolean isOffline(IOException e) {
+        return Outbox.isUnreachable(e);
+    }
+
+    private boolean isOnline() {
+        ConnectivityManager cm = (ConnectivityManager) getSystemService(CONNECTIVITY_SERVICE);
+        NetworkInfo info = cm != null ? cm.getActiveNetworkInfo() : null;
+        return info != null && info.isConnected();
+    }
+
     private void showMainMenuDelayed() {
         statusText.postDelayed(() -> showMainMenu(), 3000);
     }
 
+    // Hidden: p50/p95 per stage over recent interactions (also in files/trace.log), then bridge traffic
+    private void showTraceStats() {
+        stopSpeaking();
+        clearResponseArea();
+        menuText.setVisibility(View.GONE);
+        titleText.setText("⏱ Latency");
+        responseText.setText(tracer.summary() + "\n📶 Data since start\n\n" + api.trafficSummary());
+        statusText.setText("0=Back");
+        statusText.setTextColor(Color.GREEN);
+        currentState = STATE_TRACE_STATS;
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        unregisterReceiver(connectivityReceiver);
+        statusText.removeCallbacks(outboxRetry);
         if (isRecording) stopRecording();
+        releaseWarmRecorder();
+        cancelLiveUpload();
+        stopPlayback();
+        if (streamProxy != null) streamProxy.stop();
+        if (prefetch != null) prefetch.cancelAll();
+        scheduler.shutdown();
+        tracer.shutdown();
+        downloadQueue.removeListener(downloadListener);
         if (tts != null) {
             tts.stop();
             tts.shutdown();
@@ -0,0 +1,171 @@
+package com.qin.feedback;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Speaks a reply one sentence at a time, so the engine only has to
+ * synthesize the first sentence before anything is heard.
+ *
+ * Sentences go to the engine with QUEUE_ADD and an utterance ID, a couple
+ * ahead of the one playing; each finished utterance tops the window up.
+ * Because the queue remembers which sentence is playing, it can skip to
+ * the next one or stop and later resume where it left off. Main thread only.
+ */
+class SpeechQueue {
+
+    private static final int LOOKAHEAD = 2;  // Sentences handed to the engine ahead of the one playing
+
+    private final TextToSpeech tts;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final List<String> sentences = new ArrayList<>();
+    private int current = 0;     // Sentence playing (or next to play)
+    private int queued = 0;      // Sentences handed to the engine so far
+    private int generation = 0;  // Bumped on every flush; callbacks for older utterances are ignored
+    private boolean stopped = true;
+    private Runnable onFirstSentence;
+
+    SpeechQueue(TextToSpeech tts) {
+        this.tts = tts;
+        tts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+            @Override
+            public void onStart(String utteranceId) {
+                handler.post(() -> onUtteranceStart(utteranceId));
+            }
+
+            @Override
+            public void onDone(String utteranceId) {
+                handler.post(() -> onUtteranceDone(utteranceId));
+            }
+
+            @Override
+            public void onError(String utteranceId) {
+                handler.post(() -> onUtteranceDone(utteranceId));
+            }
+        });
+    }
+
+    /** Called when the first sentence of a text actually starts playing (latency tracing). */
+    void setOnFirstSentence(Runnable listener) {
+        onFirstSentence = listener;
+    }
+
+    /** Replaces whatever is playing with these sentences. */
+    void speak(List<String> text) {
+        sentences.clear();
+        sentences.addAll(text);
+        restartAt(0);
+    }
+
+    /** Adds a sentence to the end (streaming replies); starts speaking if idle. */
+    void append(String sentence) {
+        sentences.add(sentence);
+        if (stopped && current == sentences.size() - 1) {
+            restartAt(current);
+        } else {
+            fill();
+        }
+    }
+
+    /** Drops the sentence playing and goes on with the next one. Returns false if there is none. */
+    boolean skip() {
+        if (current + 1 >= sentences.size()) {
+            stop();
+            // Past the end, as if it had finished: a streaming append starts the next sentence
+            current = sentences.size();
+            queued = current;
+            return false;
+        }
+        restartAt(current + 1);
+        return true;
+    }
+
+    /** Silences the engine but keeps the position for {@link #resume}. */
+    void stop() {
+        generation++;
+        stopped = true;
+        queued = current;
+        tts.stop();
+    }
+
+    /** Continues from the sentence that was interrupted. Returns false if nothing was left. */
+    boolean resume() {
+        if (current >= sentences.size()) return false;
+        restartAt(current);
+        return true;
+    }
+
+    /** Forgets the current text (new screen). */
+    void clear() {
+        stop();
+        sentences.clear();
+        current = 0;
+        queued = 0;
+    }
+
+    boolean isSpeaking() {
+        return !stopped;
+    }
+
+    int sentenceCount() {
+        return sentences.size();
+    }
+
+    private void restartAt(int index) {
+        generation++;
+        tts.stop();
+        current = index;
+        queued = index;
+        stopped = false;
+        fill();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void fill() {
+        if (stopped) return;
+        while (queued < sentences.size() && queued <= current + LOOKAHEAD) {
+            HashMap<String, String> params = new HashMap<>();
+            params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, generation + ":" + queued);
+            tts.speak(sentences.get(queued), TextToSpeech.QUEUE_ADD, params);
+            queued++;
+        }
+    }
+
+    private void onUtteranceStart(String utteranceId) {
+        int index = indexOf(utteranceId);
+        if (index < 0) return;
+        current = index;
+        if (index == 0 && onFirstSentence != null) onFirstSentence.run();
+    }
+
+    private void onUtteranceDone(String utteranceId) {
+        int index = indexOf(utteranceId);
+        if (index < 0) return;
+        current = index + 1;
+        if (current >= sentences.size()) {
+            stopped = true;  // Finished; a streaming append starts it again
+        } else {
+            fill();
+        }
+    }
+
+    /** Sentence index for an utterance of the current generation, or -1. */
+    private int indexOf(String utteranceId) {
+        if (utteranceId == null) return -1;
+        int colon = utteranceId.indexOf(':');
+        if (colon < 0) return -1;
+        try {
+            if (Integer.parseInt(utteranceId.substring(0, colon)) != generation) return -1;
+            return Integer.parseInt(utteranceId.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.qin.feedback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of turning one reply into options, display text and speech text:
+ * the regex chain displayResponse used before OptionScanner, the scanner
+ * itself, and reading the structured options the bridge now sends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OptionScannerBenchmark {
+
+    // The patterns MainActivity used before OptionScanner
+    private static final Pattern OPTION_PATTERN = Pattern.compile("(?:^|\\n)\\s*(?:\\[(\\d)\\]|(\\d)\\.)\\s*([^\\n\\[]+?)(?=\\n|$)", Pattern.MULTILINE);
+    private static final Pattern OPTION_LINE_PATTERN = Pattern.compile("(?:^|\\n)\\s*(?:\\[\\d\\]|\\d\\.)\\s*[^\\n]+");
+
+    private static final String BRIEFING =
+        "Good morning. Three things need you today.\n\n"
+        + "The Weinberger series has two new shiurim on Chassidus; both are under 40 minutes.\n"
+        + "Shaul replied about the LanceDB migration - he wants to move the parquet export to Sunday.\n"
+        + "| Item | Status |\n|------|--------|\n| Embeddings | done |\n| Cron jobs | 2 failing |\n\n"
+        + "Nothing urgent in email beyond that.\n\n";
+
+    private static final String OPTIONS =
+        "[1] Play the newest shiur\n"
+        + "[2] Reply to Shaul\n"
+        + "[3] Show the failing cron jobs\n"
+        + "[4] Summarize email\n"
+        + "[6] What's on the calendar?\n"
+        + "[7] Nothing, thanks\n";
+
+    @Param({"1", "8"})
+    public int briefings;  // Reply length: ~0.5 KB and ~3.5 KB of body text
+
+    private String reply;
+    private JSONObject structured;
+    private final OptionScanner scanner = new OptionScanner();
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < briefings; i++) sb.append(BRIEFING);
+        reply = sb.append(OPTIONS).toString();
+
+        scanner.scan(reply);
+        JSONArray options = new JSONArray();
+        for (int i = 0; i < scanner.optionCount(); i++) {
+            JSONObject o = new JSONObject();
+            o.put("key", String.valueOf(scanner.optionKey(i)));
+            o.put("text", scanner.optionText(i));
+            options.put(o);
+        }
+        structured = new JSONObject();
+        structured.put("response", reply);
+        structured.put("body", scanner.displayText());
+        structured.put("options", options);
+    }
+
+    @Benchmark
+    public void regexChain(Blackhole bh) {
+        Matcher matcher = OPTION_PATTERN.matcher(reply);
+        while (matcher.find()) {
+            String key = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            bh.consume(key);
+            bh.consume(matcher.group(3).trim());
+        }
+        String mainText = OPTION_LINE_PATTERN.matcher(reply).replaceAll("").trim();
+        bh.consume(mainText);
+        bh.consume(mainText
+            .replaceAll("\\n+", ". ")
+            .replaceAll("[\\[\\]\\|\\-]{2,}", " ")
+            .replaceAll("\\s+", " ")
+            .trim());
+    }
+
+    @Benchmark
+    public void scanner(Blackhole bh) {
+        OptionScanner scan = scanner.scan(reply);
+        for (int i = 0; i < scan.optionCount(); i++) {
+            bh.consume(scan.optionKey(i));
+            bh.consume(scan.optionText(i));
+        }
+        bh.consume(scan.displayText());
+        bh.consume(scan.speechText());
+    }
+
+    @Benchmark
+    public void structuredReply(Blackhole bh) {
+        bh.consume(Reply.fromJson(structured));
+    }
+}
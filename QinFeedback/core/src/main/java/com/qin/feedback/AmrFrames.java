@@ -0,0 +1,143 @@
+package com.qin.feedback;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Frame-level access to raw AMR (what MediaRecorder writes with
+ * OutputFormat.AMR_NB / AMR_WB): a "#!AMR\n" or "#!AMR-WB\n" header, then
+ * one self-delimiting frame per 20 ms whose size follows from the frame type
+ * in its first byte. That makes it possible to cut silence out of a take by
+ * time without decoding.
+ */
+class AmrFrames {
+
+    static final int FRAME_MS = 20;
+    static final byte[] HEADER = {'#', '!', 'A', 'M', 'R', '\n'};
+    static final byte[] HEADER_WB = {'#', '!', 'A', 'M', 'R', '-', 'W', 'B', '\n'};
+
+    // Bytes per frame (including the header byte) by frame type: speech modes, SID, reserved, lost, NO_DATA
+    private static final int[] FRAME_SIZE_NB = {13, 14, 16, 18, 20, 21, 27, 32, 6, 1, 1, 1, 1, 1, 1, 1};
+    private static final int[] FRAME_SIZE_WB = {18, 24, 33, 37, 41, 47, 51, 59, 61, 6, 1, 1, 1, 1, 1, 1};
+
+    private AmrFrames() {}
+
+    /**
+     * Splits a byte stream, fed in arbitrary pieces, into the header and
+     * whole frames. If the stream doesn't start with the AMR header,
+     * {@link #isAmr()} turns false and the caller should pass it through.
+     */
+    static class Splitter {
+        private byte[] buf = new byte[4096];
+        private int len = 0;
+        private int pos = 0;
+        private Boolean amr = null;  // Unknown until the header is in
+        private int[] frameSize;
+
+        void feed(byte[] data, int n) {
+            if (pos > 0 && pos == len) {
+                pos = 0;
+                len = 0;
+            }
+            if (len + n > buf.length) {
+                // Compact first; grow only if the unread part really doesn't fit
+                System.arraycopy(buf, pos, buf, 0, len - pos);
+                len -= pos;
+                pos = 0;
+                if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+            }
+            System.arraycopy(data, 0, buf, len, n);
+            len += n;
+        }
+
+        /** The header once it has arrived, else null. Call before {@link #nextFrame()}. */
+        byte[] header() {
+            if (amr != null) return null;
+            if (startsWith(HEADER)) {
+                frameSize = FRAME_SIZE_NB;
+            } else if (startsWith(HEADER_WB)) {
+                frameSize = FRAME_SIZE_WB;
+            } else {
+                if (len - pos >= HEADER_WB.length) amr = false;  // Long enough to rule both out
+                return null;
+            }
+            amr = true;
+            byte[] header = frameSize == FRAME_SIZE_NB ? HEADER : HEADER_WB;
+            pos += header.length;
+            return header;
+        }
+
+        private boolean startsWith(byte[] prefix) {
+            if (len - pos < prefix.length) return false;
+            for (int i = 0; i < prefix.length; i++) {
+                if (buf[pos + i] != prefix[i]) return false;
+            }
+            return true;
+        }
+
+        boolean isAmr() {
+            return amr == null || amr;
+        }
+
+        /** The next complete frame, or null until more bytes are fed. */
+        byte[] nextFrame() {
+            if (amr == null || !amr || pos >= len) return null;
+            int size = frameSize[(buf[pos] >> 3) & 0x0f];
+            if (len - pos < size) return null;
+            byte[] frame = Arrays.copyOfRange(buf, pos, pos + size);
+            pos += size;
+            return frame;
+        }
+
+        /** Takes the bytes not yet returned as header or frames (all of them, if this isn't AMR). */
+        byte[] takeRemaining() {
+            byte[] rest = Arrays.copyOfRange(buf, pos, len);
+            pos = len;
+            return rest;
+        }
+    }
+
+    /**
+     * Copies the frames of in that start within [fromMs, untilMs) to out.
+     * Returns the bytes written, or -1 (and writes nothing) if in isn't raw AMR-NB or -WB.
+     */
+    static long trim(File in, File out, long fromMs, long untilMs) throws IOException {
+        Splitter splitter = new Splitter();
+        InputStream is = new FileInputStream(in);
+        OutputStream os = null;
+        long written = 0;
+        long index = 0;
+        try {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                splitter.feed(buffer, n);
+                if (os == null) {
+                    byte[] header = splitter.header();
+                    if (!splitter.isAmr()) return -1;
+                    if (header == null) continue;
+                    os = new FileOutputStream(out);
+                    os.write(header);
+                    written += header.length;
+                }
+                byte[] frame;
+                while ((frame = splitter.nextFrame()) != null) {
+                    long t = index++ * FRAME_MS;
+                    if (t >= fromMs && t < untilMs) {
+                        os.write(frame);
+                        written += frame.length;
+                    }
+                }
+            }
+            return os != null ? written : -1;
+        } finally {
+            is.close();
+            if (os != null) os.close();
+        }
+    }
+}
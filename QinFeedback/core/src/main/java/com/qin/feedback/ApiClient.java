@@ -0,0 +1,544 @@
+package com.qin.feedback;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Shared HTTP client for all bridge calls.
+ *
+ * HttpURLConnection keeps a process-wide pool of keep-alive sockets, but a
+ * socket only goes back to the pool when its body is read to the end and the
+ * stream is closed. Calling disconnect() throws it away, which is what every
+ * call site used to do. This class always drains and closes instead, so the
+ * next key press reuses the warm TLS connection to SERVER_BASE.
+ *
+ * Bodies are gzipped both ways over metered data. Every request asks for
+ * gzip responses and decodes them here (setting Accept-Encoding ourselves
+ * turns off Android's transparent gzip, so the wire bytes can be counted).
+ * JSON request bodies are only gzipped to a host that has listed gzip in an
+ * Accept-Encoding response header (RFC 7694), so older bridges keep working.
+ */
+public class ApiClient {
+
+    // Timeouts (ms)
+    public static final int CONNECT_TIMEOUT = 15000;
+    public static final int READ_TIMEOUT_SHORT = 5000;
+    public static final int READ_TIMEOUT_LIST = 10000;
+    public static final int READ_TIMEOUT_AUDIO = 60000;
+    public static final int READ_TIMEOUT_LLM = 120000;
+
+    private static final String USER_AGENT = "QinBot/1.1 (Android)";
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final int GZIP_MIN_BYTES = 1024;  // Smaller JSON barely shrinks
+
+    // host:port of servers known to accept gzipped request bodies
+    private final Set<String> gzipHosts = new HashSet<>();
+
+    private static ApiClient instance;
+
+    // Per-endpoint latency stats, keyed by URL path
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+
+    public static synchronized ApiClient get() {
+        if (instance == null) {
+            instance = new ApiClient();
+        }
+        return instance;
+    }
+
+    private ApiClient() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    public static class Response {
+        public final int code;
+        public final String body;
+        public final long elapsedMs;
+        public final String etag;  // Validator for a later conditional GET, if the server sent one
+
+        Response(int code, String body, long elapsedMs, String etag) {
+            this.code = code;
+            this.body = body;
+            this.elapsedMs = elapsedMs;
+            this.etag = etag;
+        }
+
+        public boolean ok() {
+            return code == 200;
+        }
+
+        public boolean notModified() {
+            return code == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+    }
+
+    /**
+     * Handle for aborting a request from another thread. Blocking socket reads
+     * ignore interrupts, so cancel() disconnects the live connection instead.
+     */
+    public static class Call {
+        private volatile HttpURLConnection conn;
+        private volatile boolean cancelled = false;
+        private final List<Call> children = new ArrayList<>();
+
+        public void cancel() {
+            List<Call> kids;
+            synchronized (this) {
+                cancelled = true;
+                kids = new ArrayList<>(children);
+            }
+            HttpURLConnection c = conn;
+            if (c != null) c.disconnect();
+            for (Call child : kids) {
+                child.cancel();
+            }
+        }
+
+        /** A Call that is cancelled together with this one, for parallel sub-requests. */
+        public Call newChild() {
+            Call child = new Call();
+            synchronized (this) {
+                if (!cancelled) {
+                    children.add(child);
+                    return child;
+                }
+            }
+            child.cancel();
+            return child;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        void attach(HttpURLConnection c) throws IOException {
+            conn = c;
+            if (cancelled) {
+                c.disconnect();
+                throw new IOException("Cancelled");
+            }
+        }
+    }
+
+    public static class Stats {
+        public int count;
+        public int failures;
+        public long totalMs;
+        public long maxMs;
+        public long lastMs;
+        public long bytesSent;      // Request bodies as sent (compressed if gzipped)
+        public long bytesReceived;  // Response bodies as received
+        public long bytesDecoded;   // Response bodies after gunzip
+
+        public long avgMs() {
+            return count == 0 ? 0 : totalMs / count;
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // REQUESTS
+    // ═══════════════════════════════════════════════════════════════════
+
+    public Response get(String url, int readTimeout, Call call) throws IOException {
+        return getIfNoneMatch(url, null, readTimeout, call);
+    }
+
+    /**
+     * Conditional GET: with a cached ETag the server may answer 304 and an
+     * empty body, in which case the caller keeps what it already has.
+     */
+    public Response getIfNoneMatch(String url, String etag, int readTimeout, Call call) throws IOException {
+        long start = System.currentTimeMillis();
+        HttpURLConnection conn = open(url, readTimeout, call);
+        try {
+            if (etag != null) conn.setRequestProperty("If-None-Match", etag);
+            return finish(conn, start, 0);
+        } catch (IOException e) {
+            fail(conn, start);
+            throw e;
+        }
+    }
+
+    public Response postJson(String url, String json, int readTimeout, Call call) throws IOException {
+        long start = System.currentTimeMillis();
+        HttpURLConnection conn = open(url, readTimeout, call);
+        try {
+            long sent = writeJson(conn, json);
+            return finish(conn, start, sent);
+        } catch (IOException e) {
+            fail(conn, start);
+            throw e;
+        }
+    }
+
+    /** Receives one line of a streamed (text/event-stream) response body. */
+    public interface LineHandler {
+        void onLine(String line) throws IOException;
+    }
+
+    /**
+     * POSTs JSON and, if the server answers with an event stream, hands each
+     * line to the handler as it arrives; the returned body is then null.
+     * A plain JSON answer (older bridge) is read whole as usual.
+     */
+    public Response postJsonStream(String url, String json, int readTimeout,
+                                   LineHandler handler, Call call) throws IOException {
+        long start = System.currentTimeMillis();
+        HttpURLConnection conn = open(url, readTimeout, call);
+        try {
+            conn.setRequestProperty("Accept", "text/event-stream, application/json");
+            long sent = writeJson(conn, json);
+
+            String type = conn.getContentType();
+            if (conn.getResponseCode() != 200 || type == null || !type.startsWith("text/event-stream")) {
+                return finish(conn, start, sent);
+            }
+            CountingInputStream wire = new CountingInputStream(conn.getInputStream());
+            CountingInputStream decoded = new CountingInputStream(decode(conn, wire));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(decoded, "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    handler.onLine(line);
+                }
+            } finally {
+                reader.close();
+            }
+            record(conn.getURL().getPath(), start, true, sent, wire.count, decoded.count);
+            return new Response(200, null, System.currentTimeMillis() - start, null);
+        } catch (IOException e) {
+            fail(conn, start);
+            throw e;
+        }
+    }
+
+    public Response postFile(String url, File file, String contentType,
+                             Map<String, String> headers, int readTimeout, Call call) throws IOException {
+        long start = System.currentTimeMillis();
+        HttpURLConnection conn = open(url, readTimeout, call);
+        FileInputStream fis = null;
+        try {
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", contentType);
+            if (headers != null) {
+                for (Map.Entry<String, String> h : headers.entrySet()) {
+                    conn.setRequestProperty(h.getKey(), h.getValue());
+                }
+            }
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode((int) file.length());
+
+            OutputStream os = conn.getOutputStream();
+            fis = new FileInputStream(file);
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = fis.read(buffer)) != -1) {
+                os.write(buffer, 0, bytesRead);
+            }
+            os.close();
+            return finish(conn, start, file.length());
+        } catch (IOException e) {
+            fail(conn, start);
+            throw e;
+        } finally {
+            try { if (fis != null) fis.close(); } catch (IOException e) {}
+        }
+    }
+
+    /** Produces a request body whose length isn't known up front. */
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * POSTs a body with chunked transfer encoding. The connection is opened
+     * before the writer runs, so the handshake overlaps whatever the writer
+     * is still waiting on (e.g. audio that is still being recorded).
+     */
+    public Response postChunked(String url, String contentType, Map<String, String> headers,
+                                int readTimeout, BodyWriter writer, Call call) throws IOException {
+        long start = System.currentTimeMillis();
+        HttpURLConnection conn = open(url, readTimeout, call);
+        try {
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", contentType);
+            if (headers != null) {
+                for (Map.Entry<String, String> h : headers.entrySet()) {
+                    conn.setRequestProperty(h.getKey(), h.getValue());
+                }
+            }
+            conn.setDoOutput(true);
+            conn.setChunkedStreamingMode(0);
+
+            CountingOutputStream os = new CountingOutputStream(conn.getOutputStream());
+            writer.writeTo(os);
+            os.close();
+            return finish(conn, start, os.count);
+        } catch (IOException e) {
+            fail(conn, start);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a GET for callers that consume the body themselves (downloads).
+     * The caller must close the stream and then call {@link #release}.
+     */
+    public HttpURLConnection openStream(String url, int connectTimeout, int readTimeout,
+                                        Call call) throws IOException {
+        HttpURLConnection conn = open(url, readTimeout, call);
+        conn.setConnectTimeout(connectTimeout);
+        // Audio doesn't compress, and byte ranges and Content-Length must refer to the file itself
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        return conn;
+    }
+
+    /**
+     * Records stats for a connection opened with {@link #openStream}. A failed
+     * transfer leaves unread bytes on the socket, so it is dropped, not pooled.
+     */
+    public void release(HttpURLConnection conn, long startMs, boolean success) {
+        record(conn.getURL().getPath(), startMs, success);
+        if (!success) conn.disconnect();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // INTERNALS
+    // ═══════════════════════════════════════════════════════════════════
+
+    private HttpURLConnection open(String url, int readTimeout, Call call) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(readTimeout);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("User-Agent", USER_AGENT);
+        conn.setRequestProperty("Connection", "keep-alive");
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        if (call != null) call.attach(conn);
+        return conn;
+    }
+
+    /**
+     * Sends a JSON POST body, gzipped if the server accepts that and it's
+     * big enough to be worth it. Returns the bytes sent.
+     */
+    private long writeJson(HttpURLConnection conn, String json) throws IOException {
+        byte[] payload = json.getBytes("UTF-8");
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        if (payload.length >= GZIP_MIN_BYTES && acceptsGzip(conn.getURL())) {
+            payload = gzip(payload);
+            conn.setRequestProperty("Content-Encoding", "gzip");
+        }
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(payload.length);
+        OutputStream os = conn.getOutputStream();
+        os.write(payload);
+        os.close();
+        return payload.length;
+    }
+
+    private Response finish(HttpURLConnection conn, long start, long sent) throws IOException {
+        int code = conn.getResponseCode();
+        InputStream is = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        // Draining the body (even on errors) is what returns the socket to the pool
+        String body = "";
+        long received = 0;
+        long decoded = 0;
+        if (is != null) {
+            CountingInputStream wire = new CountingInputStream(is);
+            CountingInputStream plain = new CountingInputStream(decode(conn, wire));
+            body = readFully(plain);
+            received = wire.count;
+            decoded = plain.count;
+        }
+        Response response = new Response(code, body, System.currentTimeMillis() - start,
+            conn.getHeaderField("ETag"));
+        record(conn.getURL().getPath(), start, code < 400, sent, received, decoded);
+        return response;
+    }
+
+    /** The response body, gunzipped if the server compressed it; also notes whether it takes gzip. */
+    private InputStream decode(HttpURLConnection conn, InputStream in) throws IOException {
+        String accepts = conn.getHeaderField("Accept-Encoding");
+        if (accepts != null && accepts.toLowerCase(Locale.US).contains("gzip")) {
+            synchronized (gzipHosts) {
+                gzipHosts.add(conn.getURL().getAuthority());
+            }
+        }
+        return "gzip".equalsIgnoreCase(conn.getContentEncoding()) ? new GZIPInputStream(in) : in;
+    }
+
+    private boolean acceptsGzip(URL url) {
+        synchronized (gzipHosts) {
+            return gzipHosts.contains(url.getAuthority());
+        }
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 32);
+        GZIPOutputStream gz = new GZIPOutputStream(out);
+        gz.write(data);
+        gz.close();
+        return out.toByteArray();
+    }
+
+    private void fail(HttpURLConnection conn, long start) {
+        record(conn.getURL().getPath(), start, false);
+        // Half-written or half-read sockets must not go back to the pool
+        conn.disconnect();
+    }
+
+    static String readFully(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    private void record(String path, long start, boolean success) {
+        record(path, start, success, 0, 0, 0);
+    }
+
+    private synchronized void record(String path, long start, boolean success,
+                                     long sent, long received, long decoded) {
+        long elapsed = System.currentTimeMillis() - start;
+        Stats s = stats.get(path);
+        if (s == null) {
+            s = new Stats();
+            stats.put(path, s);
+        }
+        s.count++;
+        if (!success) s.failures++;
+        s.totalMs += elapsed;
+        s.lastMs = elapsed;
+        if (elapsed > s.maxMs) s.maxMs = elapsed;
+        s.bytesSent += sent;
+        s.bytesReceived += received;
+        s.bytesDecoded += decoded;
+    }
+
+    /** Copy of the per-endpoint stats, safe to read from the UI thread. */
+    public synchronized Map<String, Stats> statsSnapshot() {
+        Map<String, Stats> copy = new HashMap<>();
+        for (Map.Entry<String, Stats> e : stats.entrySet()) {
+            Stats src = e.getValue();
+            Stats s = new Stats();
+            s.count = src.count;
+            s.failures = src.failures;
+            s.totalMs = src.totalMs;
+            s.maxMs = src.maxMs;
+            s.lastMs = src.lastMs;
+            s.bytesSent = src.bytesSent;
+            s.bytesReceived = src.bytesReceived;
+            s.bytesDecoded = src.bytesDecoded;
+            copy.put(e.getKey(), s);
+        }
+        return copy;
+    }
+
+    /** Bytes per endpoint since start: sent, received, and what the responses came to unzipped. */
+    public synchronized String trafficSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-8s %7s %7s %7s\n", "path", "sent", "recv", "unzip"));
+        long sent = 0, received = 0, decoded = 0;
+        for (Map.Entry<String, Stats> e : stats.entrySet()) {
+            Stats s = e.getValue();
+            if (s.bytesSent == 0 && s.bytesReceived == 0) continue;  // Downloads count themselves
+            sb.append(String.format(Locale.US, "%-8s %7s %7s %7s\n", e.getKey(),
+                formatBytes(s.bytesSent), formatBytes(s.bytesReceived), formatBytes(s.bytesDecoded)));
+            sent += s.bytesSent;
+            received += s.bytesReceived;
+            decoded += s.bytesDecoded;
+        }
+        sb.append(String.format(Locale.US, "%-8s %7s %7s %7s", "total",
+            formatBytes(sent), formatBytes(received), formatBytes(decoded)));
+        if (decoded > 0) {
+            sb.append(String.format(Locale.US, "\nresponses: %d%% of their size", received * 100 / decoded));
+        }
+        return sb.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 10 * 1024) return bytes + "B";
+        if (bytes < 10 * 1024 * 1024) return bytes / 1024 + "K";
+        return bytes / (1024 * 1024) + "M";
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.qin.feedback;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+
+/**
+ * Resumable file download from the bridge's /files/ endpoint.
+ *
+ * Bytes go to "<name>.part" and the server's ETag to "<name>.part.etag". A
+ * dropped connection leaves both behind; the next attempt sends
+ * Range + If-Range and appends from where it stopped, or starts over if the
+ * file changed on the server. Only a part file of exactly the expected size
+ * is renamed into place, so a file under its real name is always complete.
+ *
+ * With segments > 1, large files are fetched as N parallel byte ranges
+ * instead (see {@link SegmentedDownload}); a server that ignores Range drops
+ * back to a single stream.
+ */
+class Downloader {
+
+    interface ProgressListener {
+        void onProgress(long bytesDone, long totalBytes);
+    }
+
+    /** Throughput of the last pass, for tuning the segment count. */
+    static class Report {
+        int segments = 1;
+        long bytes;        // Fetched in this run (not counting resumed bytes)
+        long elapsedMs;
+        long[] segmentMs;
+        long[] segmentBytes;
+
+        double mbPerSec() {
+            return elapsedMs == 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (elapsedMs / 1000.0);
+        }
+
+        /** "3.1 MB/s ×3 (8.1/7.9/8.4s)" */
+        String summary() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "%.1f MB/s", mbPerSec()));
+            if (segments > 1 && segmentMs != null) {
+                sb.append(" ×").append(segments).append(" (");
+                for (int i = 0; i < segmentMs.length; i++) {
+                    if (i > 0) sb.append("/");
+                    sb.append(String.format(Locale.US, "%.1f", segmentMs[i] / 1000.0));
+                }
+                sb.append("s)");
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final long MIN_SEGMENT_BYTES = 4 * 1024 * 1024;  // Smaller files aren't worth extra handshakes
+
+    private final ApiClient api;
+
+    Downloader(ApiClient api) {
+        this.api = api;
+    }
+
+    /** expectedSize < 0 means the bridge didn't say; then any finished file counts. */
+    static boolean isComplete(File dest, long expectedSize) {
+        return dest.exists() && (expectedSize < 0 || dest.length() == expectedSize);
+    }
+
+    static File partFile(File dest) {
+        return new File(dest.getPath() + ".part");
+    }
+
+    void download(String url, File dest, long expectedSize, ProgressListener listener,
+                  ApiClient.Call call) throws IOException {
+        download(url, dest, expectedSize, 1, listener, call);
+    }
+
+    /**
+     * Downloads url into dest, resuming any earlier partial file. Retries a
+     * couple of times on network errors; each retry picks up where the last
+     * one stopped. Throws if cancelled or still incomplete after that.
+     * Segmented mode needs the exact size up front.
+     */
+    Report download(String url, File dest, long expectedSize, int segments,
+                    ProgressListener listener, ApiClient.Call call) throws IOException {
+        File part = partFile(dest);
+        File etagFile = new File(part.getPath() + ".etag");
+        File planFile = SegmentedDownload.planFile(part);
+
+        if (expectedSize <= 0 && planFile.exists()) {
+            // A segmented part can't be resumed without the size: its plan and preallocated bytes go
+            planFile.delete();
+            part.delete();
+        }
+        int n = expectedSize > 0 ? (int) Math.min(segments, expectedSize / MIN_SEGMENT_BYTES) : 1;
+        SegmentedDownload segmented = null;
+        if (n > 1 || planFile.exists()) {
+            // An unfinished segmented part must be finished segmented: it's preallocated, not appendable
+            segmented = new SegmentedDownload(api, url, part, expectedSize);
+            n = Math.max(n, 2);
+        }
+
+        Report report = new Report();
+        long startMs = System.currentTimeMillis();
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            if (call.isCancelled()) throw new IOException("Cancelled");
+            try {
+                if (segmented != null) {
+                    segmented.run(n, listener, call, report);
+                } else {
+                    report.segments = 1;
+                    report.bytes += fetch(url, part, etagFile, expectedSize, listener, call);
+                }
+                lastError = null;
+                break;
+            } catch (SegmentedDownload.RangesUnsupportedException e) {
+                // Start over on a single stream
+                segmented.cleanUp();
+                segmented = null;
+                part.delete();
+                lastError = e;
+            } catch (IOException e) {
+                lastError = e;
+                if (call.isCancelled()) throw e;
+                try {
+                    Thread.sleep(RETRY_DELAY_MS * attempt);
+                } catch (InterruptedException ie) {
+                    throw e;
+                }
+            }
+        }
+        if (lastError != null) throw lastError;
+        report.elapsedMs = System.currentTimeMillis() - startMs;
+        if (report.segmentBytes != null) {
+            for (long b : report.segmentBytes) report.bytes += b;
+        }
+
+        if (expectedSize >= 0 && part.length() != expectedSize) {
+            // Bytes don't add up: the part file is worthless for resuming too
+            long got = part.length();
+            part.delete();
+            etagFile.delete();
+            throw new IOException("Size mismatch: " + got + " of " + expectedSize + " bytes");
+        }
+        // rename(2) replaces dest atomically; nobody ever sees a half-written file under its real name
+        if (!part.renameTo(dest)) {
+            throw new IOException("Rename failed");
+        }
+        etagFile.delete();
+        if (segmented != null) segmented.cleanUp();
+        return report;
+    }
+
+    /** Single-stream pass; returns the number of bytes fetched. */
+    private long fetch(String url, File part, File etagFile, long expectedSize,
+                       ProgressListener listener, ApiClient.Call call) throws IOException {
+        long have = part.length();  // 0 if it doesn't exist
+        long fetched = 0;
+        String validator = have > 0 ? readSmallFile(etagFile) : null;
+        if (have > 0 && validator == null) {
+            // No way to prove the server still has the same file
+            part.delete();
+            have = 0;
+        }
+
+        long startMs = System.currentTimeMillis();
+        HttpURLConnection conn = api.openStream(url, CONNECT_TIMEOUT, ApiClient.READ_TIMEOUT_LLM, call);
+        InputStream is = null;
+        OutputStream out = null;
+        boolean success = false;
+        try {
+            if (have > 0) {
+                conn.setRequestProperty("Range", "bytes=" + have + "-");
+                conn.setRequestProperty("If-Range", validator);
+            }
+            int code = conn.getResponseCode();
+            long total;
+            if (code == 206) {
+                long[] range = parseContentRange(conn.getHeaderField("Content-Range"));
+                if (range == null || range[0] != have) {
+                    part.delete();
+                    throw new IOException("Bad Content-Range");
+                }
+                total = range[1];
+            } else if (code == 200) {
+                // Range ignored or file changed (If-Range mismatch): start over
+                have = 0;
+                total = parseLong(conn.getHeaderField("Content-Length"), expectedSize);
+            } else if (code == 416 && have == expectedSize) {
+                return 0;  // Already have every byte; a previous attempt died before the rename
+            } else {
+                if (code == 416) part.delete();
+                throw new IOException("HTTP " + code);
+            }
+
+            String etag = conn.getHeaderField("ETag");
+            if (etag != null) {
+                writeSmallFile(etagFile, etag);
+            } else {
+                etagFile.delete();
+            }
+
+            is = conn.getInputStream();
+            out = new FileOutputStream(part, have > 0);
+            byte[] buffer = new byte[16384];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+                have += n;
+                fetched += n;
+                if (listener != null) listener.onProgress(have, total);
+            }
+            out.close();
+            out = null;
+            if (total >= 0 && have != total) {
+                throw new IOException("Connection closed at " + have + " of " + total + " bytes");
+            }
+            success = true;
+            return fetched;
+        } finally {
+            try { if (is != null) is.close(); } catch (IOException e) {}
+            try { if (out != null) out.close(); } catch (IOException e) {}
+            // Stream fully read and closed → socket goes back to the keep-alive pool
+            api.release(conn, startMs, success);
+        }
+    }
+
+    /** "bytes 100-999/1000" → {100, 1000}; null if it can't be parsed. */
+    static long[] parseContentRange(String header) {
+        if (header == null || !header.startsWith("bytes ")) return null;
+        try {
+            int dash = header.indexOf('-');
+            int slash = header.indexOf('/');
+            long first = Long.parseLong(header.substring(6, dash).trim());
+            long total = Long.parseLong(header.substring(slash + 1).trim());
+            return new long[] { first, total };
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) return fallback;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String readSmallFile(File f) {
+        if (!f.exists()) return null;
+        try {
+            String s = ApiClient.readFully(new FileInputStream(f)).trim();
+            return s.isEmpty() ? null : s;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeSmallFile(File f, String value) throws IOException {
+        FileOutputStream fos = new FileOutputStream(f);
+        try {
+            fos.write(value.getBytes("UTF-8"));
+        } finally {
+            fos.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.qin.feedback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The /files listing, fetched a page at a time as the user pages through it.
+ *
+ * The bridge answers /files?limit=N&cursor=C with one page, the total count
+ * and the cursor of the next page. The cursor is the last path of the page,
+ * so files added or removed meanwhile don't shift what comes next. Only the
+ * last {@link #KEEP_PAGES} pages viewed stay in memory; every cursor seen is
+ * kept so a dropped page can be fetched again. An older bridge ignores the
+ * parameters and sends the whole list, which is then split into pages here
+ * and kept.
+ *
+ * {@link #fetch} runs on a worker; everything else is UI thread only.
+ */
+class FileListing {
+
+    static final int KEEP_PAGES = 5;
+
+    /** One /files response. */
+    static class Page {
+        final List<RemoteFile> files;
+        final int total;          // Files on the server, or -1 if not reported
+        final String nextCursor;  // null on the last page
+
+        Page(List<RemoteFile> files, int total, String nextCursor) {
+            this.files = files;
+            this.total = total;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private final int pageSize;
+    private final List<String> cursors = new ArrayList<>();  // Fetches page i; "" for the first
+    private final Set<Integer> loading = new HashSet<>();
+    private final Map<Integer, List<RemoteFile>> pages =
+        new LinkedHashMap<Integer, List<RemoteFile>>(KEEP_PAGES + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<RemoteFile>> eldest) {
+                return !whole && size() > KEEP_PAGES;
+            }
+        };
+    private boolean whole = false;  // Older bridge: everything arrived at once and can't be re-fetched by page
+    private int total = 0;
+
+    FileListing(int pageSize) {
+        this.pageSize = pageSize;
+        cursors.add("");
+    }
+
+    /** Fetches the page after cursor ("" for the first). */
+    static Page fetch(ApiClient api, String filesUrl, String cursor, int limit,
+                      ApiClient.Call call) throws IOException {
+        String url = filesUrl + "?limit=" + limit;
+        if (!cursor.isEmpty()) url += "&cursor=" + URLEncoder.encode(cursor, "UTF-8");
+        ApiClient.Response resp = api.get(url, ApiClient.READ_TIMEOUT_LIST, call);
+        if (!resp.ok()) throw new IOException("Failed to load (" + resp.code + ")");
+        try {
+            JSONObject json = new JSONObject(resp.body);
+            JSONArray rows = json.getJSONArray("files");
+            List<RemoteFile> files = new ArrayList<>(rows.length());
+            for (int i = 0; i < rows.length(); i++) {
+                RemoteFile file = RemoteFile.fromJson(rows.getJSONObject(i));
+                if (file != null) files.add(file);
+            }
+            String next = json.optString("next_cursor", "");
+            return new Page(files, json.optInt("count", -1), next.isEmpty() ? null : next);
+        } catch (Exception e) {
+            throw new IOException("Parse error");
+        }
+    }
+
+    /** The cursor that fetches page, or null while the page before it hasn't been seen. */
+    String cursorFor(int page) {
+        return page < cursors.size() ? cursors.get(page) : null;
+    }
+
+    /**
+     * Marks page as being fetched. False if it is already here or on its
+     * way, or can't be fetched yet (its cursor is unknown).
+     */
+    boolean startLoading(int page) {
+        if (pages.containsKey(page) || loading.contains(page) || cursorFor(page) == null) return false;
+        loading.add(page);
+        return true;
+    }
+
+    void failed(int page) {
+        loading.remove(page);
+    }
+
+    void loaded(int page, Page result) {
+        loading.remove(page);
+        if (page == 0 && result.nextCursor == null && result.files.size() > pageSize) {
+            // The bridge ignored limit: split the full list
+            whole = true;
+            total = result.files.size();
+            for (int start = 0, p = 0; start < total; start += pageSize, p++) {
+                pages.put(p, new ArrayList<>(result.files.subList(start, Math.min(start + pageSize, total))));
+            }
+            return;
+        }
+        pages.put(page, result.files);
+        if (result.nextCursor != null) {
+            if (cursors.size() == page + 1) {
+                cursors.add(result.nextCursor);
+            } else {
+                cursors.set(page + 1, result.nextCursor);
+            }
+            total = Math.max(result.total, (page + 1) * pageSize + 1);
+        } else {
+            total = page * pageSize + result.files.size();  // Last page: now the count is exact
+        }
+    }
+
+    /** Files on the server, as of the latest page. */
+    int total() {
+        return total;
+    }
+
+    /** The files of page, or null if it isn't loaded. */
+    List<RemoteFile> page(int page) {
+        return pages.get(page);
+    }
+
+    /** The file at a list index, or null if its page isn't loaded. */
+    RemoteFile get(int index) {
+        List<RemoteFile> files = pages.get(index / pageSize);
+        int offset = index % pageSize;
+        return files != null && offset < files.size() ? files.get(offset) : null;
+    }
+}
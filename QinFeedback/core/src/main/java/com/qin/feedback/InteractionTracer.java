@@ -0,0 +1,273 @@
+package com.qin.feedback;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Times each stage of a voice interaction, from pressing 1 to stop
+ * recording until TTS starts talking, so the slowest stage can be tuned.
+ *
+ * The UI marks points as it passes them; a finished interaction becomes one
+ * row of stage durations in a ring buffer (for the hidden stats screen) and
+ * one line in a rolling trace.log. Interactions that don't start from the
+ * mic (menu items, follow-ups) start at SEND and leave the voice stages empty.
+ */
+class InteractionTracer {
+
+    // Marks, in the order an interaction passes them
+    static final int STOP_PRESSED = 0;
+    static final int RECORDER_STOPPED = 1;
+    static final int TRANSCRIPT = 2;
+    static final int SEND = 3;
+    static final int FIRST_TOKEN = 4;
+    static final int REPLY = 5;
+    static final int DISPLAYED = 6;
+    static final int SPEAK_QUEUED = 7;
+    static final int TTS_START = 8;
+    private static final int MARKS = 9;
+
+    // Stages: what the stats screen and the log report
+    static final String[] STAGES = {
+        "stop", "upload", "transcribe", "first token", "llm", "parse", "tts", "total"
+    };
+
+    private static final int CAPACITY = 100;
+    private static final long MAX_LOG_BYTES = 128 * 1024;  // Then trace.log → trace.log.1
+
+    private final File logFile;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    // Guarded by "this"
+    private final long[][] ring = new long[CAPACITY][];
+    private int head = 0;   // Next slot to write
+    private int size = 0;
+    private long[] marks;   // Interaction in progress, or null
+    private long serverTranscribeMs = -1;
+
+    InteractionTracer(File dir) {
+        this.logFile = new File(dir, "trace.log");
+        writer.execute(this::loadLog);
+    }
+
+    /** Starts a voice interaction (1 pressed to stop recording). */
+    synchronized void begin() {
+        flush();
+        marks = newMarks();
+        marks[STOP_PRESSED] = now();
+    }
+
+    /** Records a point once per interaction. SEND outside an unsent voice interaction starts a new one. */
+    synchronized void mark(int point) {
+        if (point == SEND && (marks == null || marks[SEND] >= 0)) {
+            flush();
+            marks = newMarks();
+        }
+        if (marks == null) return;
+        if (marks[point] < 0) {
+            marks[point] = now();
+        }
+        // Done once on screen and talking (or on screen with nothing to say: TTS off).
+        // With streaming, TTS starts before the reply is complete.
+        if (marks[DISPLAYED] >= 0 && (marks[TTS_START] >= 0 || marks[SPEAK_QUEUED] < 0)) {
+            flush();
+        }
+    }
+
+    /** Transcription time as reported by the bridge, taken out of "upload". */
+    synchronized void setServerTranscribeMs(long ms) {
+        serverTranscribeMs = ms;
+    }
+
+    /** Drops the interaction in progress (cancelled, error). */
+    synchronized void abandon() {
+        marks = null;
+        serverTranscribeMs = -1;
+    }
+
+    /** "stage  p50  p95  n" rows over the ring buffer. */
+    synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("⏱ Last ").append(size).append(" interactions\n\n");
+        sb.append(String.format(Locale.US, "%-12s %6s %6s %4s\n", "stage", "p50", "p95", "n"));
+        for (int s = 0; s < STAGES.length; s++) {
+            long[] values = new long[size];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                long v = ring[i][s];
+                if (v >= 0) values[n++] = v;
+            }
+            if (n == 0) {
+                sb.append(String.format(Locale.US, "%-12s %6s %6s %4d\n", STAGES[s], "-", "-", 0));
+                continue;
+            }
+            Arrays.sort(values, 0, n);
+            sb.append(String.format(Locale.US, "%-12s %6s %6s %4d\n", STAGES[s],
+                formatMs(percentile(values, n, 50)), formatMs(percentile(values, n, 95)), n));
+        }
+        return sb.toString();
+    }
+
+    void shutdown() {
+        writer.shutdown();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // STAGES
+    // ═══════════════════════════════════════════════════════════════════
+
+    // Closes the interaction in progress if it got as far as a reply
+    private void flush() {
+        long[] m = marks;
+        marks = null;
+        long server = serverTranscribeMs;
+        serverTranscribeMs = -1;
+        if (m == null || m[REPLY] < 0) return;
+
+        long[] stages = new long[STAGES.length];
+        stages[0] = span(m, STOP_PRESSED, RECORDER_STOPPED);
+        long upload = span(m, RECORDER_STOPPED, TRANSCRIPT);
+        stages[1] = upload >= 0 && server >= 0 ? Math.max(0, upload - server) : upload;
+        stages[2] = upload >= 0 ? server : -1;
+        stages[3] = span(m, SEND, FIRST_TOKEN);
+        stages[4] = span(m, SEND, REPLY);
+        stages[5] = span(m, REPLY, DISPLAYED);
+        stages[6] = span(m, SPEAK_QUEUED, TTS_START);
+        // Time the user spent reading the transcript before sending isn't ours
+        long end = m[TTS_START] >= 0 ? m[TTS_START] : m[DISPLAYED];
+        long start = m[STOP_PRESSED] >= 0 ? m[STOP_PRESSED] : m[SEND];
+        long confirm = span(m, TRANSCRIPT, SEND);
+        stages[7] = end >= 0 && start >= 0 ? end - start - Math.max(0, confirm) : -1;
+
+        ring[head] = stages;
+        head = (head + 1) % CAPACITY;
+        if (size < CAPACITY) size++;
+        final String line = formatLine(m[REPLY], stages);
+        writer.execute(() -> append(line));
+    }
+
+    private static long span(long[] m, int from, int to) {
+        return m[from] >= 0 && m[to] >= m[from] ? m[to] - m[from] : -1;
+    }
+
+    private static long[] newMarks() {
+        long[] m = new long[MARKS];
+        Arrays.fill(m, -1);
+        return m;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    // Nearest rank over the first n sorted values
+    private static long percentile(long[] sorted, int n, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * n);
+        return sorted[Math.max(0, Math.min(n - 1, rank - 1))];
+    }
+
+    private static String formatMs(long ms) {
+        return ms < 10000 ? ms + "ms" : (ms / 1000) + "s";
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // LOG (writer thread)
+    // ═══════════════════════════════════════════════════════════════════
+
+    // "2026-10-18 09:12:03 stop=40 upload=310 ... total=4200", "-" for stages not reached
+    private static String formatLine(long time, long[] stages) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date(time)));
+        for (int s = 0; s < STAGES.length; s++) {
+            sb.append(' ').append(STAGES[s].replace(' ', '_')).append('=');
+            sb.append(stages[s] >= 0 ? String.valueOf(stages[s]) : "-");
+        }
+        return sb.append('\n').toString();
+    }
+
+    private void append(String line) {
+        try {
+            if (logFile.length() > MAX_LOG_BYTES) {
+                File old = new File(logFile.getPath() + ".1");
+                old.delete();
+                logFile.renameTo(old);
+            }
+            FileOutputStream fos = new FileOutputStream(logFile, true);
+            try {
+                fos.write(line.getBytes("UTF-8"));
+            } finally {
+                fos.close();
+            }
+        } catch (IOException e) {
+            // Tracing is best effort
+        }
+    }
+
+    // Seeds the ring buffer from the last run, so the stats mean something right away
+    private void loadLog() {
+        if (!logFile.exists()) return;
+        List<long[]> rows = new ArrayList<>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    long[] stages = parseLine(line);
+                    if (stages != null) rows.add(stages);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return;
+        }
+        synchronized (this) {
+            // Anything traced since startup is newer: keep it last
+            List<long[]> current = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                current.add(ring[(head - size + i + CAPACITY) % CAPACITY]);
+            }
+            rows.addAll(current);
+            int from = Math.max(0, rows.size() - CAPACITY);
+            size = 0;
+            head = 0;
+            for (int i = from; i < rows.size(); i++) {
+                ring[head] = rows.get(i);
+                head = (head + 1) % CAPACITY;
+                size++;
+            }
+        }
+    }
+
+    private static long[] parseLine(String line) {
+        long[] stages = new long[STAGES.length];
+        Arrays.fill(stages, -1);
+        boolean any = false;
+        for (String field : line.split(" ")) {
+            int eq = field.indexOf('=');
+            if (eq < 0) continue;
+            String name = field.substring(0, eq).replace('_', ' ');
+            String value = field.substring(eq + 1);
+            for (int s = 0; s < STAGES.length; s++) {
+                if (STAGES[s].equals(name) && !value.equals("-")) {
+                    try {
+                        stages[s] = Long.parseLong(value);
+                        any = true;
+                    } catch (NumberFormatException e) {}
+                }
+            }
+        }
+        return any ? stages : null;
+    }
+}
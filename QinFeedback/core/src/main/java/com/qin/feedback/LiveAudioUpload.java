@@ -0,0 +1,145 @@
+package com.qin.feedback;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Request body that tails the recording file while MediaRecorder is still
+ * writing it. Raw AMR has no container to finalize, so every byte on disk is
+ * final and can be sent as soon as it lands. The upload ends once
+ * {@link #finish()} is called and the rest of the file has been drained.
+ *
+ * With a {@link VoiceActivityDetector}, frames are held back until the
+ * detector has heard speech in them: leading silence is never sent, a pause
+ * is sent only once speech resumes after it, and trailing silence is dropped
+ * at the end. If no speech was detected at all, the whole take is sent.
+ */
+class LiveAudioUpload implements ApiClient.BodyWriter {
+
+    private static final long POLL_MS = 100;
+
+    private final File file;
+    private final VoiceActivityDetector vad;
+    private volatile boolean finished = false;
+    private volatile boolean cancelled = false;
+    private volatile long bytesSent = 0;
+
+    // Frames read but not yet sent or dropped, and the index of the first one (writer thread only)
+    private final AmrFrames.Splitter splitter = new AmrFrames.Splitter();
+    private final ArrayDeque<byte[]> held = new ArrayDeque<>();
+    private long heldIndex = 0;
+
+    LiveAudioUpload(File file) {
+        this(file, null);
+    }
+
+    LiveAudioUpload(File file, VoiceActivityDetector vad) {
+        this.file = file;
+        this.vad = vad;
+    }
+
+    /** Recording stopped: send what's left, then complete the request. */
+    void finish() {
+        finished = true;
+    }
+
+    /** Recording abandoned: abort the request without a result. */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    long getBytesSent() {
+        return bytesSent;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        FileInputStream in = null;
+        byte[] buffer = new byte[4096];
+        try {
+            while (true) {
+                if (cancelled) {
+                    throw new IOException("Cancelled");
+                }
+                // Read the flag before draining, so bytes written just before
+                // finish() are still picked up on this pass
+                boolean done = finished;
+                if (in == null && file.exists()) {
+                    in = new FileInputStream(file);
+                }
+                int n = in != null ? in.read(buffer) : -1;
+                if (n > 0) {
+                    if (vad != null) {
+                        splitter.feed(buffer, n);
+                        sendSpeech(out, false);
+                    } else {
+                        out.write(buffer, 0, n);
+                        out.flush();
+                        bytesSent += n;
+                    }
+                    continue;
+                }
+                if (done) {
+                    if (vad != null) sendSpeech(out, true);
+                    return;
+                }
+                if (vad != null) {
+                    sendSpeech(out, false);  // Speech may have resumed since the last read
+                }
+                try {
+                    Thread.sleep(POLL_MS);
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted");
+                }
+            }
+        } finally {
+            try { if (in != null) in.close(); } catch (IOException e) {}
+        }
+    }
+
+    // Sends the held frames the detector says are speech; at the end, drops the rest
+    private void sendSpeech(OutputStream out, boolean last) throws IOException {
+        long sentBefore = bytesSent;
+        byte[] header = splitter.header();
+        if (header != null) {
+            write(out, header);
+        }
+        if (!splitter.isAmr()) {
+            write(out, splitter.takeRemaining());  // Not raw AMR: send as is
+            out.flush();
+            return;
+        }
+        byte[] frame;
+        while ((frame = splitter.nextFrame()) != null) {
+            held.add(frame);
+        }
+
+        long from = vad.keepFromMs();
+        long until = vad.keepUntilMs();
+        if (until < 0) {
+            if (!last) return;  // Nothing heard yet: don't know where speech starts
+            until = Long.MAX_VALUE;  // Nothing heard at all: let Whisper decide
+        }
+        while (!held.isEmpty()) {
+            long t = heldIndex * AmrFrames.FRAME_MS;
+            if (t >= until) break;
+            byte[] f = held.poll();
+            heldIndex++;
+            if (t >= from) write(out, f);
+        }
+        if (last) held.clear();
+        if (bytesSent != sentBefore) out.flush();
+    }
+
+    private void write(OutputStream out, byte[] data) throws IOException {
+        out.write(data);
+        bytesSent += data.length;
+    }
+}
@@ -0,0 +1,68 @@
+package com.qin.feedback;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Last good /menu payload on disk, with the ETag it was served with.
+ *
+ * onCreate renders from here synchronously, so the menu is up within a frame
+ * of launch (even offline); the network only has to confirm it with a 304.
+ */
+class MenuCache {
+
+    private final File file;
+
+    private String json;
+    private String etag;
+
+    MenuCache(File dir) {
+        this.file = new File(dir, "menu_cache.json");
+    }
+
+    /** Reads the cached menu; returns null if there is none or it is unreadable. */
+    String load() {
+        if (!file.exists()) return null;
+        try {
+            JSONObject saved = new JSONObject(ApiClient.readFully(new FileInputStream(file)));
+            json = saved.getString("menu");
+            etag = saved.optString("etag", null);
+        } catch (Exception e) {
+            // Corrupt cache is as good as none; the network copy replaces it
+            json = null;
+            etag = null;
+        }
+        return json;
+    }
+
+    String getEtag() {
+        return etag;
+    }
+
+    /** Saves a fresh payload: written to a temp file first so a crash can't leave half a menu. */
+    void save(String menuJson, String newEtag) {
+        json = menuJson;
+        etag = newEtag;
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            JSONObject saved = new JSONObject();
+            saved.put("menu", menuJson);
+            if (newEtag != null) saved.put("etag", newEtag);
+            fos = new FileOutputStream(tmp);
+            fos.write(saved.toString().getBytes("UTF-8"));
+            fos.getFD().sync();
+            fos.close();
+            fos = null;
+            if (!tmp.renameTo(file)) tmp.delete();
+        } catch (Exception e) {
+            tmp.delete();
+        } finally {
+            try { if (fos != null) fos.close(); } catch (IOException e) {}
+        }
+    }
+}
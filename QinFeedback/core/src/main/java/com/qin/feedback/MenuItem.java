@@ -0,0 +1,40 @@
+package com.qin.feedback;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/** One dynamic main-menu entry (keys 4-9) as the bridge's /menu describes it. */
+class MenuItem {
+    String label;
+    String type;     // "instant" or "voice"
+    String command;
+    String prompt;
+
+    /** Parses a /menu body into key → item, or null if it isn't a usable menu. */
+    static Map<String, MenuItem> parseMenu(String json) {
+        try {
+            JSONObject data = new JSONObject(json);
+            JSONObject items = data.getJSONObject("items");
+
+            Map<String, MenuItem> parsed = new HashMap<>();
+            Iterator<String> keys = items.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                JSONObject item = items.getJSONObject(key);
+
+                MenuItem mi = new MenuItem();
+                mi.label = item.optString("label", "Action " + key);
+                mi.type = item.optString("type", "instant");
+                mi.command = item.optString("command", null);
+                mi.prompt = item.optString("prompt", null);
+                parsed.put(key, mi);
+            }
+            return parsed;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
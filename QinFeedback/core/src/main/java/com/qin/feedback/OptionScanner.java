@@ -0,0 +1,238 @@
+package com.qin.feedback;
+
+/**
+ * Splits an LLM reply into its numbered options ("[1] Foo" or "1. Foo"), the
+ * text left for the screen, and that text cleaned up for TTS, in one pass
+ * and without regexes.
+ *
+ * Same results as the old OPTION_PATTERN / OPTION_LINE_PATTERN /
+ * cleanForSpeech regex chain, which compiled three patterns per call and
+ * walked the reply five times on every answer. One instance is reused on
+ * the UI thread, so a scan allocates little beyond the result strings.
+ * Pure Java: no Android types.
+ */
+class OptionScanner {
+
+    private static final int MAX_OPTIONS = 16;
+
+    private final StringBuilder display = new StringBuilder();
+    private final StringBuilder pending = new StringBuilder();  // Whitespace not yet known to be kept
+    private final SpeechBuilder speech = new SpeechBuilder();
+    private final char[] keys = new char[MAX_OPTIONS];
+    private final String[] texts = new String[MAX_OPTIONS];
+    private int optionCount;
+    private boolean endsWithOptions;  // No text after the last option line
+
+    /** Scans text; results are valid until the next call. */
+    OptionScanner scan(CharSequence text) {
+        display.setLength(0);
+        pending.setLength(0);
+        speech.reset();
+        optionCount = 0;
+        endsWithOptions = false;
+
+        int n = text.length();
+        int lineStart = 0;
+        while (lineStart <= n) {
+            int lineEnd = lineStart;
+            while (lineEnd < n && text.charAt(lineEnd) != '\n') lineEnd++;
+
+            if (isOptionLine(text, lineStart, lineEnd)) {
+                endsWithOptions = true;
+                addOption(text, lineStart, lineEnd);
+                // The old strip regex also ate the newline(s) and blank lines before an option line
+                int nl = pending.indexOf("\n");
+                if (nl >= 0) pending.setLength(nl);
+                if (display.length() == 0) pending.setLength(0);
+            } else {
+                if (skipSpaces(text, lineStart, lineEnd) < lineEnd) endsWithOptions = false;
+                for (int i = lineStart; i < lineEnd; i++) {
+                    append(text.charAt(i));
+                }
+            }
+            if (lineEnd < n) append('\n');
+            lineStart = lineEnd + 1;
+        }
+        speech.finish();
+        return this;
+    }
+
+    int optionCount() {
+        return optionCount;
+    }
+
+    char optionKey(int i) {
+        return keys[i];
+    }
+
+    String optionText(int i) {
+        return texts[i];
+    }
+
+    /**
+     * True if the option lines are the last thing in the text (blank lines
+     * aside). A numbered list in the middle of a reply doesn't count: text
+     * still follows it.
+     */
+    boolean endsWithOptions() {
+        return endsWithOptions;
+    }
+
+    /** Reply without option lines, trimmed: what goes on screen. */
+    String displayText() {
+        return display.toString();
+    }
+
+    /** Like displayText, but keeps trailing whitespace (a streamed sentence may have just ended). */
+    String bodyText() {
+        return display.toString() + pending;
+    }
+
+    /** displayText as it should be spoken. */
+    String speechText() {
+        return speech.toString();
+    }
+
+    /** Same cleanup as speechText, for text that has no options in it (streamed sentences). */
+    static String cleanForSpeech(CharSequence text) {
+        SpeechBuilder sb = new SpeechBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            sb.feed(text.charAt(i));
+        }
+        sb.finish();
+        return sb.toString();
+    }
+
+    // Whitespace is held back until the next visible character, so the
+    // display text comes out trimmed and option lines can take it with them
+    private void append(char c) {
+        if (isSpace(c)) {
+            pending.append(c);
+            return;
+        }
+        if (display.length() > 0) {
+            for (int i = 0; i < pending.length(); i++) {
+                char p = pending.charAt(i);
+                display.append(p);
+                speech.feed(p);
+            }
+        }
+        pending.setLength(0);
+        display.append(c);
+        speech.feed(c);
+    }
+
+    // [d] or d. at the start of a line (after indentation), followed by something
+    private static boolean isOptionLine(CharSequence text, int start, int end) {
+        int i = skipSpaces(text, start, end);
+        int keyEnd = keyEnd(text, i, end);
+        return keyEnd > 0 && keyEnd < end;
+    }
+
+    /** Index just past "[d]" or "d." at i, or -1. */
+    private static int keyEnd(CharSequence text, int i, int end) {
+        if (i + 2 < end && text.charAt(i) == '[' && isDigit(text.charAt(i + 1)) && text.charAt(i + 2) == ']') {
+            return i + 3;
+        }
+        if (i + 1 < end && isDigit(text.charAt(i)) && text.charAt(i + 1) == '.') {
+            return i + 2;
+        }
+        return -1;
+    }
+
+    private void addOption(CharSequence text, int start, int end) {
+        int i = skipSpaces(text, start, end);
+        char key = text.charAt(i) == '[' ? text.charAt(i + 1) : text.charAt(i);
+        int from = skipSpaces(text, keyEnd(text, i, end), end);
+        int to = end;
+        for (int j = from; j < end; j++) {
+            if (text.charAt(j) == '[') return;  // Not an option: e.g. "[1] Reply [draft]"
+        }
+        while (to > from && isSpace(text.charAt(to - 1))) to--;
+        if (to == from || optionCount == MAX_OPTIONS) return;
+        keys[optionCount] = key;
+        texts[optionCount] = text.subSequence(from, to).toString();
+        optionCount++;
+    }
+
+    private static int skipSpaces(CharSequence text, int i, int end) {
+        while (i < end && isSpace(text.charAt(i))) i++;
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Same set as regex \s
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    /**
+     * Newline runs become ". ", runs of 2+ table characters ([ ] | -) become
+     * a space, whitespace collapses to single spaces, ends are trimmed.
+     */
+    private static class SpeechBuilder {
+        private final StringBuilder out = new StringBuilder();
+        private boolean space;        // Collapsed whitespace waiting for the next visible char
+        private boolean inNewlines;
+        private char tableChar;
+        private int tableRun;
+
+        void reset() {
+            out.setLength(0);
+            space = false;
+            inNewlines = false;
+            tableRun = 0;
+        }
+
+        void feed(char c) {
+            if (c == '\n') {
+                endTableRun();
+                if (!inNewlines) {
+                    emit('.');
+                    space = true;
+                    inNewlines = true;
+                }
+                return;
+            }
+            inNewlines = false;
+            if (c == '[' || c == ']' || c == '|' || c == '-') {
+                if (tableRun == 0) tableChar = c;
+                tableRun++;
+                return;
+            }
+            endTableRun();
+            if (isSpace(c)) {
+                space = true;
+            } else {
+                emit(c);
+            }
+        }
+
+        void finish() {
+            endTableRun();
+        }
+
+        private void endTableRun() {
+            if (tableRun == 1) {
+                emit(tableChar);
+            } else if (tableRun > 1) {
+                space = true;
+            }
+            tableRun = 0;
+        }
+
+        private void emit(char c) {
+            if (space && out.length() > 0) out.append(' ');
+            space = false;
+            out.append(c);
+        }
+
+        @Override
+        public String toString() {
+            return out.toString();
+        }
+    }
+}
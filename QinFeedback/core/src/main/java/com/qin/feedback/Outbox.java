@@ -0,0 +1,441 @@
+package com.qin.feedback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Requests that couldn't reach the bridge, kept on disk until they can.
+ *
+ * Actions ("⏰ Remind", "📝 Note"...), chats and recordings whose upload
+ * failed are queued in the order they were made and replayed to POST /batch
+ * a few at a time once the phone is back online. Each item carries a client
+ * id, and the bridge remembers the ids it has handled, so a replay whose
+ * response was lost is answered as "duplicate" rather than acted on twice.
+ * Actions keep the menu entry as it was when they were taken, since the
+ * dynamic menu may have moved another command onto the key by the replay.
+ *
+ * One replay runs at a time, and after a failed one the next waits 30 s,
+ * doubling to 15 min (with jitter), however often connectivity flaps.
+ */
+class Outbox {
+
+    static final String KIND_ACTION = "action";
+    static final String KIND_CHAT = "chat";
+    static final String KIND_AUDIO = "audio";
+
+    private static final int MAX_BATCH_ITEMS = 5;
+    private static final int MAX_BATCH_AUDIO_BYTES = 256 * 1024;
+    private static final int MAX_ITEM_ATTEMPTS = 5;  // Then the bridge is rejecting it, not unreachable
+    private static final long BACKOFF_MIN_MS = 30000;
+    private static final long BACKOFF_MAX_MS = 15 * 60000;
+
+    static class Item {
+        String id;
+        String kind;
+        long created;
+        String action;       // Menu key (action, or audio taken for an action)
+        String label;        // That key's menu entry when it was pressed, so a replay
+        String type;         // runs the same command even if the menu changed since
+        String command;
+        String text;         // voice_input for actions, the message for chat
+        String audioPath;    // Copy of the take, for audio
+        String contentType;
+        int attempts;
+
+        JSONObject toJson() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("kind", kind);
+            json.put("created", created);
+            if (action != null) json.put("action", action);
+            if (label != null) json.put("label", label);
+            if (type != null) json.put("type", type);
+            if (command != null) json.put("command", command);
+            if (text != null) json.put("text", text);
+            if (audioPath != null) json.put("audio_path", audioPath);
+            if (contentType != null) json.put("content_type", contentType);
+            json.put("attempts", attempts);
+            return json;
+        }
+
+        static Item fromJson(JSONObject json) {
+            Item item = new Item();
+            item.id = json.optString("id");
+            item.kind = json.optString("kind");
+            item.created = json.optLong("created");
+            item.action = json.optString("action", null);
+            item.label = json.optString("label", null);
+            item.type = json.optString("type", null);
+            item.command = json.optString("command", null);
+            item.text = json.optString("text", null);
+            item.audioPath = json.optString("audio_path", null);
+            item.contentType = json.optString("content_type", null);
+            item.attempts = json.optInt("attempts");
+            return item;
+        }
+
+        boolean samePayload(Item other) {
+            return kind.equals(other.kind) && eq(action, other.action) && eq(label, other.label)
+                && eq(text, other.text)
+                && (audioPath == null) == (other.audioPath == null);
+        }
+
+        private static boolean eq(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /** What one replay did. */
+    static class Result {
+        int sent;        // Handled by the bridge (including duplicates)
+        int dropped;     // Rejected too many times
+        int remaining;
+        boolean failed;  // Bridge unreachable: backing off
+    }
+
+    private static Outbox instance;
+
+    private final File file;
+    private final File audioDir;
+    private final List<Item> items = new ArrayList<>();
+    private final Random random = new Random();
+
+    private boolean replaying = false;
+    private long backoffMs = 0;
+    private long nextAttemptAt = 0;
+
+    static synchronized Outbox get(File dir) {
+        if (instance == null) instance = new Outbox(dir);
+        return instance;
+    }
+
+    Outbox(File dir) {
+        file = new File(dir, "outbox.json");
+        audioDir = new File(dir, "outbox");
+        load();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // QUEUE
+    // ═══════════════════════════════════════════════════════════════════
+
+    /**
+     * Queues a menu action (menuItem: the entry shown on its key, if known)
+     * with its transcript; returns false if the same one is already waiting.
+     */
+    boolean addAction(String actionKey, MenuItem menuItem, String voiceInput) {
+        Item item = newItem(KIND_ACTION);
+        setAction(item, actionKey, menuItem);
+        item.text = voiceInput;
+        return add(item);
+    }
+
+    boolean addChat(String text) {
+        Item item = newItem(KIND_CHAT);
+        item.text = text;
+        return add(item);
+    }
+
+    /**
+     * Queues a take that couldn't be transcribed. The file is copied, since
+     * the recorder overwrites the original with the next take.
+     */
+    boolean addAudio(File take, String contentType, String actionKey, MenuItem menuItem) {
+        Item item = newItem(KIND_AUDIO);
+        setAction(item, actionKey, menuItem);
+        item.contentType = contentType;
+        audioDir.mkdirs();
+        String ext = take.getName().contains(".") ? take.getName().substring(take.getName().lastIndexOf('.')) : "";
+        File copy = new File(audioDir, item.id + ext);
+        try {
+            copy(take, copy);
+        } catch (IOException e) {
+            copy.delete();
+            return false;
+        }
+        item.audioPath = copy.getPath();
+        return add(item);
+    }
+
+    synchronized int size() {
+        return items.size();
+    }
+
+    /** How long until the backoff after a failed replay expires. */
+    synchronized long msUntilDue() {
+        return Math.max(0, nextAttemptAt - System.currentTimeMillis());
+    }
+
+    /** True if there is something to send and no backoff is pending. */
+    synchronized boolean isDue() {
+        return !items.isEmpty() && !replaying && System.currentTimeMillis() >= nextAttemptAt;
+    }
+
+    /** Failures where the request can't have reached the bridge, so sending it again is safe. */
+    static boolean isUnreachable(IOException e) {
+        return e instanceof UnknownHostException || e instanceof ConnectException
+            || e instanceof NoRouteToHostException;
+    }
+
+    private Item newItem(String kind) {
+        Item item = new Item();
+        item.id = UUID.randomUUID().toString();
+        item.kind = kind;
+        item.created = System.currentTimeMillis();
+        return item;
+    }
+
+    private static void setAction(Item item, String actionKey, MenuItem menuItem) {
+        item.action = actionKey;
+        if (menuItem != null) {
+            item.label = menuItem.label;
+            item.type = menuItem.type;
+            item.command = menuItem.command;
+        }
+    }
+
+    private synchronized boolean add(Item item) {
+        // A second press of Send while offline is the same note, not a new one
+        // (audio can't be compared cheaply, and two takes are two notes)
+        if (item.audioPath == null) {
+            for (Item queued : items) {
+                if (queued.samePayload(item)) return false;
+            }
+        }
+        items.add(item);
+        // New work shouldn't wait out a long backoff; the next failure still doubles it
+        nextAttemptAt = 0;
+        save();
+        return true;
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // REPLAY
+    // ═══════════════════════════════════════════════════════════════════
+
+    /**
+     * Sends queued items oldest first, in batches, until the queue is empty or
+     * the bridge can't be reached. Blocking; run on a worker. Returns null if
+     * another replay is running or the backoff hasn't expired.
+     */
+    Result replay(ApiClient api, String batchUrl, ApiClient.Call call) {
+        synchronized (this) {
+            if (!isDue()) return null;
+            replaying = true;
+        }
+        Result result = new Result();
+        Set<String> tried = new HashSet<>();  // Rejected items wait for the next replay
+        try {
+            while (call == null || !call.isCancelled()) {
+                List<Item> batch = nextBatch(tried);
+                if (batch.isEmpty()) break;
+                if (!sendBatch(api, batchUrl, batch, result, call)) {
+                    result.failed = true;
+                    break;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                replaying = false;
+                if (result.failed) {
+                    backoffMs = Math.min(BACKOFF_MAX_MS, Math.max(BACKOFF_MIN_MS, backoffMs * 2));
+                    // ±25%, so phones that lost the same tower don't all come back at once
+                    long jitter = (long) (backoffMs * (random.nextDouble() - 0.5) / 2);
+                    nextAttemptAt = System.currentTimeMillis() + backoffMs + jitter;
+                } else {
+                    backoffMs = 0;
+                    nextAttemptAt = 0;
+                }
+                result.remaining = items.size();
+            }
+        }
+        return result;
+    }
+
+    // Oldest untried items up to the count and audio size limits (always at least one)
+    private synchronized List<Item> nextBatch(Set<String> tried) {
+        List<Item> batch = new ArrayList<>();
+        long audioBytes = 0;
+        for (Item item : items) {
+            if (!tried.add(item.id)) continue;
+            long size = item.audioPath != null ? new File(item.audioPath).length() : 0;
+            if (!batch.isEmpty() && (batch.size() >= MAX_BATCH_ITEMS || audioBytes + size > MAX_BATCH_AUDIO_BYTES)) {
+                tried.remove(item.id);
+                break;
+            }
+            batch.add(item);
+            audioBytes += size;
+        }
+        return batch;
+    }
+
+    private boolean sendBatch(ApiClient api, String batchUrl, List<Item> batch,
+                              Result result, ApiClient.Call call) {
+        JSONArray results;
+        try {
+            JSONArray payload = new JSONArray();
+            for (Item item : batch) {
+                payload.put(requestJson(item));
+            }
+            // The bridge answers once every item has been through the LLM
+            ApiClient.Response resp = api.postJson(batchUrl, new JSONObject().put("items", payload).toString(),
+                ApiClient.READ_TIMEOUT_LLM * batch.size(), call);
+            if (!resp.ok()) return false;
+            results = new JSONObject(resp.body).getJSONArray("results");
+        } catch (Exception e) {
+            return false;
+        }
+
+        synchronized (this) {
+            for (Item item : batch) {
+                String status = statusFor(results, item.id);
+                if ("ok".equals(status) || "duplicate".equals(status)) {
+                    remove(item);
+                    result.sent++;
+                } else if (++item.attempts >= MAX_ITEM_ATTEMPTS) {
+                    remove(item);
+                    result.dropped++;
+                }
+            }
+            save();
+        }
+        return true;
+    }
+
+    private JSONObject requestJson(Item item) throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("id", item.id);
+        json.put("kind", item.kind);
+        if (item.action != null) json.put("action", item.action);
+        if (item.label != null) {
+            // Replayed as this entry, not whatever the key holds on the bridge's menu now
+            JSONObject menuItem = new JSONObject();
+            menuItem.put("label", item.label);
+            menuItem.put("type", item.type != null ? item.type : "voice");
+            if (item.command != null) menuItem.put("command", item.command);
+            json.put("menu_item", menuItem);
+        }
+        if (KIND_ACTION.equals(item.kind)) {
+            json.put("voice_input", item.text != null ? item.text : "");
+        } else if (KIND_CHAT.equals(item.kind)) {
+            json.put("text", item.text);
+        } else if (KIND_AUDIO.equals(item.kind)) {
+            json.put("audio", base64(readBytes(new File(item.audioPath))));
+            json.put("content_type", item.contentType);
+        }
+        return json;
+    }
+
+    private static String statusFor(JSONArray results, String id) {
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject r = results.optJSONObject(i);
+            if (r != null && id.equals(r.optString("id"))) return r.optString("status");
+        }
+        return null;
+    }
+
+    private void remove(Item item) {
+        items.remove(item);
+        if (item.audioPath != null) new File(item.audioPath).delete();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // PERSISTENCE
+    // ═══════════════════════════════════════════════════════════════════
+
+    private synchronized void load() {
+        if (!file.exists()) return;
+        try {
+            JSONArray saved = new JSONArray(ApiClient.readFully(new FileInputStream(file)));
+            for (int i = 0; i < saved.length(); i++) {
+                Item item = Item.fromJson(saved.getJSONObject(i));
+                // A take whose copy is gone can't be sent
+                if (item.audioPath != null && !new File(item.audioPath).exists()) continue;
+                items.add(item);
+            }
+        } catch (Exception e) {
+            // Unreadable: nothing we can replay from it
+        }
+    }
+
+    // Written to a temp file first so a crash can't lose the queue
+    private synchronized void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            JSONArray saved = new JSONArray();
+            for (Item item : items) {
+                saved.put(item.toJson());
+            }
+            fos = new FileOutputStream(tmp);
+            fos.write(saved.toString().getBytes("UTF-8"));
+            fos.getFD().sync();
+            fos.close();
+            fos = null;
+            if (!tmp.renameTo(file)) tmp.delete();
+        } catch (Exception e) {
+            tmp.delete();
+        } finally {
+            try { if (fos != null) fos.close(); } catch (IOException e) {}
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        OutputStream out = new FileOutputStream(to);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    private static byte[] readBytes(File f) throws IOException {
+        byte[] data = new byte[(int) f.length()];
+        InputStream in = new FileInputStream(f);
+        try {
+            int off = 0;
+            int n;
+            while (off < data.length && (n = in.read(data, off, data.length - off)) != -1) off += n;
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    // java.util.Base64 is API 26 and android.util.Base64 isn't available in core
+    private static final char[] BASE64 =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    static String base64(byte[] data) {
+        StringBuilder sb = new StringBuilder((data.length + 2) / 3 * 4);
+        for (int i = 0; i < data.length; i += 3) {
+            int b = (data[i] & 0xff) << 16;
+            if (i + 1 < data.length) b |= (data[i + 1] & 0xff) << 8;
+            if (i + 2 < data.length) b |= data[i + 2] & 0xff;
+            sb.append(BASE64[(b >> 18) & 63]).append(BASE64[(b >> 12) & 63]);
+            sb.append(i + 1 < data.length ? BASE64[(b >> 6) & 63] : '=');
+            sb.append(i + 2 < data.length ? BASE64[b & 63] : '=');
+        }
+        return sb.toString();
+    }
+}
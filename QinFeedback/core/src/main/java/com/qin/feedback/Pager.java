@@ -0,0 +1,73 @@
+package com.qin.feedback;
+
+/**
+ * Page arithmetic for lists picked with the number keys: keys 1-9 select
+ * on the current page, * and # move between pages.
+ */
+class Pager {
+
+    private final int perPage;
+    private int count = 0;
+    private int page = 0;
+
+    Pager(int perPage) {
+        this.perPage = perPage;
+    }
+
+    /** New list: back to the first page. */
+    void reset(int count) {
+        this.count = count;
+        this.page = 0;
+    }
+
+    /** The list grew or shrank: stay on this page if it still exists. */
+    void resize(int count) {
+        this.count = count;
+        if (page > 0 && start() >= count) page = Math.max(0, (count - 1) / perPage);
+    }
+
+    int count() {
+        return count;
+    }
+
+    int page() {
+        return page;
+    }
+
+    /** First list index on this page. */
+    int start() {
+        return page * perPage;
+    }
+
+    /** One past the last list index on this page. */
+    int end() {
+        return Math.min(start() + perPage, count);
+    }
+
+    boolean hasNext() {
+        return end() < count;
+    }
+
+    boolean hasPrev() {
+        return page > 0;
+    }
+
+    boolean next() {
+        if (!hasNext()) return false;
+        page++;
+        return true;
+    }
+
+    boolean prev() {
+        if (!hasPrev()) return false;
+        page--;
+        return true;
+    }
+
+    /** List index for a 1-based key on this page, or -1 if nothing is there. */
+    int indexForKey(int key) {
+        if (key < 1 || key > perPage) return -1;
+        int index = start() + key - 1;
+        return index < count ? index : -1;
+    }
+}
@@ -0,0 +1,169 @@
+package com.qin.feedback;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Speculatively sends the most likely follow-up options to /chat while the
+ * user is still reading, so a matching key press shows its answer at once.
+ *
+ * The bridge answers requests marked "prefetch" in a throwaway session, so
+ * questions the user never picked stay out of the conversation history; when
+ * a prefetched answer is used, it is committed to the real session. Options
+ * that would do something (reply, send, remind...) are never prefetched, and
+ * the bridge adds a read-only guard as well.
+ */
+class PrefetchEngine {
+
+    interface Listener {
+        void onResponse(Reply response);
+    }
+
+    private static final int MAX_PER_RESPONSE = 2;  // Also the in-flight budget: onOptions cancels the previous batch
+    private static final int CACHE_SIZE = 4;
+
+    // Options that act on the world rather than just answer a question
+    private static final String[] SIDE_EFFECT_WORDS = {
+        "reply", "send", "forward", "archive", "delete", "remind", "schedule",
+        "book", "confirm", "save", "create", "add ", "set ", "mark", "cancel",
+        "buy", "pay", "post", "email", "call", "custom", "voice"
+    };
+
+    private final ApiClient api;
+    private final RequestScheduler scheduler;
+    private final String chatUrl;
+
+    // All state below is only touched on the callback (UI) thread
+    private final Map<String, Prefetch> inFlight = new HashMap<>();
+    private final Map<String, Reply> cache = new LinkedHashMap<String, Reply>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Reply> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static class Prefetch {
+        long requestId;
+        Listener waiter;  // Set when the user picked this option before it finished
+    }
+
+    PrefetchEngine(ApiClient api, RequestScheduler scheduler, String chatUrl) {
+        this.api = api;
+        this.scheduler = scheduler;
+        this.chatUrl = chatUrl;
+    }
+
+    /**
+     * New options are on screen: drop answers for the old ones and start on
+     * the first few. The model lists its best guesses first.
+     */
+    void onOptions(Map<String, String> options) {
+        cancelAll();
+        cache.clear();
+
+        List<String> candidates = new ArrayList<>();
+        for (int i = 1; i <= 7 && candidates.size() < MAX_PER_RESPONSE; i++) {
+            String text = options.get(String.valueOf(i));
+            if (text != null && isSafe(text)) {
+                candidates.add(text);
+            }
+        }
+        for (String text : candidates) {
+            start(text);
+        }
+    }
+
+    /** User picked an option: returns its prefetched answer, if there is one. */
+    Reply takeCached(String optionText) {
+        Reply cached = cache.remove(optionText);
+        if (cached != null) {
+            cancelAll();
+            commit(optionText, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * User picked an option (or sent something else): every other prefetch is
+     * cancelled. Returns true if this one is already on its way; the listener
+     * then gets its answer, or null if it failed and should be sent for real.
+     */
+    boolean awaitInFlight(String optionText, Listener listener) {
+        Prefetch match = inFlight.remove(optionText);
+        cancelAll();
+        if (match == null) {
+            return false;
+        }
+        match.waiter = listener;
+        inFlight.put(optionText, match);
+        return true;
+    }
+
+    /** Cancel in-flight prefetches (user left the response or chose a fixed key). */
+    void cancelAll() {
+        for (Prefetch p : inFlight.values()) {
+            scheduler.cancel(p.requestId);
+        }
+        inFlight.clear();
+    }
+
+    private void start(final String optionText) {
+        final Prefetch prefetch = new Prefetch();
+        inFlight.put(optionText, prefetch);
+
+        prefetch.requestId = scheduler.submit(RequestScheduler.PRIORITY_SPECULATIVE,
+            RequestScheduler.GROUP_UI, req -> {
+                try {
+                    JSONObject json = new JSONObject();
+                    json.put("text", optionText);
+                    json.put("prefetch", true);
+                    ApiClient.Response resp = api.postJson(chatUrl, json.toString(),
+                        ApiClient.READ_TIMEOUT_LLM, req.call);
+                    if (resp.ok()) {
+                        return Reply.fromJson(new JSONObject(resp.body));
+                    }
+                } catch (Exception e) {}
+                return null;
+            }, e -> null, (Reply response) -> finish(optionText, prefetch, response));
+    }
+
+    private void finish(String optionText, Prefetch prefetch, Reply response) {
+        if (inFlight.get(optionText) != prefetch) return;  // Cancelled or superseded
+        inFlight.remove(optionText);
+
+        if (prefetch.waiter != null) {
+            if (response != null) commit(optionText, response);
+            prefetch.waiter.onResponse(response);
+        } else if (response != null) {
+            cache.put(optionText, response);
+        }
+    }
+
+    // The answer was shown: record the turn in the real session, so follow-ups see it
+    private void commit(final String optionText, final Reply response) {
+        scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_BACKGROUND, req -> {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("text", optionText);
+                json.put("commit", true);
+                json.put("response", response.body);
+                api.postJson(chatUrl, json.toString(), ApiClient.READ_TIMEOUT_LLM, req.call);
+            } catch (Exception e) {}
+            return null;
+        }, result -> {});
+    }
+
+    private static boolean isSafe(String optionText) {
+        String lower = optionText.toLowerCase(Locale.US) + " ";
+        for (String word : SIDE_EFFECT_WORDS) {
+            if (lower.contains(word)) return false;
+        }
+        return true;
+    }
+}
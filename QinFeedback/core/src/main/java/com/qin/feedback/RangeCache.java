@@ -0,0 +1,282 @@
+package com.qin.feedback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk cache of the byte ranges of remote files that have been streamed,
+ * so a shiur that was partly heard plays again without fetching those bytes.
+ *
+ * Each file is one sparse data file written at its real offsets, plus the
+ * list of ranges it holds. The index (range_cache.json) is saved when a
+ * {@link Writer} closes. Whole files are evicted least recently used first
+ * once the cached bytes pass the cap; the file used last (the one playing)
+ * is never evicted. An ETag change drops a file's ranges, since they belong
+ * to an older version.
+ *
+ * Thread-safe: the proxy reads and writes from several connections at once.
+ */
+class RangeCache {
+
+    static final long DEFAULT_MAX_BYTES = 200L * 1024 * 1024;
+
+    private static class Entry {
+        final String key;
+        long length = -1;  // Size of the remote file, -1 until known
+        String etag;
+        final List<long[]> ranges = new ArrayList<>();  // Sorted, disjoint {start, end)
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        long cachedBytes() {
+            long n = 0;
+            for (long[] r : ranges) n += r[1] - r[0];
+            return n;
+        }
+
+        void add(long start, long end) {
+            // Merge with every range it touches
+            int i = 0;
+            while (i < ranges.size() && ranges.get(i)[1] < start) i++;
+            while (i < ranges.size() && ranges.get(i)[0] <= end) {
+                long[] r = ranges.remove(i);
+                start = Math.min(start, r[0]);
+                end = Math.max(end, r[1]);
+            }
+            ranges.add(i, new long[] {start, end});
+        }
+    }
+
+    private static RangeCache instance;
+
+    private final File dir;
+    private final File indexFile;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);  // LRU order
+
+    static synchronized RangeCache get(File dir) {
+        if (instance == null) {
+            instance = new RangeCache(dir, DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    RangeCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.indexFile = new File(dir, "range_cache.json");
+        this.maxBytes = maxBytes;
+        dir.mkdirs();
+        load();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // LOOKUPS
+    // ═══════════════════════════════════════════════════════════════════
+
+    /** Size of the remote file, or -1 if not known yet. */
+    synchronized long length(String key) {
+        Entry e = entries.get(key);
+        return e != null ? e.length : -1;
+    }
+
+    synchronized String etag(String key) {
+        Entry e = entries.get(key);
+        return e != null ? e.etag : null;
+    }
+
+    /**
+     * Records the remote file's size and validator. If the validator changed,
+     * the file was replaced on the server and what is cached is thrown away.
+     */
+    synchronized void setRemote(String key, long length, String etag) {
+        Entry e = entry(key);
+        boolean replaced = (e.etag != null && etag != null && !e.etag.equals(etag))
+            || (e.length >= 0 && length >= 0 && e.length != length);
+        if (replaced) {
+            e.ranges.clear();
+            dataFile(key).delete();
+        }
+        if (length >= 0) e.length = length;
+        if (etag != null) e.etag = etag;
+    }
+
+    /** How many bytes from offset on are cached without a gap (0 if offset isn't). */
+    synchronized long cachedRun(String key, long offset) {
+        Entry e = entries.get(key);
+        if (e == null) return 0;
+        for (long[] r : e.ranges) {
+            if (r[0] <= offset && offset < r[1]) return r[1] - offset;
+        }
+        return 0;
+    }
+
+    /** Start of the first cached range after offset, or -1 if there is none. */
+    synchronized long nextCachedStart(String key, long offset) {
+        Entry e = entries.get(key);
+        if (e == null) return -1;
+        for (long[] r : e.ranges) {
+            if (r[0] > offset) return r[0];
+        }
+        return -1;
+    }
+
+    synchronized long cachedBytes(String key) {
+        Entry e = entries.get(key);
+        return e != null ? e.cachedBytes() : 0;
+    }
+
+    /** Reads cached bytes at offset; the caller checked {@link #cachedRun} first. */
+    int read(String key, long offset, byte[] buffer, int len) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(dataFile(key), "r");
+        try {
+            raf.seek(offset);
+            return raf.read(buffer, 0, len);
+        } finally {
+            raf.close();
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // WRITING
+    // ═══════════════════════════════════════════════════════════════════
+
+    /** Writes a run of bytes fetched from the server, starting at one offset. */
+    class Writer {
+        private final String key;
+        private final RandomAccessFile raf;
+        private final long start;
+        private long position;
+
+        private Writer(String key, long start) throws IOException {
+            this.key = key;
+            this.start = start;
+            this.position = start;
+            this.raf = new RandomAccessFile(dataFile(key), "rw");
+            raf.seek(start);
+        }
+
+        void write(byte[] buffer, int n) throws IOException {
+            raf.write(buffer, 0, n);
+            position += n;
+            synchronized (RangeCache.this) {
+                Entry e = entries.get(key);
+                if (e != null) e.add(position - n, position);
+            }
+        }
+
+        /** Closes the data file, evicts if over the cap and saves the index. */
+        void close() {
+            try { raf.close(); } catch (IOException e) {}
+            if (position > start) {
+                synchronized (RangeCache.this) {
+                    evict();
+                    save();
+                }
+            }
+        }
+    }
+
+    Writer openWriter(String key, long offset) throws IOException {
+        synchronized (this) {
+            entry(key);
+        }
+        return new Writer(key, offset);
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // INTERNALS
+    // ═══════════════════════════════════════════════════════════════════
+
+    private Entry entry(String key) {
+        Entry e = entries.get(key);
+        if (e == null) {
+            e = new Entry(key);
+            entries.put(key, e);
+        }
+        return e;
+    }
+
+    // Least recently used first, keeping the most recent one
+    private void evict() {
+        long total = 0;
+        for (Entry e : entries.values()) total += e.cachedBytes();
+        Iterator<Entry> it = entries.values().iterator();
+        while (total > maxBytes && entries.size() > 1 && it.hasNext()) {
+            Entry e = it.next();
+            if (!it.hasNext()) break;  // The one in use
+            total -= e.cachedBytes();
+            dataFile(e.key).delete();
+            it.remove();
+        }
+    }
+
+    private File dataFile(String key) {
+        String safe = key.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (safe.length() > 80) safe = safe.substring(0, 80);
+        return new File(dir, safe + "_" + Integer.toHexString(key.hashCode()) + ".data");
+    }
+
+    private void load() {
+        if (!indexFile.exists()) return;
+        try {
+            FileInputStream in = new FileInputStream(indexFile);
+            String json = ApiClient.readFully(in);
+            JSONArray items = new JSONArray(json);
+            for (int i = 0; i < items.length(); i++) {
+                JSONObject o = items.getJSONObject(i);
+                Entry e = new Entry(o.getString("key"));
+                e.length = o.optLong("length", -1);
+                e.etag = o.optString("etag", null);
+                JSONArray ranges = o.getJSONArray("ranges");
+                for (int j = 0; j + 1 < ranges.length(); j += 2) {
+                    e.add(ranges.getLong(j), ranges.getLong(j + 1));
+                }
+                if (dataFile(e.key).exists()) entries.put(e.key, e);
+            }
+        } catch (Exception e) {
+            entries.clear();  // Unreadable index: start empty rather than serve wrong bytes
+        }
+    }
+
+    private void save() {
+        try {
+            JSONArray items = new JSONArray();
+            for (Entry e : entries.values()) {
+                JSONArray ranges = new JSONArray();
+                for (long[] r : e.ranges) {
+                    ranges.put(r[0]);
+                    ranges.put(r[1]);
+                }
+                JSONObject o = new JSONObject();
+                o.put("key", e.key);
+                o.put("length", e.length);
+                if (e.etag != null) o.put("etag", e.etag);
+                o.put("ranges", ranges);
+                items.put(o);
+            }
+            File tmp = new File(dir, "range_cache.json.tmp");
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(items.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            tmp.renameTo(indexFile);
+        } catch (Exception e) {
+            // Best effort: at worst the ranges written since the last save are fetched again
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.qin.feedback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How a voice take is encoded: container, codec, sample rate and bitrate,
+ * and the Content-Type /audio receives it as.
+ *
+ * The bridge lists the profile ids it decodes in its preferred order on
+ * GET /health ("audio_profiles"), ranked by benchmark_audio_profiles.py; the
+ * app takes the first one this Android version can record. Core stays free
+ * of Android, so the codec is named here and mapped onto MediaRecorder
+ * constants by the app.
+ */
+class RecordingProfile {
+
+    static final String CODEC_AMR_NB = "amr_nb";
+    static final String CODEC_AMR_WB = "amr_wb";
+    static final String CODEC_AAC_LC = "aac_lc";
+
+    static final String CONTAINER_RAW = "raw";    // Raw AMR frames / ADTS: streamable
+    static final String CONTAINER_3GP = "3gp";    // Index at the end: must arrive whole
+
+    /** What the app always recorded before profiles: AMR-NB 12.2k as raw frames. */
+    static final RecordingProfile AMR_NB = new RecordingProfile(
+        "amr_nb", CODEC_AMR_NB, CONTAINER_RAW, 8000, 12200, "audio/amr", ".amr", 1);
+    /** Wideband AMR: 16 kHz like Whisper's input, ~2x the bytes of AMR-NB. */
+    static final RecordingProfile AMR_WB = new RecordingProfile(
+        "amr_wb", CODEC_AMR_WB, CONTAINER_RAW, 16000, 23850, "audio/amr-wb", ".awb", 10);
+    /** AAC-LC in ADTS at 24 kbps, 16 kHz. */
+    static final RecordingProfile AAC_LC_24K = new RecordingProfile(
+        "aac_lc_24k", CODEC_AAC_LC, CONTAINER_RAW, 16000, 24000, "audio/aac", ".aac", 16);
+    /** AMR-NB in 3GP, for bridges that predate streaming upload. */
+    static final RecordingProfile AMR_NB_3GP = new RecordingProfile(
+        "amr_nb_3gp", CODEC_AMR_NB, CONTAINER_3GP, 8000, 12200, "audio/3gpp", ".3gp", 1);
+
+    static final RecordingProfile[] ALL = {AMR_NB, AMR_WB, AAC_LC_24K, AMR_NB_3GP};
+
+    final String id;
+    final String codec;
+    final String container;
+    final int sampleRate;
+    final int bitRate;
+    final String contentType;
+    final String extension;
+    final int minSdk;
+
+    private RecordingProfile(String id, String codec, String container, int sampleRate, int bitRate,
+                             String contentType, String extension, int minSdk) {
+        this.id = id;
+        this.codec = codec;
+        this.container = container;
+        this.sampleRate = sampleRate;
+        this.bitRate = bitRate;
+        this.contentType = contentType;
+        this.extension = extension;
+        this.minSdk = minSdk;
+    }
+
+    /** Every byte on disk is final while recording, so it can be uploaded live. */
+    boolean isStreamable() {
+        return CONTAINER_RAW.equals(container);
+    }
+
+    /** Silence can be cut out by frame (see {@link AmrFrames}). */
+    boolean isTrimmable() {
+        return isStreamable() && (CODEC_AMR_NB.equals(codec) || CODEC_AMR_WB.equals(codec));
+    }
+
+    static RecordingProfile forId(String id) {
+        for (RecordingProfile p : ALL) {
+            if (p.id.equals(id)) return p;
+        }
+        return null;
+    }
+
+    /**
+     * The server's offered ids, in its order, that are known here and
+     * recordable on sdkInt. AMR-NB is always last as the fallback: every
+     * bridge with /audio decodes it.
+     */
+    static List<RecordingProfile> candidates(List<String> offered, int sdkInt) {
+        List<RecordingProfile> result = new ArrayList<>();
+        if (offered != null) {
+            for (String id : offered) {
+                RecordingProfile p = forId(id);
+                if (p != null && p.minSdk <= sdkInt && !result.contains(p)) result.add(p);
+            }
+        }
+        if (!result.contains(AMR_NB)) result.add(AMR_NB);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return id + " (" + codec + " " + bitRate / 1000.0 + "k @ " + sampleRate + " Hz)";
+    }
+}
@@ -0,0 +1,24 @@
+package com.qin.feedback;
+
+import org.json.JSONObject;
+
+/** One downloadable file from the bridge's /files listing. */
+class RemoteFile {
+    final String name;
+    final String path;  // Server path, e.g. "/files/shiurim/x.mp3"
+    final long size;    // Exact bytes, or -1 (older bridges only send size_mb)
+
+    RemoteFile(String name, String path, long size) {
+        this.name = name;
+        this.path = path;
+        this.size = size;
+    }
+
+    /** One row of a /files "files" array, or null if it lacks a name or path. */
+    static RemoteFile fromJson(JSONObject row) {
+        String name = row.optString("name", null);
+        String path = row.optString("path", null);
+        if (name == null || path == null) return null;
+        return new RemoteFile(name, path, row.optLong("size", -1));
+    }
+}
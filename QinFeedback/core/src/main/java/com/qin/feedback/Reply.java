@@ -0,0 +1,104 @@
+package com.qin.feedback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * A bot reply as the app shows it: body text plus numbered follow-up options.
+ *
+ * The bridge sends options as a JSON array next to "response"; older
+ * bridges (and cached or partial text) only have the free text, which is
+ * scanned for "[1] ..." lines as a fallback.
+ */
+class Reply {
+
+    // Keys the app draws itself: 0 Back, 5 Voice, 8 Shuffle, 9 system
+    private static final String RESERVED_KEYS = "0589";
+
+    final String body;      // Without option lines
+    final String speech;    // body, cleaned for TTS
+    final String[] keys;
+    final String[] texts;
+    final boolean structured;  // Options came from the protocol rather than scraping
+
+    private Reply(String body, String speech, String[] keys, String[] texts, boolean structured) {
+        this.body = body;
+        this.speech = speech;
+        this.keys = keys;
+        this.texts = texts;
+        this.structured = structured;
+    }
+
+    /** Plain text with no options (errors, status messages). */
+    static Reply text(String text) {
+        return new Reply(text, OptionScanner.cleanForSpeech(text), new String[0], new String[0], false);
+    }
+
+    /** Free text: options are scraped out of it. Worker threads pass a fresh scanner. */
+    static Reply parse(String text, OptionScanner scanner) {
+        scanner.scan(text);
+        int n = scanner.optionCount();
+        if (n == 0) {
+            return new Reply(text, OptionScanner.cleanForSpeech(text), new String[0], new String[0], false);
+        }
+        String[] keys = new String[n];
+        String[] texts = new String[n];
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            String key = String.valueOf(scanner.optionKey(i));
+            if (RESERVED_KEYS.contains(key)) continue;
+            keys[kept] = key;
+            texts[kept] = scanner.optionText(i);
+            kept++;
+        }
+        return new Reply(scanner.displayText(), scanner.speechText(),
+            Arrays.copyOf(keys, kept), Arrays.copyOf(texts, kept), false);
+    }
+
+    static Reply parse(String text) {
+        return parse(text, new OptionScanner());
+    }
+
+    /** A /chat or /action reply object (or the final stream event). */
+    static Reply fromJson(JSONObject json) {
+        String response = json.optString("response", "");
+        JSONArray options = json.optJSONArray("options");
+        if (options == null) {
+            return parse(response);
+        }
+        String body = json.optString("body", response);
+        String[] keys = new String[options.length()];
+        String[] texts = new String[options.length()];
+        for (int i = 0; i < options.length(); i++) {
+            JSONObject o = options.optJSONObject(i);
+            keys[i] = o != null ? o.optString("key", "") : "";
+            texts[i] = o != null ? o.optString("text", "") : "";
+        }
+        return new Reply(body, OptionScanner.cleanForSpeech(body), keys, texts, true);
+    }
+
+    int optionCount() {
+        return keys.length;
+    }
+
+    /** Rough size for cache accounting. */
+    int length() {
+        int n = body.length();
+        for (String t : texts) n += t.length() + 1;
+        return n;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Reply)) return false;
+        Reply other = (Reply) o;
+        return body.equals(other.body) && Arrays.equals(keys, other.keys) && Arrays.equals(texts, other.texts);
+    }
+
+    @Override
+    public int hashCode() {
+        return body.hashCode() * 31 + Arrays.hashCode(texts);
+    }
+}
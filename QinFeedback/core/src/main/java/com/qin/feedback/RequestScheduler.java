@@ -0,0 +1,207 @@
+package com.qin.feedback;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs every network job on a small bounded pool, highest priority first.
+ *
+ * Each job gets a {@link Request} with an id and an {@link ApiClient.Call}.
+ * Cancelling a request drops it from the queue, or disconnects its socket if
+ * it is already running, and guarantees its callbacks never reach the UI.
+ * Results and progress are delivered on the callback (UI) executor.
+ *
+ * A job that throws is not a cancel: its {@link Fallback} turns the
+ * exception into a result for the callback, so a screen waiting on it can
+ * move on. Without a fallback the exception is rethrown on the callback
+ * executor, where it crashes loudly instead of leaving the UI waiting.
+ */
+class RequestScheduler {
+
+    // Lower value runs first
+    static final int PRIORITY_VOICE = 0;        // Transcription: the user is waiting on their own words
+    static final int PRIORITY_INTERACTIVE = 1;  // Chat, actions, menu
+    static final int PRIORITY_LIST = 2;         // File listing
+    static final int PRIORITY_DOWNLOAD = 3;     // Bulk transfers
+    static final int PRIORITY_SPECULATIVE = 4;  // Prefetch: only worth idle bandwidth
+
+    // Groups are cancelled together when the user leaves a screen
+    static final int GROUP_UI = 0;
+    static final int GROUP_BACKGROUND = 1;
+
+    private static final int MAX_WORKERS = 4;
+
+    interface Job<T> {
+        T run(Request request);
+    }
+
+    interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /** Maps a job that threw to the result its callback gets instead. Runs on the worker. */
+    interface Fallback<T> {
+        T onError(RuntimeException e);
+    }
+
+    class Request implements Runnable, Comparable<Request> {
+        final long id;
+        final int priority;
+        final int group;
+        final ApiClient.Call call = new ApiClient.Call();
+        private final Job<?> job;
+        private final Fallback<?> fallback;
+        private final Callback<Object> callback;
+        private final List<Runnable> cancelHooks = new ArrayList<>();
+        private volatile boolean cancelled = false;
+
+        @SuppressWarnings("unchecked")
+        <T> Request(long id, int priority, int group, Job<T> job, Fallback<T> fallback, Callback<T> callback) {
+            this.id = id;
+            this.priority = priority;
+            this.group = group;
+            this.job = job;
+            this.fallback = fallback;
+            this.callback = (Callback<Object>) callback;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** Runs r on the UI thread, unless the request is cancelled by then. */
+        void post(final Runnable r) {
+            callbackExecutor.execute(() -> {
+                if (!cancelled) r.run();
+            });
+        }
+
+        /** Extra cleanup on cancel, e.g. aborting a body writer. */
+        synchronized void onCancel(Runnable hook) {
+            if (cancelled) {
+                hook.run();
+            } else {
+                cancelHooks.add(hook);
+            }
+        }
+
+        void cancel() {
+            List<Runnable> hooks;
+            synchronized (this) {
+                if (cancelled) return;
+                cancelled = true;
+                hooks = new ArrayList<>(cancelHooks);
+            }
+            call.cancel();
+            for (Runnable hook : hooks) {
+                hook.run();
+            }
+        }
+
+        @Override
+        public void run() {
+            Object result = null;
+            boolean done = false;
+            RuntimeException error = null;
+            try {
+                if (!cancelled) {
+                    result = job.run(this);
+                    done = true;
+                }
+            } catch (RuntimeException e) {
+                if (fallback != null) {
+                    result = fallback.onError(e);
+                    done = true;
+                } else {
+                    error = e;
+                }
+            }
+            final Object value = result;
+            final boolean deliver = done;
+            final RuntimeException crash = error;
+            callbackExecutor.execute(() -> {
+                active.remove(id);
+                if (crash != null && !cancelled) throw crash;
+                if (deliver && !cancelled && callback != null) {
+                    callback.onResult(value);
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return id < other.id ? -1 : (id == other.id ? 0 : 1);  // FIFO within a priority
+        }
+    }
+
+    private final Executor callbackExecutor;
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    // Touched only on the callback (UI) thread
+    private final Map<Long, Request> active = new LinkedHashMap<>();
+
+    RequestScheduler(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        this.pool = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, 30, TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Queues a job; call from the UI thread. Returns the request id. */
+    <T> long submit(int priority, int group, Job<T> job, Callback<T> callback) {
+        return submit(priority, group, job, null, callback);
+    }
+
+    /** Like {@link #submit(int, int, Job, Callback)}, with fallback's result delivered if job throws. */
+    <T> long submit(int priority, int group, Job<T> job, Fallback<T> fallback, Callback<T> callback) {
+        Request request = new Request(nextId.getAndIncrement(), priority, group, job, fallback, callback);
+        active.put(request.id, request);
+        pool.execute(request);
+        return request.id;
+    }
+
+    void cancel(long id) {
+        Request request = active.remove(id);
+        if (request != null) {
+            request.cancel();
+            pool.remove(request);
+        }
+    }
+
+    /** Cancels everything tied to a screen the user just left. */
+    void cancelGroup(int group) {
+        Iterator<Request> it = active.values().iterator();
+        while (it.hasNext()) {
+            Request request = it.next();
+            if (request.group == group) {
+                it.remove();
+                request.cancel();
+                pool.remove(request);
+            }
+        }
+    }
+
+    boolean isActive(long id) {
+        return active.containsKey(id);
+    }
+
+    void shutdown() {
+        for (Request request : active.values()) {
+            request.cancel();
+        }
+        active.clear();
+        pool.shutdownNow();
+    }
+}
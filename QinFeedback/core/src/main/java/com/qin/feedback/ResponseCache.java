@@ -0,0 +1,90 @@
+package com.qin.feedback;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU of /action replies, keyed by action key, item label and voice
+ * input. Each entry lives for the TTL the bridge sent with it; after that it
+ * is still shown (marked stale) for a while so the answer appears at once
+ * while a refresh runs behind it.
+ *
+ * Thread-safe: written from scheduler workers, read on the UI thread.
+ */
+class ResponseCache {
+
+    private static final int MAX_ENTRIES = 16;
+    private static final int MAX_CHARS = 64 * 1024;
+    private static final int STALE_FACTOR = 4;  // Stale entries are served for up to 4x their TTL
+
+    static class Entry {
+        final Reply response;
+        final long fetchedAt;
+        final long ttlMs;
+
+        Entry(Reply response, long fetchedAt, long ttlMs) {
+            this.response = response;
+            this.fetchedAt = fetchedAt;
+            this.ttlMs = ttlMs;
+        }
+
+        long ageMs() {
+            return System.currentTimeMillis() - fetchedAt;
+        }
+
+        boolean isFresh() {
+            return ageMs() < ttlMs;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+    private int totalChars = 0;
+
+    static String key(String actionKey, String label, String voiceInput) {
+        return actionKey + "\n" + (label != null ? label : "") + "\n" + (voiceInput != null ? voiceInput : "");
+    }
+
+    /** Returns a fresh or usable-stale entry, or null if the caller must go to the network. */
+    synchronized Entry get(String key) {
+        Entry e = entries.get(key);
+        if (e == null) return null;
+        if (e.ageMs() >= e.ttlMs * STALE_FACTOR) {
+            remove(key);
+            return null;
+        }
+        return e;
+    }
+
+    synchronized void put(String key, Reply response, int ttlSeconds) {
+        if (ttlSeconds <= 0 || response.length() > MAX_CHARS) return;  // Bridge says: don't cache
+        remove(key);
+        entries.put(key, new Entry(response, System.currentTimeMillis(), ttlSeconds * 1000L));
+        totalChars += response.length();
+
+        // Evict least recently used until both bounds hold
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > MAX_ENTRIES || totalChars > MAX_CHARS) && it.hasNext()) {
+            totalChars -= it.next().response.length();
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        totalChars = 0;
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) totalChars -= old.response.length();
+    }
+
+    /** "just now", "4m ago", "2h ago" */
+    static String formatAge(long ageMs) {
+        long minutes = ageMs / 60000;
+        if (minutes < 1) return "just now";
+        if (minutes < 60) return minutes + "m ago";
+        return (minutes / 60) + "h ago";
+    }
+}
@@ -0,0 +1,278 @@
+package com.qin.feedback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One pass of a multi-segment download: the file is split into N byte
+ * ranges fetched on N sockets at once, each written at its own offset into a
+ * preallocated part file.
+ *
+ * Progress per segment is checkpointed to "<name>.part.segs" (after an
+ * fsync of the data), so a later pass only fetches what is still missing.
+ * Used by {@link Downloader} when segmented mode is on and the file is big
+ * enough to be worth it.
+ */
+class SegmentedDownload {
+
+    /** Thrown when the server answers a range request with the whole file. */
+    static class RangesUnsupportedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RangesUnsupportedException() {
+            super("Server ignored Range");
+        }
+    }
+
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final long CHECKPOINT_BYTES = 2 * 1024 * 1024;
+
+    private final ApiClient api;
+    private final String url;
+    private final File part;
+    private final File planFile;
+    private final long size;
+
+    // Segment plan; guarded by "this"
+    private long[] start;
+    private long[] end;    // Inclusive
+    private long[] done;
+    private String etag;
+    private long sinceCheckpoint = 0;
+
+    SegmentedDownload(ApiClient api, String url, File part, long size) {
+        this.api = api;
+        this.url = url;
+        this.part = part;
+        this.planFile = planFile(part);
+        this.size = size;
+    }
+
+    static File planFile(File part) {
+        return new File(part.getPath() + ".segs");
+    }
+
+    /**
+     * Fetches whatever is missing. Timings for this pass go into report.
+     * Throws if any segment failed; the others keep their progress.
+     */
+    void run(int segments, final Downloader.ProgressListener listener, ApiClient.Call call,
+             final Downloader.Report report) throws IOException {
+        if (!loadPlan()) {
+            // Fresh start (or a plan for another file): split evenly, drop old bytes
+            split(segments);
+            part.delete();
+        }
+        final int n = start.length;  // A resumed plan keeps the N it was made with
+        report.segments = n;
+        report.segmentMs = new long[n];
+        report.segmentBytes = new long[n];
+
+        final RandomAccessFile raf = new RandomAccessFile(part, "rw");
+        try {
+            raf.setLength(size);  // Preallocate so every segment can write at its offset
+            final FileChannel channel = raf.getChannel();
+            final AtomicLong total = new AtomicLong(totalDone());
+            final IOException[] errors = new IOException[n];
+
+            Thread[] threads = new Thread[n];
+            for (int i = 0; i < n; i++) {
+                if (remaining(i) == 0) continue;
+                final int seg = i;
+                final ApiClient.Call segCall = call.newChild();
+                threads[i] = new Thread(() -> {
+                    long t0 = System.currentTimeMillis();
+                    try {
+                        fetchSegment(seg, channel, segCall, listener, total, report);
+                    } catch (IOException e) {
+                        errors[seg] = e;
+                    } finally {
+                        report.segmentMs[seg] = System.currentTimeMillis() - t0;
+                    }
+                }, "download-seg-" + i);
+                threads[i].start();
+            }
+            for (Thread t : threads) {
+                if (t == null) continue;
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    call.cancel();
+                    throw new IOException("Interrupted");
+                }
+            }
+
+            checkpoint(channel);
+            for (IOException e : errors) {
+                if (e instanceof RangesUnsupportedException) throw e;
+            }
+            for (IOException e : errors) {
+                if (e != null) throw e;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /** Called once the part file is renamed into place. */
+    void cleanUp() {
+        planFile.delete();
+    }
+
+    private void fetchSegment(int i, FileChannel channel, ApiClient.Call call,
+                              Downloader.ProgressListener listener, AtomicLong total,
+                              Downloader.Report report) throws IOException {
+        long pos;
+        long last;
+        String validator;
+        synchronized (this) {
+            pos = start[i] + done[i];
+            last = end[i];
+            validator = etag;
+        }
+
+        long startMs = System.currentTimeMillis();
+        HttpURLConnection conn = api.openStream(url, CONNECT_TIMEOUT, ApiClient.READ_TIMEOUT_LLM, call);
+        InputStream is = null;
+        boolean success = false;
+        try {
+            conn.setRequestProperty("Range", "bytes=" + pos + "-" + last);
+            if (validator != null) conn.setRequestProperty("If-Range", validator);
+            int code = conn.getResponseCode();
+            if (code == 200) {
+                throw new RangesUnsupportedException();  // Or the file changed (If-Range mismatch)
+            } else if (code != 206) {
+                throw new IOException("HTTP " + code);
+            }
+            long[] range = Downloader.parseContentRange(conn.getHeaderField("Content-Range"));
+            if (range == null || range[0] != pos || range[1] != size) {
+                throw new IOException("Bad Content-Range");
+            }
+            String serverEtag = conn.getHeaderField("ETag");
+            synchronized (this) {
+                if (etag == null) {
+                    etag = serverEtag;
+                } else if (serverEtag != null && !serverEtag.equals(etag)) {
+                    throw new RangesUnsupportedException();  // Segments from two versions of the file
+                }
+            }
+
+            is = conn.getInputStream();
+            byte[] buffer = new byte[16384];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                if (pos + n > last + 1) throw new IOException("Segment overrun");
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+                while (bb.hasRemaining()) {
+                    pos += channel.write(bb, pos);  // Positional writes are safe across threads
+                }
+                report.segmentBytes[i] += n;
+                synchronized (this) {
+                    done[i] += n;
+                    sinceCheckpoint += n;
+                    if (sinceCheckpoint >= CHECKPOINT_BYTES) checkpoint(channel);
+                }
+                if (listener != null) listener.onProgress(total.addAndGet(n), size);
+            }
+            if (pos != last + 1) {
+                throw new IOException("Segment " + i + " closed at " + pos + " of " + (last + 1));
+            }
+            success = true;
+        } finally {
+            try { if (is != null) is.close(); } catch (IOException e) {}
+            api.release(conn, startMs, success);
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // PLAN
+    // ═══════════════════════════════════════════════════════════════════
+
+    private synchronized void split(int n) {
+        start = new long[n];
+        end = new long[n];
+        done = new long[n];
+        long per = size / n;
+        for (int i = 0; i < n; i++) {
+            start[i] = i * per;
+            end[i] = (i == n - 1) ? size - 1 : (i + 1) * per - 1;
+        }
+        etag = null;
+    }
+
+    private synchronized long remaining(int i) {
+        return end[i] - start[i] + 1 - done[i];
+    }
+
+    private synchronized long totalDone() {
+        long sum = 0;
+        for (long d : done) sum += d;
+        return sum;
+    }
+
+    /** Data first, then the plan that claims it: a crash never over-claims. */
+    private synchronized void checkpoint(FileChannel channel) throws IOException {
+        channel.force(false);
+        sinceCheckpoint = 0;
+        try {
+            JSONArray segs = new JSONArray();
+            for (int i = 0; i < start.length; i++) {
+                JSONArray seg = new JSONArray();
+                seg.put(start[i]);
+                seg.put(end[i]);
+                seg.put(done[i]);
+                segs.put(seg);
+            }
+            JSONObject plan = new JSONObject();
+            plan.put("size", size);
+            if (etag != null) plan.put("etag", etag);
+            plan.put("segments", segs);
+            FileOutputStream fos = new FileOutputStream(planFile);
+            try {
+                fos.write(plan.toString().getBytes("UTF-8"));
+            } finally {
+                fos.close();
+            }
+        } catch (org.json.JSONException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Resumes an earlier plan for this same file, whatever N it was made
+     * with. Returns false if there is none or it doesn't match.
+     */
+    private synchronized boolean loadPlan() {
+        if (!planFile.exists() || !part.exists() || part.length() != size) return false;
+        try {
+            JSONObject plan = new JSONObject(ApiClient.readFully(new FileInputStream(planFile)));
+            if (plan.getLong("size") != size) return false;
+            JSONArray segs = plan.getJSONArray("segments");
+            int n = segs.length();
+            start = new long[n];
+            end = new long[n];
+            done = new long[n];
+            for (int i = 0; i < n; i++) {
+                JSONArray seg = segs.getJSONArray(i);
+                start[i] = seg.getLong(0);
+                end[i] = seg.getLong(1);
+                done[i] = seg.getLong(2);
+            }
+            etag = plan.optString("etag", null);
+            return n > 0;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.qin.feedback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** Splits reply text into sentences, so TTS can start on the first one. */
+class Sentences {
+
+    // Sentence boundaries for speaking a streamed reply before it is complete
+    private static final Pattern SENTENCE_SPLIT = Pattern.compile("(?<=[.!?])\\s+|\\n+");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?:[.!?]\\s+|\\n)$");
+
+    private Sentences() {}
+
+    /**
+     * Non-empty, trimmed sentences of text. Without includeTail an
+     * unterminated last fragment is left out: it may still be growing.
+     */
+    static List<String> split(String text, boolean includeTail) {
+        List<String> sentences = new ArrayList<>();
+        String[] parts = SENTENCE_SPLIT.split(text);
+        int count = parts.length;
+        if (!includeTail && count > 0 && !SENTENCE_END.matcher(text).find()) {
+            count--;
+        }
+        for (int i = 0; i < count; i++) {
+            String sentence = parts[i].trim();
+            if (!sentence.isEmpty()) {
+                sentences.add(sentence);
+            }
+        }
+        return sentences;
+    }
+}
@@ -0,0 +1,295 @@
+package com.qin.feedback;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP server that MediaPlayer streams shiurim from.
+ *
+ * MediaPlayer only takes a URL, so a file's bridge URL is registered here
+ * and the player opens http://127.0.0.1:port/id instead. Each request (the
+ * player sends Range requests to seek) is answered from {@link RangeCache}
+ * where the bytes are cached; gaps are fetched from the bridge with Range
+ * requests and written through to the cache while they stream to the player.
+ * Playback can start once the first bytes are in, and whatever was heard
+ * before plays again without the network.
+ */
+class StreamProxy {
+
+    private static final int BUFFER_SIZE = 16384;
+
+    private final ApiClient api;
+    private final RangeCache cache;
+    private final Map<String, String> remotes = new ConcurrentHashMap<>();  // id → bridge URL
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "StreamProxy");
+        t.setDaemon(true);
+        return t;
+    });
+    private ServerSocket server;
+
+    StreamProxy(ApiClient api, RangeCache cache) {
+        this.api = api;
+        this.cache = cache;
+    }
+
+    /** Starts listening on a free loopback port (once); returns the port. */
+    synchronized int start() throws IOException {
+        if (server != null) return server.getLocalPort();
+        final ServerSocket socket = new ServerSocket(0, 8, InetAddress.getByName("127.0.0.1"));
+        server = socket;
+        Thread acceptor = new Thread(() -> {
+            while (!socket.isClosed()) {
+                try {
+                    final Socket client = socket.accept();
+                    connections.execute(() -> serve(client));
+                } catch (IOException e) {
+                    // Closed by stop()
+                }
+            }
+        }, "StreamProxy-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return socket.getLocalPort();
+    }
+
+    synchronized void stop() {
+        if (server == null) return;
+        try { server.close(); } catch (IOException e) {}
+        server = null;
+    }
+
+    /**
+     * Makes a file playable through the proxy; size is its exact length if
+     * known (-1 otherwise). Returns the local URL to give MediaPlayer.
+     */
+    String register(String id, String remoteUrl, long size) throws IOException {
+        int port = start();
+        remotes.put(id, remoteUrl);
+        if (size >= 0) cache.setRemote(id, size, null);
+        return "http://127.0.0.1:" + port + "/" + URLEncoder.encode(id, "UTF-8");
+    }
+
+    /**
+     * Blocks until [offset, offset + bytes) is cached, fetching what isn't.
+     * Used to buffer the first seconds before playback starts.
+     */
+    void prefetch(String id, long offset, long bytes, ApiClient.Call call) throws IOException {
+        long pos = offset;
+        long end = offset + bytes;
+        while (true) {
+            long length = cache.length(id);
+            if (length >= 0) end = Math.min(end, length);
+            if (pos >= end) return;
+            long run = cache.cachedRun(id, pos);
+            if (run > 0) {
+                pos += run;
+                continue;
+            }
+            pos = fetch(id, pos, untilCached(id, pos, end), null, call);
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // SERVING
+    // ═══════════════════════════════════════════════════════════════════
+
+    private void serve(Socket client) {
+        ApiClient.Call call = new ApiClient.Call();
+        try {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            OutputStream out = client.getOutputStream();
+            String requestLine = readLine(in);
+            String range = null;
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                if (line.toLowerCase(Locale.US).startsWith("range:")) range = line.substring(6).trim();
+            }
+            String[] parts = requestLine != null ? requestLine.split(" ") : new String[0];
+            String id = parts.length >= 2 ? URLDecoder.decode(parts[1].substring(1), "UTF-8") : null;
+            if (id == null || !remotes.containsKey(id)) {
+                writeHead(out, "404 Not Found", null, 0, null);
+                return;
+            }
+
+            if (cache.length(id) < 0) prefetch(id, 0, 1, call);  // Learn the size
+            long length = cache.length(id);
+            if (length < 0) {
+                // The bridge sent no Content-Length: ranges can't be answered
+                writeHead(out, "502 Bad Gateway", null, 0, null);
+                return;
+            }
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                writeHead(out, "416 Range Not Satisfiable", null, 0, "bytes */" + length);
+                return;
+            }
+            long start = bounds[0];
+            long end = bounds[1];  // Exclusive
+            String contentRange = range != null ? "bytes " + start + "-" + (end - 1) + "/" + length : null;
+            writeHead(out, range != null ? "206 Partial Content" : "200 OK", contentType(id),
+                end - start, contentRange);
+            if (parts[0].equals("HEAD")) return;
+
+            long pos = start;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (pos < end) {
+                long run = cache.cachedRun(id, pos);
+                if (run > 0) {
+                    int n = cache.read(id, pos, buffer, (int) Math.min(Math.min(run, end - pos), buffer.length));
+                    if (n <= 0) throw new IOException("Cache read failed");
+                    out.write(buffer, 0, n);
+                    pos += n;
+                } else {
+                    pos = fetch(id, pos, untilCached(id, pos, end), out, call);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The player closed the connection (seek, stop) or the bridge is unreachable
+            call.cancel();
+        } finally {
+            try { client.close(); } catch (IOException e) {}
+        }
+    }
+
+    // End of the gap at pos: the next cached byte, or end
+    private long untilCached(String id, long pos, long end) {
+        long next = cache.nextCachedStart(id, pos);
+        return next > 0 && next < end ? next : end;
+    }
+
+    /**
+     * Fetches [from, until) from the bridge (until -1: to the end), writing
+     * it to the cache and, if not null, to sink. Returns the offset reached.
+     */
+    private long fetch(String id, long from, long until, OutputStream sink,
+                       ApiClient.Call call) throws IOException {
+        long startMs = System.currentTimeMillis();
+        HttpURLConnection conn = api.openStream(remotes.get(id), ApiClient.CONNECT_TIMEOUT,
+            ApiClient.READ_TIMEOUT_LIST, call);
+        boolean success = false;
+        RangeCache.Writer writer = null;
+        InputStream is = null;
+        long pos = from;
+        try {
+            conn.setRequestProperty("Range", "bytes=" + from + "-" + (until > 0 ? String.valueOf(until - 1) : ""));
+            String etag = cache.etag(id);
+            if (etag != null) conn.setRequestProperty("If-Range", etag);
+            int code = conn.getResponseCode();
+            long length;
+            if (code == 206) {
+                long[] range = Downloader.parseContentRange(conn.getHeaderField("Content-Range"));
+                if (range == null || range[0] != from) throw new IOException("Bad Content-Range");
+                length = range[1];
+                cache.setRemote(id, length, conn.getHeaderField("ETag"));
+            } else if (code == 200) {
+                // Range ignored, or the file was replaced (If-Range mismatch): cached bytes are stale
+                length = parseLength(conn.getHeaderField("Content-Length"));
+                cache.setRemote(id, length, conn.getHeaderField("ETag"));
+                if (from > 0) throw new IOException("File changed on the server");
+            } else {
+                throw new IOException("HTTP " + code);
+            }
+
+            is = conn.getInputStream();
+            writer = cache.openWriter(id, from);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (until < 0 || pos < until) {
+                int want = until < 0 ? buffer.length : (int) Math.min(buffer.length, until - pos);
+                int n = is.read(buffer, 0, want);
+                if (n == -1) break;
+                writer.write(buffer, n);
+                pos += n;
+                if (sink != null) sink.write(buffer, 0, n);
+            }
+            if (until >= 0 && pos < until) throw new IOException("Connection closed at " + pos);
+            // A 200 stopped short of the end leaves body on the socket: don't pool it
+            success = code == 206 || pos == length;
+            return pos;
+        } finally {
+            if (writer != null) writer.close();
+            try { if (is != null) is.close(); } catch (IOException e) {}
+            api.release(conn, startMs, success);
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // HTTP
+    // ═══════════════════════════════════════════════════════════════════
+
+    /** "bytes=a-b", "bytes=a-", "bytes=-n" or null (whole file) → {start, end exclusive}; null if unsatisfiable. */
+    static long[] parseRange(String header, long length) {
+        if (length < 0) return null;  // Unknown size
+        if (header == null) return new long[] {0, length};
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return null;
+        try {
+            String spec = header.substring(6).trim();
+            int dash = spec.indexOf('-');
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                start = Math.max(0, length - Long.parseLong(last));  // Suffix: the last n bytes
+                end = length;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length : Math.min(length, Long.parseLong(last) + 1);
+            }
+            return start < end ? new long[] {start, end} : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static long parseLength(String value) {
+        try {
+            return value != null ? Long.parseLong(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeHead(OutputStream out, String status, String type, long length,
+                                  String contentRange) throws IOException {
+        StringBuilder sb = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+        if (type != null) sb.append("Content-Type: ").append(type).append("\r\n");
+        sb.append("Content-Length: ").append(length).append("\r\n");
+        sb.append("Accept-Ranges: bytes\r\n");
+        if (contentRange != null) sb.append("Content-Range: ").append(contentRange).append("\r\n");
+        sb.append("Connection: close\r\n\r\n");
+        out.write(sb.toString().getBytes("US-ASCII"));
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r') sb.append((char) c);
+        }
+        return c == -1 && sb.length() == 0 ? null : sb.toString();
+    }
+
+    private static String contentType(String id) {
+        String lower = id.toLowerCase(Locale.US);
+        if (lower.endsWith(".mp3")) return "audio/mpeg";
+        if (lower.endsWith(".m4a")) return "audio/mp4";
+        if (lower.endsWith(".ogg")) return "audio/ogg";
+        if (lower.endsWith(".wav")) return "audio/wav";
+        return "application/octet-stream";
+    }
+}
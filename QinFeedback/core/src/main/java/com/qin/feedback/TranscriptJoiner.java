@@ -0,0 +1,61 @@
+package com.qin.feedback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transcripts of dictation parts ("2=Add") that are transcribed in parallel
+ * and so come back in any order, joined in the order they were recorded.
+ *
+ * Each part gets its index from {@link #add()}; results are reported with
+ * the generation they were started in, so a late answer for a take the user
+ * has since redone or cancelled is ignored. UI thread only.
+ */
+class TranscriptJoiner {
+
+    private final List<String> parts = new ArrayList<>();  // null while in flight
+    private int generation = 0;
+
+    /** Starts a new part; returns its index. */
+    int add() {
+        parts.add(null);
+        return parts.size() - 1;
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    /** Records a part's transcript ("" to drop it); false if it belongs to a cleared take. */
+    boolean set(int gen, int index, String text) {
+        if (gen != generation || index >= parts.size()) return false;
+        parts.set(index, text != null ? text.trim() : "");
+        return true;
+    }
+
+    int pendingCount() {
+        int n = 0;
+        for (String part : parts) {
+            if (part == null) n++;
+        }
+        return n;
+    }
+
+    /** base, then each finished part in order; pendingMark (if not null) stands in for parts still out. */
+    String join(String base, String pendingMark) {
+        StringBuilder sb = new StringBuilder(base);
+        for (String part : parts) {
+            String text = part != null ? part : pendingMark;
+            if (text == null || text.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(text);
+        }
+        return sb.toString();
+    }
+
+    /** Forgets all parts; results still in flight will be ignored. */
+    void clear() {
+        parts.clear();
+        generation++;
+    }
+}
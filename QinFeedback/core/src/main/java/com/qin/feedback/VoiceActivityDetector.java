@@ -0,0 +1,77 @@
+package com.qin.feedback;
+
+/**
+ * Energy-based voice activity detection on MediaRecorder.getMaxAmplitude()
+ * samples, which is all the level information MediaRecorder exposes.
+ *
+ * The recorder thread polls the amplitude every ~50 ms and feeds it here with
+ * the time since start(). A sample is speech when it is well above the noise
+ * floor (tracked from the quiet samples); two in a row start speech. From
+ * that the detector answers where the speech is, so leading and trailing
+ * silence can be left out of the upload, and when to stop: after a pause of
+ * {@link #SILENCE_STOP_MS} once something was said, or after
+ * {@link #NO_SPEECH_STOP_MS} of nothing at all.
+ *
+ * Thread-safe: fed on the UI thread, read by the upload worker.
+ */
+class VoiceActivityDetector {
+
+    static final long SILENCE_STOP_MS = 1500;     // Pause that ends a take
+    static final long NO_SPEECH_STOP_MS = 8000;   // Nobody is talking: give up
+    static final long PRE_ROLL_MS = 300;          // Kept before the first loud sample (soft onsets)
+    static final long POST_ROLL_MS = 400;         // Kept after the last one (trailing consonants)
+
+    private static final int MIN_SPEECH_AMPLITUDE = 1200;  // Of 32767; below this is never speech
+    private static final float SPEECH_OVER_FLOOR = 3.0f;
+    private static final int ONSET_SAMPLES = 2;
+
+    private float noiseFloor = -1;
+    private int loudRun = 0;
+    private long speechStartMs = -1;
+    private long lastSpeechMs = -1;
+    private long lastSampleMs = 0;
+
+    /** One getMaxAmplitude() reading, taken ms after the recorder started. */
+    synchronized void addSample(long ms, int amplitude) {
+        lastSampleMs = ms;
+        if (amplitude <= 0) return;  // The first call after start() always reads 0
+
+        if (noiseFloor < 0) noiseFloor = amplitude;
+        float threshold = Math.max(MIN_SPEECH_AMPLITUDE, noiseFloor * SPEECH_OVER_FLOOR);
+        if (amplitude >= threshold) {
+            loudRun++;
+            if (loudRun >= ONSET_SAMPLES || speechStartMs >= 0) {
+                if (speechStartMs < 0) speechStartMs = ms;
+                lastSpeechMs = ms;
+            }
+        } else {
+            loudRun = 0;
+            // Follow a falling floor quickly and a rising one slowly, so speech doesn't become "noise"
+            noiseFloor += (amplitude - noiseFloor) * (amplitude < noiseFloor ? 0.5f : 0.05f);
+        }
+    }
+
+    synchronized boolean heardSpeech() {
+        return speechStartMs >= 0;
+    }
+
+    /** True once the take should end by itself. */
+    synchronized boolean shouldStop() {
+        if (speechStartMs < 0) return lastSampleMs >= NO_SPEECH_STOP_MS;
+        return lastSampleMs - lastSpeechMs >= SILENCE_STOP_MS;
+    }
+
+    /** Start of the audio worth sending, or 0 if no speech has been heard (keep everything). */
+    synchronized long keepFromMs() {
+        return speechStartMs < 0 ? 0 : Math.max(0, speechStartMs - PRE_ROLL_MS);
+    }
+
+    /**
+     * End of the audio known to be worth sending. While recording this grows
+     * as speech continues; audio past it may still turn out to be a pause
+     * before more speech. -1 if no speech has been heard.
+     */
+    synchronized long keepUntilMs() {
+        return speechStartMs < 0 ? -1 : lastSpeechMs + POST_ROLL_MS;
+    }
+}
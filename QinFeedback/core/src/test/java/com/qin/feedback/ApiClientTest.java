@@ -0,0 +1,99 @@
+package com.qin.feedback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ApiClientTest {
+
+    private final ApiClient api = ApiClient.get();
+    private TestServer server;
+
+    // What /echo received: Content-Encoding header and the body after gunzip
+    private final List<String> encodings = new ArrayList<>();
+    private final List<String> bodies = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new TestServer();
+        server.handle("/gz-json", ex -> {
+            byte[] body = json(4000).getBytes("UTF-8");
+            String accept = ex.getRequestHeaders().getFirst("Accept-Encoding");
+            if (accept != null && accept.contains("gzip")) {
+                ex.getResponseHeaders().set("Content-Encoding", "gzip");
+                body = ApiClient.gzip(body);
+            }
+            TestServer.send(ex, 200, body);
+        });
+        server.handle("/plain-json", ex -> TestServer.send(ex, 200, json(4000).getBytes("UTF-8")));
+        server.handle("/echo", ex -> {
+            String encoding = ex.getRequestHeaders().getFirst("Content-Encoding");
+            byte[] body = TestServer.readBody(ex);
+            if ("gzip".equals(encoding)) body = gunzip(body);
+            synchronized (this) {
+                encodings.add(encoding);
+                bodies.add(new String(body, "UTF-8"));
+            }
+            // RFC 7694: tells the client it may gzip request bodies from now on
+            ex.getResponseHeaders().set("Accept-Encoding", "gzip");
+            TestServer.send(ex, 200, "{}".getBytes("UTF-8"));
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void gzippedResponseIsDecodedAndCounted() throws IOException {
+        ApiClient.Response resp = api.get(server.url("/gz-json"), ApiClient.READ_TIMEOUT_SHORT, null);
+        assertEquals(json(4000), resp.body);
+        ApiClient.Stats stats = api.statsSnapshot().get("/gz-json");
+        assertEquals(resp.body.length(), stats.bytesDecoded);
+        assertTrue("wire " + stats.bytesReceived, stats.bytesReceived < stats.bytesDecoded / 4);
+    }
+
+    @Test
+    public void plainResponsePassesThrough() throws IOException {
+        ApiClient.Response resp = api.get(server.url("/plain-json"), ApiClient.READ_TIMEOUT_SHORT, null);
+        assertEquals(json(4000), resp.body);
+        ApiClient.Stats stats = api.statsSnapshot().get("/plain-json");
+        assertEquals(stats.bytesDecoded, stats.bytesReceived);
+    }
+
+    @Test
+    public void requestBodiesAreGzippedOnlyOnceTheServerSaysSo() throws IOException {
+        String big = json(2000);
+        api.postJson(server.url("/echo"), big, ApiClient.READ_TIMEOUT_SHORT, null);
+        api.postJson(server.url("/echo"), big, ApiClient.READ_TIMEOUT_SHORT, null);
+        api.postJson(server.url("/echo"), json(200), ApiClient.READ_TIMEOUT_SHORT, null);
+
+        assertNull(encodings.get(0));            // Not known to take gzip yet
+        assertEquals("gzip", encodings.get(1));
+        assertNull(encodings.get(2));            // Too small to be worth it
+        assertEquals(big, bodies.get(1));
+        assertTrue(api.statsSnapshot().get("/echo").bytesSent < 2 * big.length() + json(200).length());
+    }
+
+    // Repetitive JSON about n characters long, like a long reply
+    private static String json(int n) {
+        StringBuilder sb = new StringBuilder("{\"response\": \"");
+        while (sb.length() < n) sb.append("The embeddings job finished overnight. ");
+        return sb.append("\"}").toString();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        return ApiClient.readFully(new GZIPInputStream(new ByteArrayInputStream(data))).getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,130 @@
+package com.qin.feedback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DownloaderTest {
+
+    private static final String ETAG = "\"5000-1\"";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final byte[] content = TestServer.content(5000);
+    private TestServer server;
+    private TestServer.FileHandler file;
+    private File dest;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new TestServer();
+        file = new TestServer.FileHandler(content, ETAG);
+        server.handle("/files/a.mp3", file);
+        dest = new File(tmp.getRoot(), "a.mp3");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void freshDownloadSendsNoRange() throws IOException {
+        Downloader.Report report = download();
+        assertDownloaded();
+        assertEquals(5000, report.bytes);
+        assertEquals(Collections.singletonList(null), file.ranges());
+    }
+
+    @Test
+    public void partialFileResumesWith206() throws IOException {
+        leavePart(1200, ETAG);
+        Downloader.Report report = download();
+        assertDownloaded();
+        assertEquals(3800, report.bytes);
+        assertEquals(Collections.singletonList("bytes=1200-"), file.ranges());
+    }
+
+    @Test
+    public void changedFileStartsOverOn200() throws IOException {
+        // If-Range doesn't match the server's ETag: it answers with the whole new file
+        leavePart(1200, "\"old\"");
+        Downloader.Report report = download();
+        assertDownloaded();
+        assertEquals(5000, report.bytes);
+        assertEquals(Collections.singletonList("bytes=1200-"), file.ranges());
+    }
+
+    @Test
+    public void serverIgnoringRangeStartsOver() throws IOException {
+        file.ignoreRange = true;
+        leavePart(1200, ETAG);
+        download();
+        assertDownloaded();
+    }
+
+    @Test
+    public void completePartIsRenamedOn416() throws IOException {
+        // Every byte arrived but the rename never happened
+        leavePart(5000, ETAG);
+        Downloader.Report report = download();
+        assertDownloaded();
+        assertEquals(0, report.bytes);
+        assertEquals(Collections.singletonList("bytes=5000-"), file.ranges());
+    }
+
+    @Test
+    public void partWithoutEtagIsNotTrusted() throws IOException {
+        leavePart(1200, null);
+        download();
+        assertDownloaded();
+        assertEquals(Collections.singletonList(null), file.ranges());
+    }
+
+    @Test
+    public void droppedConnectionIsRetriedFromWhereItStopped() throws IOException {
+        file.cutRangeFrom = 0;  // The first response stops at 2500 bytes
+        download();
+        assertDownloaded();
+        assertEquals(Arrays.asList(null, "bytes=2500-"), file.ranges());
+    }
+
+    private Downloader.Report download() throws IOException {
+        return new Downloader(ApiClient.get()).download(server.url("/files/a.mp3"), dest,
+            content.length, 1, null, new ApiClient.Call());
+    }
+
+    private void leavePart(int bytes, String etag) throws IOException {
+        File part = Downloader.partFile(dest);
+        FileOutputStream out = new FileOutputStream(part);
+        try {
+            out.write(content, 0, bytes);
+        } finally {
+            out.close();
+        }
+        if (etag != null) {
+            Files.write(new File(part.getPath() + ".etag").toPath(), etag.getBytes("UTF-8"));
+        }
+    }
+
+    private void assertDownloaded() throws IOException {
+        assertArrayEquals(content, Files.readAllBytes(dest.toPath()));
+        File part = Downloader.partFile(dest);
+        assertFalse(part.exists());
+        assertFalse(new File(part.getPath() + ".etag").exists());
+    }
+}
@@ -0,0 +1,104 @@
+package com.qin.feedback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileListingTest {
+
+    private static final int PAGE = 9;
+
+    @Test
+    public void firstPageRecordsTheNextCursor() {
+        FileListing listing = new FileListing(PAGE);
+        assertEquals("", listing.cursorFor(0));
+        assertNull(listing.cursorFor(1));
+
+        assertTrue(listing.startLoading(0));
+        listing.loaded(0, page(0, PAGE, 30, "f08"));
+        assertEquals(30, listing.total());
+        assertEquals("f08", listing.cursorFor(1));
+        assertEquals(PAGE, listing.page(0).size());
+        assertEquals("f04", listing.get(4).name);
+        assertNull(listing.get(PAGE));  // Page 1 isn't here yet
+    }
+
+    @Test
+    public void startLoadingOnlyOncePerPage() {
+        FileListing listing = new FileListing(PAGE);
+        assertTrue(listing.startLoading(0));
+        assertFalse(listing.startLoading(0));  // On its way
+        assertFalse(listing.startLoading(1));  // Cursor unknown
+        listing.failed(0);
+        assertTrue(listing.startLoading(0));   // Retry after a failure
+        listing.loaded(0, page(0, PAGE, 30, "f08"));
+        assertFalse(listing.startLoading(0));  // Already here
+        assertTrue(listing.startLoading(1));
+    }
+
+    @Test
+    public void lastPageMakesTheCountExact() {
+        FileListing listing = new FileListing(PAGE);
+        listing.loaded(0, page(0, PAGE, -1, "f08"));
+        assertEquals(PAGE + 1, listing.total());  // At least one more
+        listing.loaded(1, page(PAGE, 4, -1, null));
+        assertEquals(PAGE + 4, listing.total());
+        assertEquals("f12", listing.get(12).name);
+    }
+
+    @Test
+    public void onlyTheLastPagesViewedAreKept() {
+        FileListing listing = new FileListing(PAGE);
+        int pages = FileListing.KEEP_PAGES + 2;
+        for (int p = 0; p < pages; p++) {
+            assertTrue(listing.startLoading(p));
+            listing.loaded(p, page(p * PAGE, PAGE, pages * PAGE + 1, name(p * PAGE + PAGE - 1)));
+        }
+        assertNull(listing.page(0));
+        assertNull(listing.page(1));
+        assertNotNull(listing.page(pages - 1));
+        // A dropped page can be fetched again from its cursor
+        assertEquals(name(PAGE - 1), listing.cursorFor(1));
+        assertTrue(listing.startLoading(1));
+    }
+
+    @Test
+    public void olderBridgeSendsEverythingAtOnce() {
+        FileListing listing = new FileListing(PAGE);
+        listing.loaded(0, page(0, 40, -1, null));
+        assertEquals(40, listing.total());
+        assertEquals(PAGE, listing.page(0).size());
+        assertEquals(4, listing.page(4).size());
+        assertEquals("f39", listing.get(39).name);
+        // All pages stay: there is no cursor to fetch them by again
+        for (int p = 0; p <= 4; p++) assertNotNull(listing.page(p));
+        assertFalse(listing.startLoading(4));
+    }
+
+    @Test
+    public void refetchedPageReplacesItsCursor() {
+        FileListing listing = new FileListing(PAGE);
+        listing.loaded(0, page(0, PAGE, 30, "f08"));
+        listing.loaded(0, page(0, PAGE, 30, "f08b"));  // A file was added meanwhile
+        assertEquals("f08b", listing.cursorFor(1));
+    }
+
+    private static FileListing.Page page(int first, int count, int total, String nextCursor) {
+        List<RemoteFile> files = new ArrayList<>();
+        for (int i = first; i < first + count; i++) {
+            files.add(new RemoteFile(name(i), "/files/shiurim/" + name(i) + ".mp3", 1000 + i));
+        }
+        return new FileListing.Page(files, total, nextCursor);
+    }
+
+    private static String name(int i) {
+        return String.format("f%02d", i);
+    }
+}
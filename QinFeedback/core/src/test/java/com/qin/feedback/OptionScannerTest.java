@@ -0,0 +1,119 @@
+package com.qin.feedback;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * OptionScanner against the regex chain it replaced, on the
+ * replies in replies.txt: same options, display text and speech text.
+ */
+public class OptionScannerTest {
+
+    // The patterns MainActivity used before OptionScanner
+    private static final Pattern OPTION_PATTERN = Pattern.compile("(?:^|\\n)\\s*(?:\\[(\\d)\\]|(\\d)\\.)\\s*([^\\n\\[]+?)(?=\\n|$)", Pattern.MULTILINE);
+    private static final Pattern OPTION_LINE_PATTERN = Pattern.compile("(?:^|\\n)\\s*(?:\\[\\d\\]|\\d\\.)\\s*[^\\n]+");
+
+    private final OptionScanner scanner = new OptionScanner();
+
+    @Test
+    public void matchesRegexChainOnCorpus() throws IOException {
+        List<String> replies = corpus();
+        assertTrue(replies.size() >= 10);
+        for (String reply : replies) {
+            assertSameAsRegex(reply);
+        }
+    }
+
+    @Test
+    public void matchesRegexChainOnLineEndingsAndEdges() {
+        assertSameAsRegex("Email from Dan.\r\n[1] Reply\r\n[2] Forward\r\n");
+        assertSameAsRegex("");
+        assertSameAsRegex("\n\n");
+        assertSameAsRegex("[1] Only an option");
+        assertSameAsRegex("Text\n[1]");
+        assertSameAsRegex("\t[2]\tTabbed\t\n");
+    }
+
+    @Test
+    public void scannerIsReusable() {
+        scanner.scan("Long reply.\n\n[1] One\n[2] Two\n[3] Three");
+        scanner.scan("Short.");
+        assertEquals(0, scanner.optionCount());
+        assertEquals("Short.", scanner.displayText());
+    }
+
+    @Test
+    public void endsWithOptionsOnlyForTrailingBlock() {
+        assertTrue(scanner.scan("Body.\n\n[1] One\n[2] Two").endsWithOptions());
+        assertTrue(scanner.scan("Body.\n\n1. One\n2. Two\n\n").endsWithOptions());
+        // A numbered list in the middle of a reply, still streaming
+        assertFalse(scanner.scan("Steps:\n1. Export\n2. Re-embed\nThat keeps sea").endsWithOptions());
+        assertFalse(scanner.scan("No options at all.").endsWithOptions());
+        // The next option line has only just started
+        assertFalse(scanner.scan("Body.\n\n[1] One\n[").endsWithOptions());
+    }
+
+    @Test
+    public void bodyTextKeepsTrailingWhitespace() {
+        scanner.scan("First sentence. ");
+        assertEquals("First sentence.", scanner.displayText());
+        assertEquals("First sentence. ", scanner.bodyText());
+    }
+
+    private void assertSameAsRegex(String reply) {
+        List<String> expected = new ArrayList<>();
+        Matcher matcher = OPTION_PATTERN.matcher(reply);
+        while (matcher.find()) {
+            String key = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+            String text = matcher.group(3).trim();
+            if (!text.isEmpty()) expected.add(key + "=" + text);
+        }
+        String display = OPTION_LINE_PATTERN.matcher(reply).replaceAll("").trim();
+
+        scanner.scan(reply);
+        List<String> actual = new ArrayList<>();
+        for (int i = 0; i < scanner.optionCount(); i++) {
+            actual.add(scanner.optionKey(i) + "=" + scanner.optionText(i));
+        }
+        assertEquals(reply, expected, actual);
+        assertEquals(reply, display, scanner.displayText());
+        assertEquals(reply, regexSpeech(display), scanner.speechText());
+        assertEquals(reply, regexSpeech(reply), OptionScanner.cleanForSpeech(reply));
+    }
+
+    private static String regexSpeech(String text) {
+        return text
+            .replaceAll("\\n+", ". ")
+            .replaceAll("[\\[\\]\\|\\-]{2,}", " ")
+            .replaceAll("\\s+", " ")
+            .trim();
+    }
+
+    static List<String> corpus() throws IOException {
+        InputStream in = OptionScannerTest.class.getResourceAsStream("replies.txt");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+        in.close();
+
+        List<String> replies = new ArrayList<>();
+        String[] blocks = out.toString("UTF-8").split("(?m)^%%\\n?");
+        for (int i = 1; i < blocks.length; i++) {  // blocks[0] is the header comment
+            String reply = blocks[i].endsWith("\n") ? blocks[i].substring(0, blocks[i].length() - 1) : blocks[i];
+            if (!reply.isEmpty()) replies.add(reply);
+        }
+        return replies;
+    }
+}
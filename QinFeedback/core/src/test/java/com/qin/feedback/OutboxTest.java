@@ -0,0 +1,156 @@
+package com.qin.feedback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboxTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private TestServer server;
+    private final List<JSONObject> received = new ArrayList<>();
+    private Outbox outbox;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new TestServer();
+        // Status by text: "dup…" was handled before, "reject…" fails on the bridge, the rest go through
+        server.handle("/batch", ex -> {
+            try {
+                JSONArray items = new JSONObject(new String(TestServer.readBody(ex), "UTF-8")).getJSONArray("items");
+                JSONArray results = new JSONArray();
+                for (int i = 0; i < items.length(); i++) {
+                    JSONObject item = items.getJSONObject(i);
+                    synchronized (received) {
+                        received.add(item);
+                    }
+                    String text = item.optString("text", item.optString("voice_input"));
+                    String status = text.startsWith("dup") ? "duplicate" : text.startsWith("reject") ? "error" : "ok";
+                    results.put(new JSONObject().put("id", item.getString("id")).put("status", status));
+                }
+                TestServer.send(ex, 200, new JSONObject().put("results", results).toString().getBytes("UTF-8"));
+            } catch (Exception e) {
+                TestServer.send(ex, 500, new byte[0]);
+            }
+        });
+        outbox = new Outbox(tmp.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void sameNoteTwiceIsQueuedOnce() {
+        assertTrue(outbox.addChat("buy milk"));
+        assertFalse(outbox.addChat("buy milk"));
+        assertTrue(outbox.addAction("5", menuItem("📝 Note"), "call the plumber"));
+        assertFalse(outbox.addAction("5", menuItem("📝 Note"), "call the plumber"));
+        assertTrue(outbox.addAction("5", menuItem("📝 Note"), "call the electrician"));
+        assertTrue(outbox.addAction("5", menuItem("⏰ Remind"), "call the plumber"));  // Menu changed under the key
+        assertEquals(4, outbox.size());
+    }
+
+    @Test
+    public void takesAreNeverMerged() throws IOException {
+        File take = tmp.newFile("take.3gp");
+        Files.write(take.toPath(), new byte[] {1, 2, 3});
+        assertTrue(outbox.addAudio(take, "audio/3gpp", null, null));
+        assertTrue(outbox.addAudio(take, "audio/3gpp", null, null));
+        assertEquals(2, outbox.size());
+    }
+
+    @Test
+    public void queueSurvivesARestart() {
+        outbox.addChat("buy milk");
+        outbox.addAction("5", menuItem("📝 Note"), "call the plumber");
+        assertEquals(2, new Outbox(tmp.getRoot()).size());
+    }
+
+    @Test
+    public void replaySendsOldestFirstAndKeepsRejected() throws Exception {
+        outbox.addChat("first");
+        outbox.addChat("dup second");
+        outbox.addChat("reject third");
+        outbox.addAction("5", menuItem("📝 Note"), "fourth");
+
+        Outbox.Result result = outbox.replay(ApiClient.get(), server.url("/batch"), null);
+        assertEquals(3, result.sent);
+        assertEquals(1, result.remaining);
+        assertFalse(result.failed);
+        assertEquals("first", received.get(0).getString("text"));
+        assertEquals("📝 Note", received.get(3).getJSONObject("menu_item").getString("label"));
+        assertEquals(0, outbox.msUntilDue());
+    }
+
+    @Test
+    public void itemRejectedFiveTimesIsDropped() {
+        outbox.addChat("reject me");
+        int dropped = 0;
+        for (int i = 0; i < 5; i++) {
+            dropped += outbox.replay(ApiClient.get(), server.url("/batch"), null).dropped;
+        }
+        assertEquals(1, dropped);
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void unreachableBridgeBacksOffAndDoubles() throws IOException {
+        TestServer gone = new TestServer();
+        String deadUrl = gone.url("/batch");
+        gone.stop();
+
+        outbox.addChat("buy milk");
+        assertTrue(outbox.replay(ApiClient.get(), deadUrl, null).failed);
+        assertBackoff(30000);
+        assertFalse(outbox.isDue());
+        assertNull(outbox.replay(ApiClient.get(), deadUrl, null));
+
+        // New work cuts the wait short, but the next failure still doubles it
+        outbox.addChat("call the plumber");
+        assertTrue(outbox.isDue());
+        assertTrue(outbox.replay(ApiClient.get(), deadUrl, null).failed);
+        assertBackoff(60000);
+
+        // Back online: everything goes, and the backoff starts over
+        outbox.addChat("one more");
+        Outbox.Result result = outbox.replay(ApiClient.get(), server.url("/batch"), null);
+        assertFalse(result.failed);
+        assertEquals(0, result.remaining);
+        outbox.addChat("offline again");
+        assertTrue(outbox.replay(ApiClient.get(), deadUrl, null).failed);
+        assertBackoff(30000);
+    }
+
+    // Within the ±25% jitter of the expected wait
+    private void assertBackoff(long expectedMs) {
+        long due = outbox.msUntilDue();
+        assertTrue("backoff " + due, due > expectedMs * 3 / 4 - 1000 && due <= expectedMs * 5 / 4);
+    }
+
+    private static MenuItem menuItem(String label) {
+        MenuItem item = new MenuItem();
+        item.label = label;
+        item.type = "voice";
+        item.command = label + " command";
+        return item;
+    }
+}
@@ -0,0 +1,65 @@
+package com.qin.feedback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PagerTest {
+
+    @Test
+    public void pagesThroughAList() {
+        Pager pager = new Pager(9);
+        pager.reset(20);
+        assertEquals(0, pager.start());
+        assertEquals(9, pager.end());
+        assertFalse(pager.hasPrev());
+        assertTrue(pager.next());
+        assertTrue(pager.next());
+        assertEquals(18, pager.start());
+        assertEquals(20, pager.end());
+        assertFalse(pager.hasNext());
+        assertFalse(pager.next());
+        assertTrue(pager.prev());
+        assertEquals(1, pager.page());
+    }
+
+    @Test
+    public void keysMapOntoTheCurrentPage() {
+        Pager pager = new Pager(9);
+        pager.reset(11);
+        assertEquals(0, pager.indexForKey(1));
+        assertEquals(8, pager.indexForKey(9));
+        assertEquals(-1, pager.indexForKey(0));
+        assertEquals(-1, pager.indexForKey(10));
+        pager.next();
+        assertEquals(10, pager.indexForKey(2));
+        assertEquals(-1, pager.indexForKey(3));  // Past the end of the list
+    }
+
+    @Test
+    public void emptyList() {
+        Pager pager = new Pager(9);
+        pager.reset(0);
+        assertEquals(0, pager.end());
+        assertFalse(pager.hasNext());
+        assertEquals(-1, pager.indexForKey(1));
+    }
+
+    @Test
+    public void resizeKeepsThePageWhileItExists() {
+        Pager pager = new Pager(9);
+        pager.reset(30);
+        pager.next();
+        pager.next();
+        pager.resize(40);  // Grew
+        assertEquals(2, pager.page());
+        pager.resize(19);  // Page 2 still has one item
+        assertEquals(2, pager.page());
+        pager.resize(12);  // Page 2 is gone: last page that exists
+        assertEquals(1, pager.page());
+        pager.resize(0);
+        assertEquals(0, pager.page());
+    }
+}
@@ -0,0 +1,138 @@
+package com.qin.feedback;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RangeCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void separateRangesStaySeparate() throws IOException {
+        RangeCache cache = new RangeCache(tmp.getRoot(), 1 << 20);
+        write(cache, "a", 0, 100);
+        write(cache, "a", 200, 100);
+        assertEquals(100, cache.cachedRun("a", 0));
+        assertEquals(50, cache.cachedRun("a", 50));
+        assertEquals(0, cache.cachedRun("a", 150));
+        assertEquals(200, cache.nextCachedStart("a", 100));
+        assertEquals(-1, cache.nextCachedStart("a", 250));
+        assertEquals(200, cache.cachedBytes("a"));
+    }
+
+    @Test
+    public void touchingAndOverlappingRangesMerge() throws IOException {
+        RangeCache cache = new RangeCache(tmp.getRoot(), 1 << 20);
+        write(cache, "a", 0, 100);
+        write(cache, "a", 200, 100);
+        write(cache, "a", 100, 100);  // Fills the gap exactly
+        assertEquals(300, cache.cachedRun("a", 0));
+        write(cache, "a", 250, 150);  // Overlaps the end
+        assertEquals(400, cache.cachedRun("a", 0));
+        assertEquals(400, cache.cachedBytes("a"));
+    }
+
+    @Test
+    public void rangeBeforeAllOthersIsInsertedFirst() throws IOException {
+        RangeCache cache = new RangeCache(tmp.getRoot(), 1 << 20);
+        write(cache, "a", 500, 100);
+        write(cache, "a", 0, 100);
+        assertEquals(500, cache.nextCachedStart("a", 0));
+        assertEquals(200, cache.cachedBytes("a"));
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        RangeCache cache = new RangeCache(tmp.getRoot(), 1 << 20);
+        write(cache, "a", 1000, 64);
+        byte[] buffer = new byte[16];
+        assertEquals(16, cache.read("a", 1010, buffer, 16));
+        for (int i = 0; i < 16; i++) {
+            assertEquals((byte) (1010 + i), buffer[i]);
+        }
+    }
+
+    @Test
+    public void indexSurvivesARestart() throws IOException {
+        RangeCache cache = new RangeCache(tmp.getRoot(), 1 << 20);
+        cache.setRemote("a", 5000, "\"v1\"");
+        write(cache, "a", 0, 100);
+        write(cache, "a", 300, 100);
+
+        RangeCache reopened = new RangeCache(tmp.getRoot(), 1 << 20);
+        assertEquals(5000, reopened.length("a"));
+        assertEquals("\"v1\"", reopened.etag("a"));
+        assertEquals(100, reopened.cachedRun("a", 0));
+        assertEquals(300, reopened.nextCachedStart("a", 0));
+    }
+
+    @Test
+    public void newVersionDropsCachedBytes() throws IOException {
+        RangeCache cache = new RangeCache(tmp.getRoot(), 1 << 20);
+        cache.setRemote("a", 5000, "\"v1\"");
+        write(cache, "a", 0, 100);
+        cache.setRemote("a", 5000, "\"v2\"");
+        assertEquals(0, cache.cachedBytes("a"));
+
+        write(cache, "a", 0, 100);
+        cache.setRemote("a", 6000, null);  // Size changed without an ETag
+        assertEquals(0, cache.cachedBytes("a"));
+        assertEquals(6000, cache.length("a"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedButNotTheLatest() throws IOException {
+        RangeCache cache = new RangeCache(tmp.getRoot(), 250);
+        write(cache, "a", 0, 100);
+        write(cache, "b", 0, 100);
+        cache.cachedRun("a", 0);  // a is now more recent than b
+        write(cache, "c", 0, 100);
+        assertEquals(100, cache.cachedBytes("a"));
+        assertEquals(0, cache.cachedBytes("b"));
+        assertEquals(100, cache.cachedBytes("c"));
+
+        write(cache, "c", 100, 400);  // Over the cap on its own: still kept
+        assertEquals(500, cache.cachedBytes("c"));
+        assertEquals(0, cache.cachedBytes("a"));
+    }
+
+    @Test
+    public void unknownKeyHasNothing() {
+        RangeCache cache = new RangeCache(tmp.getRoot(), 1 << 20);
+        assertEquals(-1, cache.length("x"));
+        assertNull(cache.etag("x"));
+        assertEquals(0, cache.cachedRun("x", 0));
+        assertEquals(-1, cache.nextCachedStart("x", 0));
+    }
+
+    @Test
+    public void corruptIndexStartsEmpty() throws IOException {
+        File dir = tmp.getRoot();
+        RangeCache cache = new RangeCache(dir, 1 << 20);
+        write(cache, "a", 0, 100);
+        java.io.FileOutputStream out = new java.io.FileOutputStream(new File(dir, "range_cache.json"));
+        out.write("{not json".getBytes("UTF-8"));
+        out.close();
+        assertEquals(0, new RangeCache(dir, 1 << 20).cachedBytes("a"));
+    }
+
+    // Bytes are their own offset (mod 256), so reads can be checked
+    private static void write(RangeCache cache, String key, long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) (offset + i);
+        RangeCache.Writer writer = cache.openWriter(key, offset);
+        try {
+            writer.write(data, length);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.qin.feedback;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RecordingProfileTest {
+
+    @Test
+    public void keepsTheBridgesOrderAndAppendsTheFallback() {
+        List<RecordingProfile> c = RecordingProfile.candidates(Arrays.asList("aac_lc_24k", "amr_wb"), 28);
+        assertEquals(Arrays.asList(RecordingProfile.AAC_LC_24K, RecordingProfile.AMR_WB, RecordingProfile.AMR_NB), c);
+    }
+
+    @Test
+    public void dropsUnknownDuplicateAndTooNewProfiles() {
+        List<RecordingProfile> c = RecordingProfile.candidates(
+            Arrays.asList("opus_32k", "aac_lc_24k", "amr_wb", "amr_wb", "amr_nb"), 15);
+        // AAC needs API 16, AMR-WB API 10
+        assertEquals(Arrays.asList(RecordingProfile.AMR_WB, RecordingProfile.AMR_NB), c);
+    }
+
+    @Test
+    public void fallbackStaysWhereTheBridgePutIt() {
+        List<RecordingProfile> c = RecordingProfile.candidates(Arrays.asList("amr_nb", "amr_wb"), 28);
+        assertEquals(Arrays.asList(RecordingProfile.AMR_NB, RecordingProfile.AMR_WB), c);
+    }
+
+    @Test
+    public void olderBridgeGetsTheFallbackOnly() {
+        assertEquals(Collections.singletonList(RecordingProfile.AMR_NB), RecordingProfile.candidates(null, 28));
+        assertEquals(Collections.singletonList(RecordingProfile.AMR_NB),
+            RecordingProfile.candidates(Collections.<String>emptyList(), 28));
+    }
+
+    @Test
+    public void forIdAndCapabilities() {
+        assertSame(RecordingProfile.AMR_NB_3GP, RecordingProfile.forId("amr_nb_3gp"));
+        assertNull(RecordingProfile.forId("nope"));
+        assertTrue(RecordingProfile.AMR_NB.isTrimmable());
+        assertTrue(RecordingProfile.AAC_LC_24K.isStreamable());
+        assertFalse(RecordingProfile.AAC_LC_24K.isTrimmable());
+        assertFalse(RecordingProfile.AMR_NB_3GP.isStreamable());
+    }
+}
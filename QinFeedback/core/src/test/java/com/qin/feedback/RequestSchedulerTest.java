@@ -0,0 +1,190 @@
+package com.qin.feedback;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+
+    private static final int WORKERS = 4;
+
+    // Stands in for the UI thread: submit, cancel and every callback run here
+    private final ExecutorService ui = Executors.newSingleThreadExecutor();
+    private final BlockingQueue<Object> delivered = new LinkedBlockingQueue<>();
+    private final BlockingQueue<RuntimeException> crashes = new LinkedBlockingQueue<>();
+    private final RequestScheduler scheduler = new RequestScheduler(this::onUiThread);
+
+    @After
+    public void tearDown() throws Exception {
+        onUi(() -> {
+            scheduler.shutdown();
+            return null;
+        });
+        ui.shutdownNow();
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() throws Exception {
+        CountDownLatch[] gates = occupyWorkers();
+        final List<String> order = new ArrayList<>();
+        submit(RequestScheduler.PRIORITY_SPECULATIVE, "prefetch", order);
+        submit(RequestScheduler.PRIORITY_LIST, "list", order);
+        submit(RequestScheduler.PRIORITY_VOICE, "voice", order);
+        submit(RequestScheduler.PRIORITY_INTERACTIVE, "chat 1", order);
+        submit(RequestScheduler.PRIORITY_INTERACTIVE, "chat 2", order);
+
+        gates[0].countDown();  // One worker frees up and drains the queue in order
+        for (int i = 0; i < 5; i++) poll();
+        assertEquals(Arrays.asList("voice", "chat 1", "chat 2", "list", "prefetch"), order);
+        release(gates);
+    }
+
+    @Test
+    public void cancelledQueuedJobNeverRuns() throws Exception {
+        CountDownLatch[] gates = occupyWorkers();
+        final List<String> order = new ArrayList<>();
+        final long id = submit(RequestScheduler.PRIORITY_LIST, "cancelled", order);
+        submit(RequestScheduler.PRIORITY_LIST, "kept", order);
+        onUi(() -> {
+            scheduler.cancel(id);
+            return null;
+        });
+        release(gates);
+        assertEquals("kept", poll());
+        assertEquals(Arrays.asList("kept"), order);
+        assertFalse(onUi(() -> scheduler.isActive(id)));
+    }
+
+    @Test
+    public void cancellingARunningJobCancelsItsCallAndCallback() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch hookRan = new CountDownLatch(1);
+        final long id = onUi(() -> scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_UI, req -> {
+            req.onCancel(hookRan::countDown);
+            started.countDown();
+            while (!req.call.isCancelled()) Thread.yield();
+            return "too late";
+        }, result -> delivered.add(result)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        onUi(() -> {
+            scheduler.cancel(id);
+            return null;
+        });
+        assertTrue(hookRan.await(5, TimeUnit.SECONDS));
+        assertNull(delivered.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void cancelGroupLeavesOtherGroups() throws Exception {
+        CountDownLatch[] gates = occupyWorkers();
+        final List<String> order = new ArrayList<>();
+        onUi(() -> scheduler.submit(RequestScheduler.PRIORITY_LIST, RequestScheduler.GROUP_UI,
+            req -> record(order, "screen"), result -> delivered.add(result)));
+        submit(RequestScheduler.PRIORITY_LIST, "background", order);
+        onUi(() -> {
+            scheduler.cancelGroup(RequestScheduler.GROUP_UI);
+            return null;
+        });
+        release(gates);
+        assertEquals("background", poll());
+        assertNull(delivered.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void crashedJobDeliversItsFallback() throws Exception {
+        onUi(() -> scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_UI,
+            req -> {
+                throw new IllegalStateException("boom");
+            },
+            e -> "ERROR:" + e.getMessage(), result -> delivered.add(result)));
+        assertEquals("ERROR:boom", poll());
+    }
+
+    @Test
+    public void crashWithoutFallbackIsRethrownOnTheCallbackThread() throws Exception {
+        onUi(() -> scheduler.submit(RequestScheduler.PRIORITY_INTERACTIVE, RequestScheduler.GROUP_UI,
+            req -> {
+                throw new IllegalStateException("boom");
+            }, result -> delivered.add(result)));
+        RuntimeException crash = crashes.poll(5, TimeUnit.SECONDS);
+        assertEquals("boom", crash.getMessage());
+        assertNull(delivered.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    // Parks a job on every worker, so whatever comes next has to queue
+    private CountDownLatch[] occupyWorkers() throws Exception {
+        final CountDownLatch running = new CountDownLatch(WORKERS);
+        CountDownLatch[] gates = new CountDownLatch[WORKERS];
+        for (int i = 0; i < WORKERS; i++) {
+            final CountDownLatch gate = new CountDownLatch(1);
+            gates[i] = gate;
+            onUi(() -> scheduler.submit(RequestScheduler.PRIORITY_VOICE, RequestScheduler.GROUP_BACKGROUND, req -> {
+                running.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    // Shut down
+                }
+                return null;
+            }, result -> {}));
+        }
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        return gates;
+    }
+
+    private static void release(CountDownLatch[] gates) {
+        for (CountDownLatch gate : gates) gate.countDown();
+    }
+
+    private long submit(final int priority, final String name, final List<String> order) throws Exception {
+        return onUi(() -> scheduler.submit(priority, RequestScheduler.GROUP_BACKGROUND,
+            req -> record(order, name), result -> delivered.add(result)));
+    }
+
+    private static String record(List<String> order, String name) {
+        synchronized (order) {
+            order.add(name);
+        }
+        return name;
+    }
+
+    private Object poll() throws InterruptedException {
+        Object result = delivered.poll(5, TimeUnit.SECONDS);
+        if (result == null) throw new AssertionError("No callback");
+        return result;
+    }
+
+    private void onUiThread(final Runnable r) {
+        try {
+            ui.execute(() -> {
+                try {
+                    r.run();
+                } catch (RuntimeException e) {
+                    crashes.add(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Test over: parked workers finishing after tearDown
+        }
+    }
+
+    private <T> T onUi(Callable<T> task) throws Exception {
+        return ui.submit(task).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,74 @@
+package com.qin.feedback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+
+    private final ResponseCache cache = new ResponseCache();
+
+    @Test
+    public void zeroTtlIsNotCached() {
+        cache.put("k", Reply.text("Weather: 12°"), 0);
+        assertNull(cache.get("k"));
+    }
+
+    @Test
+    public void keySeparatesLabelAndVoiceInput() {
+        cache.put(ResponseCache.key("4", "☀️ Weather", null), Reply.text("Sunny"), 60);
+        assertNull(cache.get(ResponseCache.key("4", "📅 Calendar", null)));
+        assertNull(cache.get(ResponseCache.key("4", "☀️ Weather", "tomorrow")));
+        assertEquals(Reply.text("Sunny"), cache.get(ResponseCache.key("4", "☀️ Weather", null)).response);
+    }
+
+    @Test
+    public void freshThenStaleThenGone() throws InterruptedException {
+        cache.put("k", Reply.text("Sunny"), 1);
+        ResponseCache.Entry entry = cache.get("k");
+        assertTrue(entry.isFresh());
+
+        // Past the TTL it's still served, marked stale, while a refresh runs
+        Thread.sleep(1100);
+        entry = cache.get("k");
+        assertNotNull(entry);
+        assertFalse(entry.isFresh());
+
+        // Past 4× the TTL it's dropped
+        Thread.sleep(3000);
+        assertNull(cache.get("k"));
+    }
+
+    @Test
+    public void refreshReplacesTheStaleEntry() throws InterruptedException {
+        cache.put("k", Reply.text("Sunny"), 1);
+        Thread.sleep(1100);
+        cache.put("k", Reply.text("Rain"), 1);
+        ResponseCache.Entry entry = cache.get("k");
+        assertTrue(entry.isFresh());
+        assertEquals(Reply.text("Rain"), entry.response);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        for (int i = 0; i < 16; i++) {
+            cache.put("k" + i, Reply.text("reply " + i), 60);
+        }
+        cache.get("k0");  // Now the most recently used
+        cache.put("k16", Reply.text("reply 16"), 60);
+        assertNotNull(cache.get("k0"));
+        assertNull(cache.get("k1"));
+        assertNotNull(cache.get("k16"));
+    }
+
+    @Test
+    public void formatAge() {
+        assertEquals("just now", ResponseCache.formatAge(30000));
+        assertEquals("4m ago", ResponseCache.formatAge(4 * 60000 + 59000));
+        assertEquals("2h ago", ResponseCache.formatAge(150 * 60000));
+    }
+}
@@ -0,0 +1,111 @@
+package com.qin.feedback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentedDownloadTest {
+
+    private static final int SIZE = 9000;
+    private static final String ETAG = "\"2328-1\"";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final byte[] content = TestServer.content(SIZE);
+    private TestServer server;
+    private TestServer.FileHandler file;
+    private File part;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new TestServer();
+        file = new TestServer.FileHandler(content, ETAG);
+        server.handle("/files/a.mp3", file);
+        part = new File(tmp.getRoot(), "a.mp3.part");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void segmentsAreFetchedAsRanges() throws IOException {
+        Downloader.Report report = run(3);
+        assertArrayEquals(content, Files.readAllBytes(part.toPath()));
+        List<String> ranges = file.ranges();
+        Collections.sort(ranges);
+        assertEquals(Arrays.asList("bytes=0-2999", "bytes=3000-5999", "bytes=6000-8999"), ranges);
+        assertEquals(3, report.segments);
+    }
+
+    @Test
+    public void resumeFetchesOnlyWhatIsMissing() throws IOException {
+        file.cutRangeFrom = 3000;  // The middle segment gets 1500 of its 3000 bytes
+        try {
+            run(3);
+            fail("Expected the cut segment to fail the pass");
+        } catch (IOException expected) {
+        }
+        assertTrue(SegmentedDownload.planFile(part).exists());
+
+        // Asked for 2 now, the plan still has 3; only the missing half is fetched
+        Downloader.Report report = run(2);
+        assertArrayEquals(content, Files.readAllBytes(part.toPath()));
+        List<String> ranges = file.ranges();
+        assertEquals(4, ranges.size());
+        assertEquals("bytes=4500-5999", ranges.get(3));
+        assertEquals(3, report.segments);
+        assertEquals(1500, report.segmentBytes[0] + report.segmentBytes[1] + report.segmentBytes[2]);
+    }
+
+    @Test
+    public void planForAnotherSizeIsDiscarded() throws IOException {
+        file.cutRangeFrom = 3000;
+        try {
+            run(3);
+            fail("Expected the cut segment to fail the pass");
+        } catch (IOException expected) {
+        }
+        // Same part file, but a different expected size: start over, split afresh
+        SegmentedDownload other = new SegmentedDownload(ApiClient.get(),
+            server.url("/files/a.mp3"), part, SIZE - 1000);
+        try {
+            other.run(2, null, new ApiClient.Call(), new Downloader.Report());
+            fail("Expected a Content-Range mismatch");
+        } catch (IOException expected) {
+        }
+        List<String> ranges = file.ranges();
+        List<String> second = ranges.subList(3, ranges.size());
+        Collections.sort(second);
+        assertEquals(Arrays.asList("bytes=0-3999", "bytes=4000-7999"), second);
+    }
+
+    @Test(expected = SegmentedDownload.RangesUnsupportedException.class)
+    public void serverIgnoringRangeIsReported() throws IOException {
+        file.ignoreRange = true;
+        run(2);
+    }
+
+    private Downloader.Report run(int segments) throws IOException {
+        Downloader.Report report = new Downloader.Report();
+        new SegmentedDownload(ApiClient.get(), server.url("/files/a.mp3"), part, SIZE)
+            .run(segments, null, new ApiClient.Call(), report);
+        return report;
+    }
+}
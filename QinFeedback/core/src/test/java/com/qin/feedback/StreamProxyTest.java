@@ -0,0 +1,52 @@
+package com.qin.feedback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class StreamProxyTest {
+
+    @Test
+    public void noHeaderIsTheWholeFile() {
+        assertArrayEquals(new long[] {0, 1000}, StreamProxy.parseRange(null, 1000));
+    }
+
+    @Test
+    public void closedRangeIsInclusive() {
+        assertArrayEquals(new long[] {0, 100}, StreamProxy.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[] {500, 501}, StreamProxy.parseRange("bytes=500-500", 1000));
+    }
+
+    @Test
+    public void openRangeRunsToTheEnd() {
+        assertArrayEquals(new long[] {300, 1000}, StreamProxy.parseRange("bytes=300-", 1000));
+    }
+
+    @Test
+    public void suffixRangeIsTheLastBytes() {
+        assertArrayEquals(new long[] {900, 1000}, StreamProxy.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[] {0, 1000}, StreamProxy.parseRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    public void endPastTheFileIsClamped() {
+        assertArrayEquals(new long[] {990, 1000}, StreamProxy.parseRange("bytes=990-5000", 1000));
+    }
+
+    @Test
+    public void unsatisfiableOrMalformedIsNull() {
+        assertNull(StreamProxy.parseRange("bytes=1000-", 1000));
+        assertNull(StreamProxy.parseRange("bytes=50-10", 1000));
+        assertNull(StreamProxy.parseRange("bytes=0-1,5-9", 1000));  // Multipart isn't served
+        assertNull(StreamProxy.parseRange("items=0-1", 1000));
+        assertNull(StreamProxy.parseRange("bytes=abc", 1000));
+        assertNull(StreamProxy.parseRange("bytes=-0", 1000));
+    }
+
+    @Test
+    public void unknownLengthIsNull() {
+        assertNull(StreamProxy.parseRange(null, -1));
+        assertNull(StreamProxy.parseRange("bytes=0-", -1));
+    }
+}
@@ -0,0 +1,133 @@
+package com.qin.feedback;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process HTTP server for tests, on a fresh loopback port each time (like
+ * MockBridge), so per-host state in ApiClient doesn't leak between tests.
+ */
+class TestServer {
+
+    private final HttpServer server;
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    TestServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.setExecutor(pool);
+        server.start();
+    }
+
+    void handle(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    void stop() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    static byte[] readBody(HttpExchange ex) throws IOException {
+        InputStream in = ex.getRequestBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+
+    static void send(HttpExchange ex, int code, byte[] body) throws IOException {
+        ex.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        OutputStream os = ex.getResponseBody();
+        os.write(body);
+        os.close();
+    }
+
+    /** Test content: byte i is (i * 31 + 7) & 0xff, so misplaced bytes show. */
+    static byte[] content(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) data[i] = (byte) (i * 31 + 7);
+        return data;
+    }
+
+    /**
+     * A file served like the bridge's /files/: ETag, and a single
+     * "bytes=a-" / "bytes=a-b" Range honoured when If-Range matches.
+     */
+    static class FileHandler implements HttpHandler {
+        final byte[] content;
+        final String etag;
+        boolean ignoreRange = false;
+        long cutRangeFrom = -1;  // Once: a range starting here stops halfway
+        final List<String> ranges = new ArrayList<>();  // Range header of each request, null for none
+
+        FileHandler(byte[] content, String etag) {
+            this.content = content;
+            this.etag = etag;
+        }
+
+        synchronized List<String> ranges() {
+            return new ArrayList<>(ranges);
+        }
+
+        @Override
+        public void handle(HttpExchange ex) throws IOException {
+            String range = ex.getRequestHeaders().getFirst("Range");
+            String ifRange = ex.getRequestHeaders().getFirst("If-Range");
+            synchronized (this) {
+                ranges.add(range);
+            }
+            ex.getResponseHeaders().set("ETag", etag);
+            ex.getResponseHeaders().set("Accept-Ranges", "bytes");
+            int size = content.length;
+            int from = 0;
+            int to = size - 1;
+            if (range != null && !ignoreRange && (ifRange == null || ifRange.equals(etag))) {
+                String[] parts = range.substring("bytes=".length()).split("-", 2);
+                from = Integer.parseInt(parts[0]);
+                if (!parts[1].isEmpty()) to = Math.min(to, Integer.parseInt(parts[1]));
+                if (from > to) {
+                    ex.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                    ex.sendResponseHeaders(416, -1);
+                    ex.close();
+                    return;
+                }
+                ex.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + size);
+                ex.sendResponseHeaders(206, to - from + 1);
+            } else {
+                ex.sendResponseHeaders(200, size);
+            }
+            int length = to - from + 1;
+            boolean cut;
+            synchronized (this) {
+                cut = from == cutRangeFrom;
+                if (cut) cutRangeFrom = -1;
+            }
+            OutputStream os = ex.getResponseBody();
+            if (cut) {
+                os.write(content, from, length / 2);
+                os.flush();
+                // Thrown out of the handler, this makes the server drop the socket mid-body
+                throw new IOException("Cut off");
+            }
+            os.write(content, from, length);
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.qin.feedback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TranscriptJoinerTest {
+
+    @Test
+    public void joinsInRecordingOrderWhateverOrderResultsArrive() {
+        TranscriptJoiner joiner = new TranscriptJoiner();
+        int gen = joiner.generation();
+        int first = joiner.add();
+        int second = joiner.add();
+        int third = joiner.add();
+        assertEquals(3, joiner.pendingCount());
+
+        assertTrue(joiner.set(gen, third, " and on Sunday "));
+        assertEquals("Remind me … … and on Sunday", joiner.join("Remind me", "…"));
+        assertTrue(joiner.set(gen, first, "to call Shaul"));
+        assertTrue(joiner.set(gen, second, "about the export"));
+        assertEquals(0, joiner.pendingCount());
+        assertEquals("Remind me to call Shaul about the export and on Sunday", joiner.join("Remind me", "…"));
+    }
+
+    @Test
+    public void emptyOrDroppedPartsLeaveNoGap() {
+        TranscriptJoiner joiner = new TranscriptJoiner();
+        int gen = joiner.generation();
+        int a = joiner.add();
+        int b = joiner.add();
+        joiner.set(gen, a, "");
+        joiner.set(gen, b, null);
+        assertEquals("Note", joiner.join("Note", null));
+        assertEquals("", new TranscriptJoiner().join("", null));
+    }
+
+    @Test
+    public void pendingPartsAreLeftOutWithoutAMark() {
+        TranscriptJoiner joiner = new TranscriptJoiner();
+        joiner.add();
+        int b = joiner.add();
+        joiner.set(joiner.generation(), b, "second");
+        assertEquals("first second", joiner.join("first", null));
+    }
+
+    @Test
+    public void lateResultForAClearedTakeIsIgnored() {
+        TranscriptJoiner joiner = new TranscriptJoiner();
+        int oldGen = joiner.generation();
+        int index = joiner.add();
+        joiner.clear();
+        assertFalse(joiner.set(oldGen, index, "stale"));
+        assertFalse(joiner.set(joiner.generation(), 5, "no such part"));
+        assertEquals("", joiner.join("", "…"));
+    }
+}
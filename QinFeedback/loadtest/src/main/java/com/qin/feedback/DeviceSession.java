@@ -0,0 +1,253 @@
+package com.qin.feedback;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * One simulated Qin phone: loops through what a user actually does until
+ * the deadline, with think time between key presses.
+ *
+ * A session is: menu revalidation, a recorded voice question (the repo's
+ * .3gp clip, transcribe-only), confirm and a streamed /chat, then zero to two follow-up
+ * option presses. Some sessions run a menu action instead, and a few open
+ * Shiurim and download a file. Requests go through ApiClient, Reply and
+ * Downloader exactly as the app sends them.
+ */
+class DeviceSession implements Runnable {
+
+    static class Mix {
+        int thinkMs = 2000;         // Mean pause between key presses
+        int recordSeconds = 6;      // Length of the simulated voice take
+        File clip;                  // Real recording the take is built from
+        double actionShare = 0.2;   // Sessions that press a menu action instead of speaking
+        double downloadShare = 0.1; // Sessions that also download a shiur
+        int maxFollowUps = 2;
+    }
+
+    private final int id;
+    private final String base;
+    private final Mix mix;
+    private final Metrics metrics;
+    private final long deadline;
+    private final File workDir;
+    private final ApiClient api = ApiClient.get();
+    private final Downloader downloader = new Downloader(api);
+    private final Random random;
+    private String menuEtag;
+
+    DeviceSession(int id, String base, Mix mix, Metrics metrics, long deadline, File workDir) {
+        this.id = id;
+        this.base = base;
+        this.mix = mix;
+        this.metrics = metrics;
+        this.deadline = deadline;
+        this.workDir = workDir;
+        this.random = new Random(id * 7919L);
+    }
+
+    @Override
+    public void run() {
+        File take = new File(workDir, "device-" + id + ".3gp");
+        try {
+            writeTake(take);
+            // Phones don't all wake up at once
+            think(random.nextInt(Math.max(1, mix.thinkMs)));
+            while (System.currentTimeMillis() < deadline) {
+                runSession(take);
+                metrics.sessions.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        } catch (IOException e) {
+            System.err.println("device " + id + ": " + e.getMessage());
+        } finally {
+            take.delete();
+        }
+    }
+
+    private void runSession(File take) throws InterruptedException {
+        fetchMenu();
+        think(mix.thinkMs);
+
+        Reply reply;
+        if (random.nextDouble() < mix.actionShare) {
+            reply = action("4");
+        } else {
+            long t0 = System.currentTimeMillis();
+            String transcript = transcribe(take);
+            reply = null;
+            if (transcript != null) {  // Failed: the user gives up on this one and tries again later
+                long transcribeMs = System.currentTimeMillis() - t0;
+                think(mix.thinkMs / 2);  // Reads the transcript, presses 1
+                long sendAt = System.currentTimeMillis();
+                reply = chat(transcript);
+                if (reply != null) {
+                    // Stop-recording to full reply, minus the user's reading time
+                    metrics.voiceToReply.record(transcribeMs + System.currentTimeMillis() - sendAt);
+                }
+            }
+        }
+
+        int followUps = random.nextInt(mix.maxFollowUps + 1);
+        for (int i = 0; i < followUps && reply != null && reply.optionCount() > 0; i++) {
+            think(mix.thinkMs);
+            reply = chat(reply.texts[random.nextInt(reply.optionCount())]);
+        }
+
+        if (random.nextDouble() < mix.downloadShare) {
+            think(mix.thinkMs);
+            download();
+        }
+        think(mix.thinkMs);
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // REQUESTS (as MainActivity sends them)
+    // ═══════════════════════════════════════════════════════════════════
+
+    private void fetchMenu() {
+        long t0 = System.currentTimeMillis();
+        try {
+            ApiClient.Response resp = api.getIfNoneMatch(base + "/menu", menuEtag, ApiClient.READ_TIMEOUT_LIST, null);
+            if (resp.ok() || resp.notModified()) {
+                if (resp.etag != null) menuEtag = resp.etag;
+                metrics.menu.record(System.currentTimeMillis() - t0);
+                return;
+            }
+        } catch (IOException e) {}
+        metrics.menu.recordError();
+    }
+
+    private String transcribe(File take) {
+        long t0 = System.currentTimeMillis();
+        try {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("X-Transcribe-Only", "true");
+            ApiClient.Response resp = api.postFile(base + "/audio", take, "audio/3gpp",
+                headers, ApiClient.READ_TIMEOUT_AUDIO, null);
+            if (resp.ok()) {
+                metrics.audio.record(System.currentTimeMillis() - t0);
+                return new JSONObject(resp.body).optString("transcript", "(empty)");
+            }
+        } catch (Exception e) {}
+        metrics.audio.recordError();
+        return null;
+    }
+
+    private Reply chat(String text) {
+        long t0 = System.currentTimeMillis();
+        final long[] firstDelta = {0};
+        final Reply[] done = new Reply[1];
+        try {
+            JSONObject json = new JSONObject();
+            json.put("text", text);
+            json.put("stream", true);
+            ApiClient.Response resp = api.postJsonStream(base + "/chat", json.toString(),
+                ApiClient.READ_TIMEOUT_LLM, line -> {
+                    if (!line.startsWith("data:")) return;
+                    try {
+                        JSONObject event = new JSONObject(line.substring(5).trim());
+                        if (event.optBoolean("done")) {
+                            done[0] = Reply.fromJson(event);
+                        } else if (firstDelta[0] == 0) {
+                            firstDelta[0] = System.currentTimeMillis();
+                        }
+                    } catch (Exception e) {}
+                }, null);
+            Reply reply = null;
+            if (resp.body == null) {
+                reply = done[0];
+            } else if (resp.ok()) {
+                reply = Reply.fromJson(new JSONObject(resp.body));
+            }
+            if (reply != null) {
+                if (firstDelta[0] > 0) metrics.chatFirstToken.record(firstDelta[0] - t0);
+                metrics.chat.record(System.currentTimeMillis() - t0);
+                return reply;
+            }
+        } catch (Exception e) {}
+        metrics.chat.recordError();
+        return null;
+    }
+
+    private Reply action(String key) {
+        long t0 = System.currentTimeMillis();
+        try {
+            JSONObject json = new JSONObject();
+            json.put("action", key);
+            ApiClient.Response resp = api.postJson(base + "/action", json.toString(),
+                ApiClient.READ_TIMEOUT_LLM, null);
+            if (resp.ok()) {
+                Reply reply = Reply.fromJson(new JSONObject(resp.body));
+                metrics.action.record(System.currentTimeMillis() - t0);
+                return reply;
+            }
+        } catch (Exception e) {}
+        metrics.action.recordError();
+        return null;
+    }
+
+    private void download() {
+        long t0 = System.currentTimeMillis();
+        RemoteFile file;
+        try {
+            // The first page, as the Shiurim screen opens with
+            FileListing.Page page = FileListing.fetch(api, base + "/files", "", 9, null);
+            if (page.files.isEmpty()) {
+                metrics.files.recordError();
+                return;
+            }
+            metrics.files.record(System.currentTimeMillis() - t0);
+            file = page.files.get(random.nextInt(page.files.size()));
+        } catch (Exception e) {
+            metrics.files.recordError();
+            return;
+        }
+
+        File dest = new File(workDir, "device-" + id + "-" + file.name);
+        t0 = System.currentTimeMillis();
+        try {
+            Downloader.Report report = downloader.download(base + file.path, dest,
+                file.size, 1, null, new ApiClient.Call());
+            metrics.download.record(System.currentTimeMillis() - t0);
+            metrics.downloadBytes.addAndGet(report.bytes);
+        } catch (IOException e) {
+            metrics.download.recordError();
+        } finally {
+            dest.delete();
+            Downloader.partFile(dest).delete();
+        }
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+
+    // The real clip, repeated to the size of a take (AMR-NB in 3GP is ~1.6 KB/s),
+    // so a real bridge's ffmpeg and Whisper decode it like a phone's upload
+    private void writeTake(File take) throws IOException {
+        byte[] clip = Files.readAllBytes(mix.clip.toPath());
+        long size = Math.max(clip.length, mix.recordSeconds * 1600L);
+        FileOutputStream fos = new FileOutputStream(take);
+        try {
+            for (long written = 0; written < size; written += clip.length) {
+                fos.write(clip);
+            }
+        } finally {
+            fos.close();
+        }
+    }
+
+    // Exponential think time around the mean, cut short at the deadline
+    private void think(int meanMs) throws InterruptedException {
+        if (meanMs <= 0) return;
+        long ms = (long) (-Math.log(1 - random.nextDouble()) * meanMs);
+        long left = deadline - System.currentTimeMillis();
+        Thread.sleep(Math.max(0, Math.min(ms, left)));
+    }
+}
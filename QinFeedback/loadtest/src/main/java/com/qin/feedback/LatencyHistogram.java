@@ -0,0 +1,122 @@
+package com.qin.feedback;
+
+import java.util.Locale;
+
+/**
+ * Log-linear latency histogram in milliseconds: each power of two is split
+ * into 16 buckets, so percentiles are within ~6% at any scale and memory is
+ * fixed however many requests are recorded. Thread-safe.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_POWER = 24;  // Up to ~4.6 hours
+
+    private final String name;
+    private final long[] counts = new long[(MAX_POWER + 1) * SUB];
+    private long count;
+    private long errors;
+    private long max;
+    private long sum;
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    synchronized void record(long ms) {
+        ms = Math.max(0, ms);
+        counts[bucket(ms)]++;
+        count++;
+        sum += ms;
+        if (ms > max) max = ms;
+    }
+
+    synchronized void recordError() {
+        errors++;
+    }
+
+    synchronized long count() {
+        return count;
+    }
+
+    synchronized long errors() {
+        return errors;
+    }
+
+    synchronized long max() {
+        return max;
+    }
+
+    synchronized long mean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /** Upper bound of the bucket holding the p-th percentile, or 0 if empty. */
+    synchronized long percentile(double p) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for (int b = 0; b < counts.length; b++) {
+            seen += counts[b];
+            if (seen >= rank) return Math.min(upperBound(b), max);
+        }
+        return max;
+    }
+
+    /** One row per power of two with a bar scaled to the fullest row. */
+    synchronized String render() {
+        StringBuilder sb = new StringBuilder();
+        long[] rows = new long[MAX_POWER + 1];
+        long fullest = 0;
+        for (int b = 0; b < counts.length; b++) {
+            rows[b / SUB] += counts[b];
+        }
+        int first = -1;
+        int last = -1;
+        for (int r = 0; r < rows.length; r++) {
+            if (rows[r] == 0) continue;
+            if (first < 0) first = r;
+            last = r;
+            fullest = Math.max(fullest, rows[r]);
+        }
+        if (first < 0) return "";
+        for (int r = first; r <= last; r++) {
+            long lo = r == 0 ? 0 : upperBound(r * SUB - 1) + 1;
+            long hi = upperBound(r * SUB + SUB - 1);
+            int bar = (int) (rows[r] * 40 / fullest);
+            sb.append(String.format(Locale.US, "  %7s - %-7s %6d ", format(lo), format(hi), rows[r]));
+            for (int i = 0; i < bar; i++) sb.append('#');
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Values below SUB map one-to-one; above, the top SUB_BITS+1 bits pick the bucket
+    private static int bucket(long ms) {
+        if (ms < SUB) return (int) ms;
+        int power = 63 - Long.numberOfLeadingZeros(ms);  // >= SUB_BITS
+        int shift = power - SUB_BITS;
+        int sub = (int) (ms >> shift) - SUB;
+        int row = Math.min(shift + 1, MAX_POWER);
+        return row * SUB + Math.min(sub, SUB - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        int row = bucket / SUB;
+        int sub = bucket % SUB;
+        if (row == 0) return sub;
+        int shift = row - 1;
+        return ((long) (SUB + sub + 1) << shift) - 1;
+    }
+
+    static String format(long ms) {
+        if (ms < 1000) return ms + "ms";
+        if (ms < 10000) return String.format(Locale.US, "%.1fs", ms / 1000.0);
+        return (ms / 1000) + "s";
+    }
+}
@@ -0,0 +1,191 @@
+package com.qin.feedback;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs a fleet of simulated Qin phones ({@link DeviceSession}) against a
+ * bridge and reports throughput and latency histograms per endpoint, for
+ * one or more concurrency levels in turn.
+ *
+ * Without --bridge it starts {@link MockBridge} in-process, whose Whisper
+ * and LLM slots can be sized to match the real Mac:
+ *
+ *   --devices 1,4,8,16     phones per level (default 4)
+ *   --duration 60          seconds per level
+ *   --think 2000           mean ms between key presses
+ *   --record 6             seconds of audio per voice question
+ *   --clip FILE            recording those seconds are made of
+ *                          (default audio/voice_20251223_205152.3gp)
+ *   --actions 0.2          share of sessions that press a menu action instead
+ *   --downloads 0.1        share of sessions that also download a shiur
+ *   --bridge URL           test a running bridge instead of the mock
+ *   --transcribe-ms 1500 --transcribe-slots 2
+ *   --first-token-ms 800 --token-ms 30 --llm-slots 4 --file-mb 4
+ */
+public class LoadTest {
+
+    private static final int PROGRESS_MS = 5000;
+    private static final String DEFAULT_CLIP = "audio/voice_20251223_205152.3gp";
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> levels = new ArrayList<>();
+        int durationSec = 60;
+        String bridge = null;
+        DeviceSession.Mix mix = new DeviceSession.Mix();
+        MockBridge.Config mock = new MockBridge.Config();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            if (value == null && !arg.equals("--help")) usage("Missing value for " + arg);
+            switch (arg) {
+                case "--devices":
+                    for (String n : value.split(",")) levels.add(Integer.parseInt(n.trim()));
+                    break;
+                case "--duration": durationSec = Integer.parseInt(value); break;
+                case "--think": mix.thinkMs = Integer.parseInt(value); break;
+                case "--record": mix.recordSeconds = Integer.parseInt(value); break;
+                case "--clip": mix.clip = new File(value); break;
+                case "--actions": mix.actionShare = Double.parseDouble(value); break;
+                case "--downloads": mix.downloadShare = Double.parseDouble(value); break;
+                case "--bridge": bridge = value.replaceAll("/+$", ""); break;
+                case "--transcribe-ms": mock.transcribeMs = Integer.parseInt(value); break;
+                case "--transcribe-slots": mock.transcribeSlots = Integer.parseInt(value); break;
+                case "--first-token-ms": mock.firstTokenMs = Integer.parseInt(value); break;
+                case "--token-ms": mock.tokenMs = Integer.parseInt(value); break;
+                case "--llm-slots": mock.llmSlots = Integer.parseInt(value); break;
+                case "--file-mb": mock.fileMb = Integer.parseInt(value); break;
+                case "--help": usage(null); break;
+                default: usage("Unknown option " + arg);
+            }
+            i++;
+        }
+        if (levels.isEmpty()) levels.add(4);
+        if (mix.clip == null) mix.clip = findRepoFile(DEFAULT_CLIP);
+        if (mix.clip == null || !mix.clip.isFile()) usage("No voice clip: pass --clip FILE");
+
+        // Every phone shares the ApiClient singleton and so the JVM's one keep-alive
+        // cache, which ApiClient sizes for a single phone: widen it to the whole
+        // fleet so phones don't evict each other's idle sockets. After
+        // ApiClient.get() (which sets its own value), before the first connection.
+        ApiClient.get();
+        int maxDevices = 0;
+        for (int n : levels) maxDevices = Math.max(maxDevices, n);
+        System.setProperty("http.maxConnections", String.valueOf(Math.max(4, maxDevices * 2)));
+
+        MockBridge mockBridge = null;
+        if (bridge == null) {
+            mockBridge = new MockBridge(mock);
+            bridge = mockBridge.start();
+            System.out.printf(Locale.US, "Mock bridge on %s (whisper %d slots × %d ms, llm %d slots, first token %d ms)%n",
+                bridge, mock.transcribeSlots, mock.transcribeMs, mock.llmSlots, mock.firstTokenMs);
+        } else {
+            System.out.println("Bridge: " + bridge);
+        }
+
+        List<String> summary = new ArrayList<>();
+        try {
+            for (int devices : levels) {
+                Metrics metrics = runLevel(bridge, devices, durationSec, mix);
+                summary.add(summaryRow(devices, durationSec, metrics));
+            }
+        } finally {
+            if (mockBridge != null) mockBridge.stop();
+        }
+
+        System.out.println();
+        System.out.println("═══ Saturation ═══");
+        System.out.printf(Locale.US, "%7s %10s %10s %10s %12s %7s%n",
+            "devices", "sess/min", "audio p95", "chat p95", "voice p95", "errors");
+        for (String row : summary) System.out.println(row);
+    }
+
+    private static Metrics runLevel(String bridge, int devices, int durationSec,
+                                    DeviceSession.Mix mix) throws InterruptedException, IOException {
+        System.out.println();
+        System.out.printf(Locale.US, "═══ %d device%s, %d s ═══%n", devices, devices == 1 ? "" : "s", durationSec);
+
+        Metrics metrics = new Metrics();
+        File workDir = File.createTempFile("qin-loadtest", "");
+        workDir.delete();
+        workDir.mkdirs();
+
+        long start = System.currentTimeMillis();
+        long deadline = start + durationSec * 1000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            Thread t = new Thread(new DeviceSession(i, bridge, mix, metrics, deadline, workDir), "device-" + i);
+            t.start();
+            threads.add(t);
+        }
+
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(Math.min(PROGRESS_MS, Math.max(1, deadline - System.currentTimeMillis())));
+            long elapsed = (System.currentTimeMillis() - start) / 1000;
+            System.out.printf(Locale.US, "  %3ds  sessions %d  audio %d  chat %d  (p95 %s)%n", elapsed,
+                metrics.sessions.get(), metrics.audio.count(), metrics.chat.count(),
+                LatencyHistogram.format(metrics.chat.percentile(95)));
+        }
+        // Devices finish the request they are in; the LLM timeout bounds the wait
+        for (Thread t : threads) t.join(ApiClient.READ_TIMEOUT_LLM);
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+
+        File[] leftovers = workDir.listFiles();
+        if (leftovers != null) for (File f : leftovers) f.delete();
+        workDir.delete();
+
+        System.out.println();
+        System.out.printf(Locale.US, "%-16s %6s %5s %7s %8s %8s %8s %8s%n",
+            "", "count", "err", "req/s", "p50", "p90", "p99", "max");
+        for (LatencyHistogram h : metrics.all()) {
+            if (h.count() == 0 && h.errors() == 0) continue;
+            System.out.printf(Locale.US, "%-16s %6d %5d %7.2f %8s %8s %8s %8s%n",
+                h.name(), h.count(), h.errors(), h.count() / seconds,
+                LatencyHistogram.format(h.percentile(50)), LatencyHistogram.format(h.percentile(90)),
+                LatencyHistogram.format(h.percentile(99)), LatencyHistogram.format(h.max()));
+        }
+        if (metrics.downloadBytes.get() > 0) {
+            System.out.printf(Locale.US, "downloads: %.1f MB, %.2f MB/s%n",
+                metrics.downloadBytes.get() / 1048576.0, metrics.downloadBytes.get() / 1048576.0 / seconds);
+        }
+        for (LatencyHistogram h : metrics.all()) {
+            if (h.count() == 0) continue;
+            System.out.println();
+            System.out.println(h.name());
+            System.out.print(h.render());
+        }
+        return metrics;
+    }
+
+    private static String summaryRow(int devices, int durationSec, Metrics m) {
+        long errors = 0;
+        for (LatencyHistogram h : m.all()) errors += h.errors();
+        return String.format(Locale.US, "%7d %10.1f %10s %10s %12s %7d", devices,
+            m.sessions.get() * 60.0 / durationSec,
+            LatencyHistogram.format(m.audio.percentile(95)),
+            LatencyHistogram.format(m.chat.percentile(95)),
+            LatencyHistogram.format(m.voiceToReply.percentile(95)), errors);
+    }
+
+    // Gradle runs this from loadtest/, so look in each parent for the repo's file
+    private static File findRepoFile(String path) {
+        for (File dir = new File("").getAbsoluteFile(); dir != null; dir = dir.getParentFile()) {
+            File f = new File(dir, path);
+            if (f.isFile()) return f;
+        }
+        return null;
+    }
+
+    private static void usage(String error) {
+        if (error != null) System.err.println(error);
+        System.err.println("Usage: LoadTest [--devices 1,4,8] [--duration s] [--think ms] [--record s]\n"
+            + "                [--clip file] [--actions share] [--downloads share] [--bridge URL]\n"
+            + "                [--transcribe-ms ms] [--transcribe-slots n] [--first-token-ms ms]\n"
+            + "                [--token-ms ms] [--llm-slots n] [--file-mb n]");
+        System.exit(error != null ? 2 : 0);
+    }
+}
@@ -0,0 +1,22 @@
+package com.qin.feedback;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Everything one load level measures, shared by all of its devices. */
+class Metrics {
+    final LatencyHistogram menu = new LatencyHistogram("GET /menu");
+    final LatencyHistogram audio = new LatencyHistogram("POST /audio");
+    final LatencyHistogram chatFirstToken = new LatencyHistogram("/chat 1st token");
+    final LatencyHistogram chat = new LatencyHistogram("POST /chat");
+    final LatencyHistogram action = new LatencyHistogram("POST /action");
+    final LatencyHistogram files = new LatencyHistogram("GET /files");
+    final LatencyHistogram download = new LatencyHistogram("download");
+    final LatencyHistogram voiceToReply = new LatencyHistogram("voice → reply");
+
+    final AtomicLong sessions = new AtomicLong();
+    final AtomicLong downloadBytes = new AtomicLong();
+
+    LatencyHistogram[] all() {
+        return new LatencyHistogram[] {menu, audio, chatFirstToken, chat, action, files, download, voiceToReply};
+    }
+}
@@ -0,0 +1,335 @@
+package com.qin.feedback;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Stand-in for qin_clawdbot_server.py: same endpoints and payload shapes,
+ * with Whisper and the LLM replaced by sleeps.
+ *
+ * Whisper and the gateway are the bridge's scarce resources, so each sits
+ * behind a semaphore with a configurable number of slots; requests beyond
+ * that queue, which is what saturation looks like from the phones.
+ */
+class MockBridge {
+
+    static class Config {
+        int transcribeMs = 1500;    // Decode + Whisper for a typical take
+        int transcribeSlots = 2;    // Whisper processes running at once
+        int firstTokenMs = 800;     // Gateway time to first token
+        int tokenMs = 30;           // Per streamed delta
+        int llmSlots = 4;           // Concurrent gateway requests
+        int fileMb = 4;             // Size of each listed shiur
+        int fileCount = 20;
+    }
+
+    private static final String REPLY_BODY =
+        "Here's where things stand. The embeddings job finished overnight. "
+        + "Two cron jobs are failing since the LanceDB upgrade. "
+        + "Shaul asked to move the parquet export to Sunday. "
+        + "Nothing urgent in email beyond that.";
+    private static final String[] OPTIONS = {
+        "Show the failing cron jobs", "Reply to Shaul", "What's on the calendar?",
+        "Summarize email", "Play the newest shiur", "Nothing, thanks"
+    };
+    private static final String[] OPTION_KEYS = {"1", "2", "3", "4", "6", "7"};
+    private static final String MENU_ETAG = "\"mock-menu-1\"";
+
+    private final Config config;
+    private final Semaphore whisper;
+    private final Semaphore gateway;
+    private final ExecutorService pool = Executors.newCachedThreadPool();  // Like ThreadingHTTPServer
+    private HttpServer server;
+
+    MockBridge(Config config) {
+        this.config = config;
+        this.whisper = new Semaphore(config.transcribeSlots, true);
+        this.gateway = new Semaphore(config.llmSlots, true);
+    }
+
+    /** Starts on a free local port; returns the base URL. */
+    String start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.createContext("/menu", this::handleMenu);
+        server.createContext("/audio", this::handleAudio);
+        server.createContext("/chat", this::handleChat);
+        server.createContext("/action", this::handleAction);
+        server.createContext("/files", this::handleFiles);
+        server.createContext("/batch", this::handleBatch);
+        server.setExecutor(pool);
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // ENDPOINTS
+    // ═══════════════════════════════════════════════════════════════════
+
+    private void handleMenu(HttpExchange ex) throws IOException {
+        try {
+            if (MENU_ETAG.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                ex.getResponseHeaders().set("ETag", MENU_ETAG);
+                ex.sendResponseHeaders(304, -1);
+                return;
+            }
+            JSONObject items = new JSONObject();
+            String[] labels = {"📧 Emails", "📅 Calendar", "🌤️ Weather", "⏰ Remind", "📝 Note", "🔍 Search"};
+            for (int i = 0; i < labels.length; i++) {
+                JSONObject item = new JSONObject();
+                item.put("label", labels[i]);
+                item.put("type", i < 3 ? "instant" : "voice");
+                item.put("ttl", 300);
+                items.put(String.valueOf(i + 4), item);
+            }
+            ex.getResponseHeaders().set("ETag", MENU_ETAG);
+            sendJson(ex, new JSONObject().put("items", items));
+        } catch (Exception e) {
+            sendError(ex, e);
+        }
+    }
+
+    private void handleAudio(HttpExchange ex) throws IOException {
+        try {
+            long received = drain(ex.getRequestBody());
+            long start = System.currentTimeMillis();
+            // Longer takes cost more to transcribe: ~1 s of AMR is ~1.6 KB
+            sleepWithSlot(whisper, config.transcribeMs + received / 1600 * 50);
+            JSONObject json = new JSONObject();
+            json.put("transcript", "What's the status of the cron jobs and did Shaul reply");
+            json.put("transcribe_ms", System.currentTimeMillis() - start);
+            sendJson(ex, json);
+        } catch (Exception e) {
+            sendError(ex, e);
+        }
+    }
+
+    private void handleChat(HttpExchange ex) throws IOException {
+        try {
+            JSONObject request = new JSONObject(ApiClient.readFully(ex.getRequestBody()));
+            if (!request.optBoolean("stream")) {
+                sleepWithSlot(gateway, config.firstTokenMs + config.tokenMs * REPLY_BODY.length() / 20);
+                sendJson(ex, replyPayload());
+                return;
+            }
+
+            gateway.acquireUninterruptibly();
+            try {
+                Thread.sleep(config.firstTokenMs);
+                ex.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+                ex.getResponseHeaders().set("Cache-Control", "no-cache");
+                ex.sendResponseHeaders(200, 0);  // Chunked
+                OutputStream os = ex.getResponseBody();
+                String text = replyText();
+                // ~20-char deltas, like the gateway's token stream
+                for (int i = 0; i < text.length(); i += 20) {
+                    String delta = text.substring(i, Math.min(text.length(), i + 20));
+                    writeEvent(os, new JSONObject().put("delta", delta));
+                    Thread.sleep(config.tokenMs);
+                }
+                writeEvent(os, replyPayload().put("done", true));
+                os.close();
+            } finally {
+                gateway.release();
+            }
+        } catch (Exception e) {
+            sendError(ex, e);
+        }
+    }
+
+    private void handleAction(HttpExchange ex) throws IOException {
+        try {
+            drain(ex.getRequestBody());
+            sleepWithSlot(gateway, config.firstTokenMs + config.tokenMs * REPLY_BODY.length() / 20);
+            sendJson(ex, replyPayload().put("ttl", 60));
+        } catch (Exception e) {
+            sendError(ex, e);
+        }
+    }
+
+    // Outbox replay: every item goes through the gateway in turn, audio through Whisper first
+    private void handleBatch(HttpExchange ex) throws IOException {
+        try {
+            JSONArray items = new JSONObject(ApiClient.readFully(ex.getRequestBody())).optJSONArray("items");
+            JSONArray results = new JSONArray();
+            for (int i = 0; items != null && i < items.length(); i++) {
+                JSONObject item = items.getJSONObject(i);
+                if ("audio".equals(item.optString("kind"))) {
+                    sleepWithSlot(whisper, config.transcribeMs);
+                }
+                sleepWithSlot(gateway, config.firstTokenMs + config.tokenMs * REPLY_BODY.length() / 20);
+                results.put(replyPayload().put("id", item.optString("id")).put("status", "ok"));
+            }
+            sendJson(ex, new JSONObject().put("results", results));
+        } catch (Exception e) {
+            sendError(ex, e);
+        }
+    }
+
+    private static String queryParam(HttpExchange ex, String name) throws IOException {
+        String query = ex.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private void handleFiles(HttpExchange ex) throws IOException {
+        try {
+            String path = ex.getRequestURI().getPath();
+            long size = config.fileMb * 1024L * 1024L;
+            if (path.equals("/files") || path.equals("/files/")) {
+                // Like the bridge: ?limit=N&cursor=C pages by name, the cursor being the last one sent
+                String limit = queryParam(ex, "limit");
+                String cursor = queryParam(ex, "cursor");
+                int pageSize = limit != null ? Integer.parseInt(limit) : config.fileCount;
+                JSONArray files = new JSONArray();
+                String last = null;
+                int i = 0;
+                for (; i < config.fileCount && files.length() < pageSize; i++) {
+                    String name = String.format("Weinberger_Shiur_%02d.mp3", i + 1);
+                    if (cursor != null && name.compareTo(cursor) <= 0) continue;
+                    JSONObject f = new JSONObject();
+                    f.put("name", name);
+                    f.put("path", "/files/" + name);
+                    f.put("size", size);
+                    f.put("size_mb", config.fileMb);
+                    files.put(f);
+                    last = name;
+                }
+                JSONObject reply = new JSONObject().put("files", files).put("count", config.fileCount);
+                if (limit != null) reply.put("next_cursor", i < config.fileCount ? last : JSONObject.NULL);
+                sendJson(ex, reply);
+                return;
+            }
+            sendFile(ex, size);
+        } catch (Exception e) {
+            sendError(ex, e);
+        }
+    }
+
+    // Synthetic file body; honours a single "bytes=a-" / "bytes=a-b" range like the bridge
+    private void sendFile(HttpExchange ex, long size) throws IOException {
+        String etag = "\"" + Long.toHexString(size) + "-0\"";
+        ex.getResponseHeaders().set("ETag", etag);
+        ex.getResponseHeaders().set("Accept-Ranges", "bytes");
+        ex.getResponseHeaders().set("Content-Type", "audio/mpeg");
+        long from = 0;
+        long to = size - 1;
+        String range = ex.getRequestHeaders().getFirst("Range");
+        String ifRange = ex.getRequestHeaders().getFirst("If-Range");
+        boolean partial = range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(etag));
+        if (partial) {
+            String[] parts = range.substring(6).split("-", 2);
+            from = Long.parseLong(parts[0].trim());
+            if (parts.length > 1 && !parts[1].trim().isEmpty()) to = Math.min(to, Long.parseLong(parts[1].trim()));
+            if (from > to) {
+                ex.getResponseHeaders().set("Content-Range", "bytes */" + size);
+                ex.sendResponseHeaders(416, -1);
+                return;
+            }
+            ex.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + size);
+            ex.sendResponseHeaders(206, to - from + 1);
+        } else {
+            ex.sendResponseHeaders(200, size);
+        }
+        OutputStream os = ex.getResponseBody();
+        byte[] buffer = new byte[16384];
+        long remaining = to - from + 1;
+        while (remaining > 0) {
+            int n = (int) Math.min(buffer.length, remaining);
+            os.write(buffer, 0, n);
+            remaining -= n;
+        }
+        os.close();
+    }
+
+    // ═══════════════════════════════════════════════════════════════════
+    // HELPERS
+    // ═══════════════════════════════════════════════════════════════════
+
+    private static String replyText() {
+        StringBuilder sb = new StringBuilder(REPLY_BODY).append("\n\n");
+        for (int i = 0; i < OPTIONS.length; i++) {
+            sb.append('[').append(OPTION_KEYS[i]).append("] ").append(OPTIONS[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Same shape as reply_payload() in the bridge
+    private static JSONObject replyPayload() throws Exception {
+        JSONArray options = new JSONArray();
+        for (int i = 0; i < OPTIONS.length; i++) {
+            options.put(new JSONObject().put("key", OPTION_KEYS[i]).put("text", OPTIONS[i]));
+        }
+        JSONObject json = new JSONObject();
+        json.put("response", replyText());
+        json.put("body", REPLY_BODY);
+        json.put("options", options);
+        return json;
+    }
+
+    private static void sleepWithSlot(Semaphore slots, long ms) throws InterruptedException {
+        slots.acquire();
+        try {
+            Thread.sleep(ms);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private static long drain(InputStream is) throws IOException {
+        byte[] buffer = new byte[16384];
+        long total = 0;
+        int n;
+        while ((n = is.read(buffer)) != -1) total += n;
+        is.close();
+        return total;
+    }
+
+    private static void writeEvent(OutputStream os, JSONObject event) throws IOException {
+        os.write(("data: " + event + "\n\n").getBytes("UTF-8"));
+        os.flush();
+    }
+
+    private static void sendJson(HttpExchange ex, JSONObject json) throws IOException {
+        byte[] body = json.toString().getBytes("UTF-8");
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, body.length);
+        OutputStream os = ex.getResponseBody();
+        os.write(body);
+        os.close();
+    }
+
+    private static void sendError(HttpExchange ex, Exception e) throws IOException {
+        try {
+            byte[] body = new JSONObject().put("error", String.valueOf(e.getMessage())).toString().getBytes("UTF-8");
+            ex.sendResponseHeaders(500, body.length);
+            OutputStream os = ex.getResponseBody();
+            os.write(body);
+            os.close();
+        } catch (Exception ignored) {
+            ex.close();  // Headers already sent (mid-stream): just drop the connection
+        }
+    }
+}
@@ -0,0 +1,196 @@
+#!/usr/bin/env python3
+"""
+Recording profile benchmark for the Qin bridge.
+
+Encodes sample clips the way each app RecordingProfile would, uploads them
+to a running bridge's /audio (X-Transcribe-Only) and reports, per profile:
+
+  bytes/s     upload size per second of audio
+  encode      encoder CPU per second of audio (ffmpeg on this machine, a
+              relative figure: the phone encodes on its DSP)
+  upload      estimated upload time at --uplink-kbps
+  server      bridge wall time: decode + Whisper (median of --runs)
+  e2e         upload + server, the latency the user waits for
+  WER         word error rate, if a reference transcript <clip>.txt exists
+
+and prints the QIN_AUDIO_PROFILES order to give the bridge, fastest first.
+
+Usage:
+  python3 benchmark_audio_profiles.py                     # audio/*.3gp → localhost:8081
+  python3 benchmark_audio_profiles.py clip1.wav clip2.3gp --bridge http://mac.local:8081
+  python3 benchmark_audio_profiles.py --uplink-kbps 24 --runs 5 --json results.json
+
+The sample clips in audio/ were themselves recorded as AMR-NB, so wideband
+profiles are encoded from 8 kHz audio there; record a few WAV clips with a
+wideband recorder for a fair accuracy comparison.
+"""
+
+import argparse
+import glob
+import json
+import os
+import re
+import resource
+import statistics
+import subprocess
+import sys
+import tempfile
+import time
+import urllib.request
+
+FFMPEG = os.getenv("FFMPEG", "ffmpeg")
+
+# Mirrors RecordingProfile in the app (QinFeedback/core): id → how to encode it
+PROFILES = {
+    "amr_nb": {"content_type": "audio/amr", "encoder": "libopencore_amrnb",
+               "args": ["-ar", "8000", "-ac", "1", "-c:a", "libopencore_amrnb", "-b:a", "12.2k", "-f", "amr"]},
+    "amr_wb": {"content_type": "audio/amr-wb", "encoder": "libvo_amrwbenc",
+               "args": ["-ar", "16000", "-ac", "1", "-c:a", "libvo_amrwbenc", "-b:a", "23.85k", "-f", "amr"]},
+    "aac_lc_24k": {"content_type": "audio/aac", "encoder": "aac",
+                   "args": ["-ar", "16000", "-ac", "1", "-c:a", "aac", "-b:a", "24k", "-f", "adts"]},
+    "amr_nb_3gp": {"content_type": "audio/3gpp", "encoder": "libopencore_amrnb",
+                   "args": ["-ar", "8000", "-ac", "1", "-c:a", "libopencore_amrnb", "-b:a", "12.2k", "-f", "3gp"]},
+}
+
+
+def available_encoders():
+    out = subprocess.run([FFMPEG, "-hide_banner", "-encoders"], capture_output=True, text=True).stdout
+    return {line.split()[1] for line in out.splitlines() if len(line.split()) > 1 and line.startswith(" ")}
+
+
+def children_cpu():
+    usage = resource.getrusage(resource.RUSAGE_CHILDREN)
+    return usage.ru_utime + usage.ru_stime
+
+
+def to_wav(clip, wav_path):
+    """Decode a clip once to 16 kHz mono WAV, the common source for every profile."""
+    subprocess.run([FFMPEG, "-y", "-i", clip, "-ar", "16000", "-ac", "1", wav_path],
+                   capture_output=True, check=True, timeout=60)
+    probe = subprocess.run([FFMPEG, "-i", wav_path], capture_output=True, text=True)
+    m = re.search(r"Duration: (\d+):(\d+):([\d.]+)", probe.stderr)
+    return int(m.group(1)) * 3600 + int(m.group(2)) * 60 + float(m.group(3)) if m else 0.0
+
+
+def encode(wav_path, profile, out_path):
+    """Returns encoder CPU seconds."""
+    before = children_cpu()
+    subprocess.run([FFMPEG, "-y", "-i", wav_path] + profile["args"] + [out_path],
+                   capture_output=True, check=True, timeout=60)
+    return children_cpu() - before
+
+
+def transcribe(bridge, data, content_type):
+    """POSTs one take like the app does; returns (wall ms, transcript)."""
+    req = urllib.request.Request(bridge + "/audio", data=data, method="POST", headers={
+        "Content-Type": content_type,
+        "X-Transcribe-Only": "true",
+    })
+    start = time.time()
+    with urllib.request.urlopen(req, timeout=300) as resp:
+        body = json.loads(resp.read().decode("utf-8"))
+    return (time.time() - start) * 1000, body.get("transcript", "")
+
+
+def word_error_rate(reference, hypothesis):
+    ref = re.findall(r"[\w']+", reference.lower())
+    hyp = re.findall(r"[\w']+", hypothesis.lower())
+    if not ref:
+        return None
+    # Levenshtein over words
+    prev = list(range(len(hyp) + 1))
+    for i, r in enumerate(ref, 1):
+        cur = [i]
+        for j, h in enumerate(hyp, 1):
+            cur.append(min(prev[j] + 1, cur[j - 1] + 1, prev[j - 1] + (r != h)))
+        prev = cur
+    return prev[-1] / len(ref)
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Compare app recording profiles end to end.")
+    parser.add_argument("clips", nargs="*", help="audio clips (default: audio/*.3gp)")
+    parser.add_argument("--bridge", default="http://127.0.0.1:8081", help="running bridge to upload to")
+    parser.add_argument("--profiles", default=",".join(PROFILES), help="profile ids to compare")
+    parser.add_argument("--uplink-kbps", type=float, default=64, help="phone uplink for the upload estimate")
+    parser.add_argument("--runs", type=int, default=3, help="uploads per clip and profile (median is used)")
+    parser.add_argument("--json", help="also write raw results here")
+    args = parser.parse_args()
+
+    here = os.path.dirname(os.path.abspath(__file__))
+    clips = args.clips or sorted(glob.glob(os.path.join(here, "audio", "*.3gp")))
+    if not clips:
+        sys.exit("No clips given and none found in audio/")
+
+    encoders = available_encoders()
+    profiles = []
+    for pid in args.profiles.split(","):
+        if pid not in PROFILES:
+            sys.exit(f"Unknown profile {pid}; known: {', '.join(PROFILES)}")
+        if PROFILES[pid]["encoder"] not in encoders:
+            print(f"⚠️  Skipping {pid}: this ffmpeg has no {PROFILES[pid]['encoder']} encoder")
+            continue
+        profiles.append(pid)
+
+    results = {pid: [] for pid in profiles}
+    with tempfile.TemporaryDirectory() as tmp:
+        for clip in clips:
+            name = os.path.basename(clip)
+            wav = os.path.join(tmp, "source.wav")
+            seconds = to_wav(clip, wav)
+            if seconds <= 0:
+                print(f"⚠️  Skipping {name}: could not read duration")
+                continue
+            ref_path = os.path.splitext(clip)[0] + ".txt"
+            reference = open(ref_path).read() if os.path.exists(ref_path) else None
+            print(f"\n🎤 {name} ({seconds:.1f}s)")
+
+            for pid in profiles:
+                profile = PROFILES[pid]
+                out = os.path.join(tmp, pid)
+                cpu = encode(wav, profile, out)
+                with open(out, "rb") as f:
+                    data = f.read()
+                walls = []
+                transcript = ""
+                for _ in range(args.runs):
+                    wall, transcript = transcribe(args.bridge, data, profile["content_type"])
+                    walls.append(wall)
+                upload_ms = len(data) * 8 / args.uplink_kbps  # bits / (kbit/s) = ms
+                server_ms = statistics.median(walls)
+                row = {
+                    "clip": name, "seconds": seconds, "bytes": len(data),
+                    "encode_cpu_ms": cpu * 1000, "upload_ms": upload_ms, "server_ms": server_ms,
+                    "e2e_ms": upload_ms + server_ms, "transcript": transcript,
+                    "wer": word_error_rate(reference, transcript) if reference else None,
+                }
+                results[pid].append(row)
+                wer = f"  WER {row['wer']:.0%}" if row["wer"] is not None else ""
+                print(f"  {pid:<11} {len(data):>7} B  server {server_ms:>6.0f} ms  e2e {row['e2e_ms']:>6.0f} ms{wer}  {transcript[:50]}")
+
+    print(f"\n═══ Per second of audio (uplink {args.uplink_kbps:g} kbps) ═══")
+    print(f"{'profile':<11} {'bytes/s':>8} {'encode':>8} {'upload':>8} {'server':>8} {'e2e':>8} {'WER':>6}")
+    summary = []
+    for pid in profiles:
+        rows = results[pid]
+        if not rows:
+            continue
+        total = sum(r["seconds"] for r in rows)
+        per = lambda key: sum(r[key] for r in rows) / total
+        wers = [r["wer"] for r in rows if r["wer"] is not None]
+        wer = f"{statistics.mean(wers):.0%}" if wers else "-"
+        summary.append((per("e2e_ms"), pid))
+        print(f"{pid:<11} {per('bytes'):>8.0f} {per('encode_cpu_ms'):>6.1f}ms {per('upload_ms'):>6.0f}ms "
+              f"{per('server_ms'):>6.0f}ms {per('e2e_ms'):>6.0f}ms {wer:>6}")
+
+    ranking = [pid for _, pid in sorted(summary)]
+    print(f"\nFastest end to end first:\n  QIN_AUDIO_PROFILES={','.join(ranking)}")
+    print("Check the WER column before preferring a profile that is only slightly faster.")
+
+    if args.json:
+        with open(args.json, "w") as f:
+            json.dump({"uplink_kbps": args.uplink_kbps, "results": results}, f, indent=2)
+
+
+if __name__ == "__main__":
+    main()
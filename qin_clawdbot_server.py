@@ -4,22 +4,41 @@ Qin → Clawdbot Bridge Server (with Whisper STT + Menu System)
 Receives audio from Qin, transcribes with Whisper, forwards to Clawdbot.
 
 Endpoints:
-  GET  /menu   - Get menu config for Qin app
+  GET  /menu   - Get menu config for Qin app (ETag / If-None-Match → 304)
+  GET  /files  - Shiurim list (?limit=N&cursor=C for one page + "next_cursor")
   POST /audio  - Receive audio, transcribe, forward to Clawdbot
-  POST /chat   - Receive text, forward to Clawdbot
-  GET  /health - Health check
+  POST /chat   - Receive text, forward to Clawdbot ("stream": true → SSE deltas;
+                 "prefetch": true → throwaway session; "commit": true → record
+                 a used prefetch answer in the Qin session)
+  POST /batch  - Replay the app's offline outbox in order (deduped by item id)
+  GET  /health - Health check, plus the recording profiles /audio decodes
+                 ("audio_profiles", preferred first; QIN_AUDIO_PROFILES)
+
+/chat and /action replies carry "response" (full text) plus "body" and
+"options" ([{"key": "1", "text": "..."}]) split out of it.
+
+JSON replies are gzipped for clients that send Accept-Encoding: gzip, and
+/chat, /action and /batch accept gzipped request bodies (advertised with an
+Accept-Encoding response header, RFC 7694).
 """
 
-from http.server import HTTPServer, BaseHTTPRequestHandler
+from http.server import ThreadingHTTPServer, BaseHTTPRequestHandler
 import urllib.request
 import json
+import hashlib
 import os
 import re
 import socket
 import subprocess
 import tempfile
 import shutil
+import threading
 import time
+import base64
+import bisect
+import gzip
+import uuid
+from collections import OrderedDict
 
 
 def strip_markdown(text):
@@ -65,15 +84,107 @@ def strip_markdown(text):
     
     return text.strip()
 
+
+# Option lines the model ends each reply with: "[1] Foo" or "1. Foo"
+OPTION_LINE_RE = re.compile(r"^[ \t\r\f\v]*(?:\[(\d)\]|(\d)\.)(.+)$")
+# Keys the Qin draws itself: 0 Back, 5 Voice, 8 Shuffle, 9 system
+RESERVED_OPTION_KEYS = {"0", "5", "8", "9"}
+
+
+def split_options(text):
+    """Split a reply into its body text and structured options.
+
+    Mirrors the app's fallback scanner: option lines are removed from the
+    body; one counts as an option if its text has no "[" in it. Reserved
+    keys are dropped, so the app can show the list as-is.
+    """
+    body_lines = []
+    options = []
+    for line in text.split("\n"):
+        m = OPTION_LINE_RE.match(line)
+        if not m:
+            body_lines.append(line)
+            continue
+        # The blank lines leading up to the options go with them
+        while body_lines and not body_lines[-1].strip():
+            body_lines.pop()
+        key = m.group(1) or m.group(2)
+        option = m.group(3).strip()
+        if option and "[" not in option and key not in RESERVED_OPTION_KEYS:
+            options.append({"key": key, "text": option})
+    return "\n".join(body_lines).strip(), options
+
+
+# Characters whose markup strip_markdown may still rewrite once more text arrives
+MARKUP_CHARS = set("*_`|#[]")
+
+
+def settled_display_text(raw):
+    """Display text for a reply that is still streaming in.
+
+    strip_markdown() of the raw text seen so far, cut back to what later
+    text can no longer change: whole lines, plus the line in progress only
+    if it has no markup in it yet, and nothing inside an unclosed code block.
+    """
+    cut = raw.rfind("\n") + 1
+    tail = raw[cut:]
+    settled = raw if not (MARKUP_CHARS & set(tail)) else raw[:cut]
+    if settled.count("```") % 2:
+        settled = settled[:settled.rfind("```")]
+    return strip_markdown(settled)
+
+
+def reply_payload(text):
+    """JSON reply for /chat and /action: full text plus body/options split out."""
+    body, options = split_options(text)
+    return {"response": text, "body": body, "options": options}
+
 # Clawdbot Gateway API (OpenAI-compatible endpoint)
 CLAWDBOT_API = os.getenv("CLAWDBOT_API", "http://127.0.0.1:18789/v1/chat/completions")
 CLAWDBOT_TOKEN = os.getenv("CLAWDBOT_TOKEN", "")
 
+# Gateway session the Qin conversation lives in. Prefetches each get a
+# throwaway session instead, so questions the user never asked stay out of it.
+QIN_SESSION = "qin"
+
+# The latest real exchange, given to prefetches as their context
+last_exchange = {"text": "", "reply": ""}
+last_exchange_lock = threading.Lock()
+
+
+def remember_exchange(text, reply):
+    with last_exchange_lock:
+        last_exchange["text"] = text
+        last_exchange["reply"] = reply
+
+FFMPEG = os.getenv("FFMPEG", "/opt/homebrew/bin/ffmpeg")
+
 # Whisper model (tiny for speed, base for accuracy)
 WHISPER_MODEL = os.getenv("WHISPER_MODEL", "small")
 
 PORT = 8081
 
+# Recording profiles the app may use (RecordingProfile ids), most preferred
+# first. The app records the first one its phone supports. Rank them with
+# benchmark_audio_profiles.py against this Mac's Whisper.
+AUDIO_PROFILES = os.getenv("QIN_AUDIO_PROFILES", "amr_nb,amr_wb,aac_lc_24k").split(",")
+
+# Content-Type → (temp file suffix, ffmpeg demuxer for decoding while the
+# upload is still arriving, or None if the container must arrive whole)
+AUDIO_FORMATS = {
+    "audio/amr": (".amr", "amr"),
+    "audio/amr-wb": (".awb", "amr"),  # ffmpeg's amr demuxer reads both headers
+    "audio/aac": (".aac", "aac"),     # ADTS
+    "audio/3gpp": (".3gp", None),
+}
+
+# JSON replies smaller than this aren't worth gzipping (header + CPU)
+GZIP_MIN_BYTES = 1024
+
+
+def audio_format(content_type):
+    return AUDIO_FORMATS.get(content_type.split(";")[0].strip().lower(), (".3gp", None))
+
 # ═══════════════════════════════════════════════════════════════════════════════
 # MENU CONFIGURATION
 # Fixed items (1-3) are hardcoded in the app.
@@ -91,17 +202,19 @@ MENU_CONFIG = {
 
 # Fallback menu if AI unavailable
 FALLBACK_MENU = {
-    "4": {"label": "📧 Emails", "type": "instant", "command": "Check my emails briefly. When showing an individual email, always end with numbered quick reply options: [1] Reply: 'Got it, thanks' [2] Reply: 'I'll handle this' [3] Reply: 'Let's schedule a call' [4] Custom reply (voice) [0] Back to inbox"},
-    "5": {"label": "📅 Calendar", "type": "instant", "command": "What's on my calendar today?"},
-    "6": {"label": "🌤️ Weather", "type": "instant", "command": "What's the weather?"},
+    "4": {"label": "📧 Emails", "type": "instant", "command": "Check my emails briefly. When showing an individual email, always end with numbered quick reply options: [1] Reply: 'Got it, thanks' [2] Reply: 'I'll handle this' [3] Reply: 'Let's schedule a call' [4] Custom reply (voice) [0] Back to inbox", "ttl": 300},
+    "5": {"label": "📅 Calendar", "type": "instant", "command": "What's on my calendar today?", "ttl": 600},
+    "6": {"label": "🌤️ Weather", "type": "instant", "command": "What's the weather?", "ttl": 1800},
     "7": {"label": "⏰ Remind", "type": "voice", "prompt": "What reminder?"},
     "8": {"label": "📝 Note", "type": "voice", "prompt": "What note?"},
-    "9": {"label": "🔍 Search", "type": "voice", "prompt": "Search what?"}
+    "9": {"label": "🔍 Search", "type": "voice", "prompt": "Search what?", "ttl": 600}
 }
 
 # Cache for dynamic menu (refresh every 5 minutes)
 dynamic_menu_cache = {"items": None, "timestamp": 0}
 MENU_CACHE_SECONDS = 300
+# "ttl" on a menu item = seconds the Qin may reuse its /action reply (0/absent = never).
+# Only for read-only lookups; anything that changes state or continues a thread stays 0.
 # ═══════════════════════════════════════════════════════════════════════════════
 
 
@@ -124,14 +237,16 @@ def generate_dynamic_menu():
     menu["4"] = {
         "label": "📰 News Brief",
         "type": "instant",
-        "command": "Give me a quick 30-second AI and tech news briefing. What's the most important thing happening today? Be concise."
+        "command": "Give me a quick 30-second AI and tech news briefing. What's the most important thing happening today? Be concise.",
+        "ttl": 900
     }
 
     # === Slot 5: Always BRAIN (most used feature) ===
     menu["5"] = {
         "label": "🧠 Brain Query",
         "type": "voice",
-        "prompt": "What to search?"
+        "prompt": "What to search?",
+        "ttl": 600
     }
 
     # === Slot 6: Context-aware from REAL data ===
@@ -150,7 +265,8 @@ def generate_dynamic_menu():
                 menu["6"] = {
                     "label": "📋 " + short[:13],
                     "type": "instant",
-                    "command": f"What's the status on: {decision}? Give me a quick update and next steps."
+                    "command": f"What's the status on: {decision}? Give me a quick update and next steps.",
+                    "ttl": 300
                 }
             elif threads:
                 thread = threads[0]
@@ -158,19 +274,22 @@ def generate_dynamic_menu():
                 menu["6"] = {
                     "label": "🔥 " + short[:13],
                     "type": "instant",
-                    "command": f"Quick update on: {thread}"
+                    "command": f"Quick update on: {thread}",
+                    "ttl": 300
                 }
     except Exception:
         pass
     if "6" not in menu:
         menu["6"] = {"label": "📧 Emails", "type": "instant",
-                      "command": "Check my emails briefly. Summarize unread - who, subject, urgency."}
+                      "command": "Check my emails briefly. Summarize unread - who, subject, urgency.",
+                      "ttl": 300}
 
     # === Slot 7: Weather (always useful, Beit Shemesh only) ===
     menu["7"] = {
         "label": "🌤️ Weather",
         "type": "instant",
-        "command": "What's the weather in Beit Shemesh today and tomorrow? Short answer."
+        "command": "What's the weather in Beit Shemesh today and tomorrow? Short answer.",
+        "ttl": 1800
     }
 
     # === Slot 8: Continue last thread ===
@@ -208,28 +327,32 @@ def generate_dynamic_menu():
         menu["9"] = {
             "label": "🎯 Focus Today",
             "type": "instant",
-            "command": "What should I focus on today? Check my memory files, open decisions, and active threads. Give me 3 priorities."
+            "command": "What should I focus on today? Check my memory files, open decisions, and active threads. Give me 3 priorities.",
+            "ttl": 600
         }
     elif hour < 14:
         # Midday: momentum check
         menu["9"] = {
             "label": "⚡ Momentum",
             "type": "instant",
-            "command": "What have I been focused on the last few days? Brief summary of projects, priorities, momentum."
+            "command": "What have I been focused on the last few days? Brief summary of projects, priorities, momentum.",
+            "ttl": 600
         }
     elif 14 <= hour < 18:
         # Afternoon: what's next
         menu["9"] = {
             "label": "📝 What's Next",
             "type": "instant",
-            "command": "What should I tackle next? Check open decisions and active threads."
+            "command": "What should I tackle next? Check open decisions and active threads.",
+            "ttl": 600
         }
     else:
         # Evening: review
         menu["9"] = {
             "label": "📊 Day Review",
             "type": "instant",
-            "command": "Quick review of what happened today. Check memory files and recent activity."
+            "command": "Quick review of what happened today. Check memory files and recent activity.",
+            "ttl": 600
         }
 
     dynamic_menu_cache["items"] = menu
@@ -238,13 +361,129 @@ def generate_dynamic_menu():
     return menu
 
 
+
+def action_command(action_key, voice_input):
+    """Menu item and the command to send for it, or (None, None) if the key is unknown."""
+    dynamic_items = generate_dynamic_menu()  # Uses cache
+    if action_key not in dynamic_items:
+        return None, None
+    item = dynamic_items[action_key]
+    return item, item_command(item, voice_input)
+
+
+def item_command(item, voice_input):
+    """The command a menu item ({"label", "type", "command"}) sends."""
+    if item.get("type") == "instant" and item.get("command"):
+        # Direct command
+        return item["command"]
+    # Voice input with context
+    if item.get("label") == "⏰ Remind":
+        return f"Set a reminder: {voice_input}"
+    if item.get("label") == "📝 Note":
+        return f"Add this to today's memory/notes: {voice_input}"
+    if item.get("label") == "🔍 Search":
+        return f"Search the web for: {voice_input}"
+    return voice_input
+
+
+def run_whisper(wav_path):
+    """Transcribe a file; returns (transcript, path of Whisper's .txt output to clean up)."""
+    print("🎤 Transcribing...")
+    result = subprocess.run(
+        ["/Users/mordechai/.local/bin/whisper", wav_path,
+         "--model", WHISPER_MODEL,
+         "--language", "en",
+         "--initial_prompt", "South African English speaker discussing AI, technology, monotropism, Clawdbot, Brain MCP, SHELET, cron jobs, Israel ecosystem, Torah, Chassidus, kosher phone, QinBot. Names: Mordechai, Shaul, Weinberger. Technical terms: parquet, embeddings, LanceDB, Claude, Anthropic, OpenRouter.",
+         "--output_format", "txt", "--output_dir", "/tmp"],
+        capture_output=True, text=True, timeout=120
+    )
+
+    txt_path = "/tmp/" + os.path.basename(wav_path).rsplit(".", 1)[0] + ".txt"
+
+    transcript = ""
+    if os.path.exists(txt_path):
+        with open(txt_path, "r") as f:
+            transcript = f.read().strip()
+
+    if not transcript and result.stdout:
+        transcript = result.stdout.strip()
+    if not transcript:
+        transcript = "(Could not transcribe)"
+    return transcript, txt_path
+
+
+def transcribe_bytes(audio, content_type):
+    """Transcribe a whole recording held in memory (outbox replay)."""
+    suffix, _ = audio_format(content_type)
+    with tempfile.NamedTemporaryFile(suffix=suffix, delete=False) as f:
+        f.write(audio)
+        audio_path = f.name
+    wav_path = os.path.splitext(audio_path)[0] + ".wav"
+    txt_path = None
+    try:
+        subprocess.run(
+            [FFMPEG, "-y", "-i", audio_path, "-ar", "16000", "-ac", "1", wav_path],
+            capture_output=True, timeout=30
+        )
+        if not os.path.exists(wav_path) or os.path.getsize(wav_path) == 0:
+            wav_path = audio_path
+        transcript, txt_path = run_whisper(wav_path)
+        return transcript
+    finally:
+        for path in [audio_path, wav_path, txt_path]:
+            try:
+                if path and os.path.exists(path):
+                    os.unlink(path)
+            except OSError:
+                pass
+
+
+# Outbox items already handled, by client id → result, so a replay that
+# lost its response (or a flapping connection) doesn't send a note twice.
+# Kept in a private state dir: it holds transcripts and replies, and the
+# script's own directory is reachable through the tunnel.
+STATE_DIR = os.path.expanduser("~/.qin")
+OUTBOX_SEEN_PATH = os.path.join(STATE_DIR, "outbox_seen.json")
+OUTBOX_SEEN_MAX = 500
+outbox_seen_lock = threading.Lock()
+
+
+def load_outbox_seen():
+    try:
+        with open(OUTBOX_SEEN_PATH) as f:
+            return OrderedDict(json.load(f))
+    except (OSError, ValueError):
+        return OrderedDict()
+
+
+outbox_seen = load_outbox_seen()
+
+
+def remember_outbox_result(item_id, result):
+    with outbox_seen_lock:
+        outbox_seen[item_id] = result
+        while len(outbox_seen) > OUTBOX_SEEN_MAX:
+            outbox_seen.popitem(last=False)
+        os.makedirs(STATE_DIR, mode=0o700, exist_ok=True)
+        tmp = OUTBOX_SEEN_PATH + ".tmp"
+        with open(os.open(tmp, os.O_WRONLY | os.O_CREAT | os.O_TRUNC, 0o600), "w") as f:
+            json.dump(list(outbox_seen.items()), f)
+        os.replace(tmp, OUTBOX_SEEN_PATH)
+
+
 class QinHandler(BaseHTTPRequestHandler):
+    # HTTP/1.1 so the Qin can keep one TLS connection open across key presses.
+    # Every response must then carry Content-Length (see send_json).
+    protocol_version = "HTTP/1.1"
+
     def log_message(self, format, *args):
         print(f"[Qin] {args[0]}")
 
     def do_GET(self):
+        route = self.path.split("?", 1)[0]
         if self.path == "/health":
-            self.send_json({"status": "ok", "service": "qin-clawdbot-bridge"})
+            self.send_json({"status": "ok", "service": "qin-clawdbot-bridge",
+                            "audio_profiles": AUDIO_PROFILES})
         elif self.path == "/menu":
             # Get dynamic menu items
             dynamic_items = generate_dynamic_menu()
@@ -253,7 +492,7 @@ class QinHandler(BaseHTTPRequestHandler):
                 "fixed": MENU_CONFIG["fixed"],
                 "items": dynamic_items
             }
-            self.send_json(menu)
+            self.send_json_etag(menu)
         elif self.path == "/menu/refresh":
             # Force refresh dynamic menu
             dynamic_menu_cache["timestamp"] = 0
@@ -263,10 +502,10 @@ class QinHandler(BaseHTTPRequestHandler):
                 "fixed": MENU_CONFIG["fixed"],
                 "items": dynamic_items
             }
-            self.send_json(menu)
+            self.send_json_etag(menu)
         elif self.path.startswith("/files/"):
             self.handle_file_serve()
-        elif self.path == "/files" or self.path == "/files/":
+        elif route == "/files" or route == "/files/":
             self.handle_file_list()
         else:
             self.send_error(404)
@@ -278,24 +517,55 @@ class QinHandler(BaseHTTPRequestHandler):
             self.handle_chat()
         elif self.path == "/action":
             self.handle_action()
+        elif self.path == "/batch":
+            self.handle_batch()
         else:
+            # Body was never read, so this connection can't be reused
+            self.close_connection = True
             self.send_error(404)
 
     def handle_file_list(self):
-        """List available files for download."""
-        files_dir = os.path.join(os.path.dirname(os.path.abspath(__file__)), "shiurim")
-        result = []
+        """List available files for download, sorted by path.
+
+        /files?limit=N[&cursor=C] returns one page plus "next_cursor" (the
+        last path on the page, null at the end); without limit, everything.
+        """
+        import urllib.parse
+        base_dir = os.path.dirname(os.path.abspath(__file__))
+        files_dir = os.path.join(base_dir, "shiurim")
+        found = []
         if os.path.isdir(files_dir):
             for root, dirs, files in os.walk(files_dir):
-                for f in sorted(files):
+                for f in files:
                     if f.endswith(('.mp3', '.m4a', '.wav', '.ogg', '.apk')):
-                        rel = os.path.relpath(os.path.join(root, f), os.path.dirname(os.path.abspath(__file__)))
-                        size_mb = os.path.getsize(os.path.join(root, f)) / (1024 * 1024)
-                        result.append({"name": f, "path": f"/files/{rel}", "size_mb": round(size_mb, 1)})
-        self.send_json({"files": result, "count": len(result)})
+                        found.append((os.path.relpath(os.path.join(root, f), base_dir), f))
+        found.sort()
+
+        query = urllib.parse.parse_qs(urllib.parse.urlsplit(self.path).query)
+        page, next_cursor = found, None
+        if "limit" in query:
+            limit = query["limit"][0]
+            limit = max(1, min(100, int(limit))) if limit.isdigit() else 50
+            cursor = query.get("cursor", [""])[0]
+            # Keyset on path: files added or removed meanwhile don't shift the next page
+            start = bisect.bisect_right(found, (cursor, "\uffff")) if cursor else 0
+            page = found[start:start + limit]
+            if start + limit < len(found):
+                next_cursor = page[-1][0]
+
+        result = []
+        for rel, f in page:
+            size = os.path.getsize(os.path.join(base_dir, rel))
+            size_mb = size / (1024 * 1024)
+            # "size" is exact bytes, for the Qin's completion check; size_mb is for display
+            result.append({"name": f, "path": f"/files/{rel}", "size": size, "size_mb": round(size_mb, 1)})
+        reply = {"files": result, "count": len(found)}
+        if "limit" in query:
+            reply["next_cursor"] = next_cursor
+        self.send_json(reply)
 
     def handle_file_serve(self):
-        """Serve a file from the shiurim/ directory."""
+        """Serve a file from the shiurim/ directory (supports Range / If-Range for resume)."""
         import urllib.parse
         # Strip /files/ prefix and decode URL encoding
         rel_path = urllib.parse.unquote(self.path[7:])  # Remove "/files/"
@@ -304,7 +574,12 @@ class QinHandler(BaseHTTPRequestHandler):
             self.send_error(403, "Forbidden")
             return
         base_dir = os.path.dirname(os.path.abspath(__file__))
-        file_path = os.path.join(base_dir, rel_path)
+        files_dir = os.path.realpath(os.path.join(base_dir, "shiurim"))
+        file_path = os.path.realpath(os.path.join(base_dir, rel_path))
+        # Only shiurim/ is public: the script's directory also holds the bridge itself
+        if not file_path.startswith(files_dir + os.sep):
+            self.send_error(403, "Forbidden")
+            return
         if not os.path.isfile(file_path):
             self.send_error(404, "File not found")
             return
@@ -315,124 +590,214 @@ class QinHandler(BaseHTTPRequestHandler):
             '.ogg': 'audio/ogg', '.apk': 'application/vnd.android.package-archive',
         }
         ctype = content_types.get(ext, 'application/octet-stream')
-        fsize = os.path.getsize(file_path)
-        self.send_response(200)
+        st = os.stat(file_path)
+        fsize = st.st_size
+        # Changes whenever the file is replaced, so a stale partial download restarts
+        etag = f'"{fsize:x}-{int(st.st_mtime):x}"'
+
+        start, end = 0, fsize - 1
+        status = 200
+        range_header = self.headers.get("Range")
+        if_range = self.headers.get("If-Range")
+        if range_header and (if_range is None or if_range == etag):
+            m = re.match(r"bytes=(\d*)-(\d*)$", range_header.strip())
+            if m and (m.group(1) or m.group(2)):
+                if m.group(1):
+                    start = int(m.group(1))
+                    if m.group(2):
+                        end = min(int(m.group(2)), fsize - 1)
+                else:
+                    start = max(0, fsize - int(m.group(2)))  # Suffix range: last N bytes
+                if start >= fsize or start > end:
+                    self.send_response(416)
+                    self.send_header("Content-Range", f"bytes */{fsize}")
+                    self.send_header("Content-Length", "0")
+                    self.end_headers()
+                    return
+                status = 206
+
+        length = end - start + 1
+        self.send_response(status)
         self.send_header("Content-Type", ctype)
-        self.send_header("Content-Length", str(fsize))
+        self.send_header("Content-Length", str(length))
+        self.send_header("Accept-Ranges", "bytes")
+        self.send_header("ETag", etag)
+        if status == 206:
+            self.send_header("Content-Range", f"bytes {start}-{end}/{fsize}")
         self.send_header("Content-Disposition", f'attachment; filename="{os.path.basename(file_path)}"')
         self.end_headers()
         with open(file_path, "rb") as f:
-            shutil.copyfileobj(f, self.wfile)
+            f.seek(start)
+            remaining = length
+            while remaining > 0:
+                chunk = f.read(min(65536, remaining))
+                if not chunk:
+                    break
+                self.wfile.write(chunk)
+                remaining -= len(chunk)
 
     def handle_action(self):
         """Handle a menu action (instant or with voice input)."""
         try:
-            content_length = int(self.headers.get("Content-Length", 0))
-            body = self.rfile.read(content_length).decode("utf-8")
-            data = json.loads(body)
+            data = json.loads(self.read_body())
             
             action_key = data.get("action")
             voice_input = data.get("voice_input", "")
             
-            # Get dynamic menu items (uses cache)
-            dynamic_items = generate_dynamic_menu()
-            
-            if action_key not in dynamic_items:
+            item, command = action_command(action_key, voice_input)
+            if item is None:
                 self.send_json({"error": f"Unknown action: {action_key}"}, status=400)
                 return
             
-            item = dynamic_items[action_key]
-            
-            if item["type"] == "instant":
-                # Direct command
-                command = item["command"]
-            else:
-                # Voice input with context
-                prompt = item.get("prompt")
-                if item["label"] == "🎤 Chat":
-                    command = voice_input
-                elif item["label"] == "⏰ Remind":
-                    command = f"Set a reminder: {voice_input}"
-                elif item["label"] == "📝 Note":
-                    command = f"Add this to today's memory/notes: {voice_input}"
-                elif item["label"] == "🔍 Search":
-                    command = f"Search the web for: {voice_input}"
-                else:
-                    command = voice_input
-            
             print(f"🎯 Action {action_key}: {command[:50]}...")
             response = self.forward_to_clawdbot(command)
             response = strip_markdown(response)  # Clean for Qin display
+            remember_exchange(command, response)
             print(f"🤖 Response: {response[:100]}...")
             
-            self.send_json({"response": response})
+            payload = reply_payload(response)
+            payload["ttl"] = item.get("ttl", 0)
+            self.send_json(payload)
             
         except Exception as e:
             print(f"❌ Action error: {e}")
             self.send_json({"error": str(e)}, status=500)
 
+    def handle_batch(self):
+        """Replay queued outbox items in the order the phone saved them.
+
+        Body: {"items": [{"id", "kind": "action"|"chat"|"audio", ...}]}
+          action: "action", "voice_input"   chat: "text"
+          audio:  "audio" (base64), "content_type", optional "action"
+        Actions may carry "menu_item" ({"label", "type", "command"}), the entry
+        the phone showed when it was pressed; it is run instead of whatever
+        the key holds on the current menu.
+        Each result is {"id", "status": "ok"|"duplicate"|"error", ...reply}.
+        An item seen before returns its earlier result as "duplicate".
+        """
+        try:
+            data = json.loads(self.read_body())
+            results = []
+            for item in data.get("items", []):
+                item_id = str(item.get("id", ""))
+                with outbox_seen_lock:
+                    seen = outbox_seen.get(item_id)
+                if seen is not None:
+                    results.append(dict(seen, id=item_id, status="duplicate"))
+                    continue
+                try:
+                    result = self.run_outbox_item(item)
+                    result["status"] = "ok"
+                    if item_id:
+                        remember_outbox_result(item_id, result)
+                except Exception as e:
+                    print(f"❌ Outbox item {item_id}: {e}")
+                    result = {"status": "error", "error": str(e)}
+                results.append(dict(result, id=item_id))
+            print(f"📤 Outbox replay: {len(results)} item(s)")
+            self.send_json({"results": results})
+        except Exception as e:
+            print(f"❌ Batch error: {e}")
+            self.send_json({"error": str(e)}, status=500)
+
+    def run_outbox_item(self, item):
+        kind = item.get("kind")
+        voice_input = item.get("voice_input", "")
+        result = {}
+        if kind == "audio":
+            audio = base64.b64decode(item.get("audio", ""))
+            voice_input = transcribe_bytes(audio, item.get("content_type", "audio/3gpp"))
+            result["transcript"] = voice_input
+            kind = "action" if item.get("action") else "chat"
+            item = dict(item, text=voice_input)
+        if kind == "action":
+            if isinstance(item.get("menu_item"), dict):
+                command = item_command(item["menu_item"], voice_input)
+            else:
+                menu_item, command = action_command(item.get("action"), voice_input)
+                if menu_item is None:
+                    raise ValueError(f"Unknown action: {item.get('action')}")
+        elif kind == "chat":
+            command = item.get("text", "")
+        else:
+            raise ValueError(f"Unknown kind: {kind}")
+        print(f"📤 Replay {kind}: {command[:50]}...")
+        result.update(reply_payload(strip_markdown(self.forward_to_clawdbot(command))))
+        return result
+
     def handle_audio(self):
         """Receive audio, transcribe with Whisper, optionally send to Clawdbot."""
         try:
             content_length = int(self.headers.get("Content-Length", 0))
-            if content_length == 0:
+            if content_length == 0 and not self.is_chunked():
                 self.send_json({"error": "No audio data"}, status=400)
                 return
 
             transcribe_only = self.headers.get("X-Transcribe-Only", "").lower() == "true"
-            audio_data = self.rfile.read(content_length)
-            print(f"📱 Received {len(audio_data)} bytes of audio")
+            content_type = self.headers.get("Content-Type", "audio/3gpp")
+            suffix, demuxer = audio_format(content_type)
 
-            with tempfile.NamedTemporaryFile(suffix=".3gp", delete=False) as f:
-                f.write(audio_data)
+            with tempfile.NamedTemporaryFile(suffix=suffix, delete=False) as f:
                 audio_path = f.name
 
             txt_path = None
-            wav_path = None
+            wav_path = os.path.splitext(audio_path)[0] + ".wav"
+            ffmpeg = None
             
             try:
-                wav_path = audio_path.replace(".3gp", ".wav")
-                subprocess.run(
-                    ["/opt/homebrew/bin/ffmpeg", "-y", "-i", audio_path, "-ar", "16000", "-ac", "1", wav_path],
-                    capture_output=True, timeout=30
-                )
+                # Raw AMR and ADTS are plain frame streams with no container to
+                # finalize, so ffmpeg can decode them while the phone is still
+                # recording and uploading. 3GP keeps its index at the end and
+                # must arrive whole.
+                if demuxer:
+                    ffmpeg = subprocess.Popen(
+                        [FFMPEG, "-y", "-f", demuxer, "-i", "pipe:0", "-ar", "16000", "-ac", "1", wav_path],
+                        stdin=subprocess.PIPE, stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL
+                    )
+
+                received = 0
+                with open(audio_path, "wb") as f:
+                    for chunk in self.iter_body():
+                        f.write(chunk)
+                        received += len(chunk)
+                        if ffmpeg:
+                            try:
+                                ffmpeg.stdin.write(chunk)
+                            except BrokenPipeError:
+                                ffmpeg = None
+                print(f"📱 Received {received} bytes of audio ({content_type})")
+                received_at = time.time()  # Decode + Whisper from here, reported for the app's latency trace
+
+                if ffmpeg:
+                    ffmpeg.stdin.close()
+                    ffmpeg.wait(timeout=30)
+                else:
+                    subprocess.run(
+                        [FFMPEG, "-y", "-i", audio_path, "-ar", "16000", "-ac", "1", wav_path],
+                        capture_output=True, timeout=30
+                    )
                 
                 if not os.path.exists(wav_path) or os.path.getsize(wav_path) == 0:
                     wav_path = audio_path
 
-                print("🎤 Transcribing...")
-                result = subprocess.run(
-                    ["/Users/mordechai/.local/bin/whisper", wav_path,
-                     "--model", WHISPER_MODEL,
-                     "--language", "en",
-                     "--initial_prompt", "South African English speaker discussing AI, technology, monotropism, Clawdbot, Brain MCP, SHELET, cron jobs, Israel ecosystem, Torah, Chassidus, kosher phone, QinBot. Names: Mordechai, Shaul, Weinberger. Technical terms: parquet, embeddings, LanceDB, Claude, Anthropic, OpenRouter.",
-                     "--output_format", "txt", "--output_dir", "/tmp"],
-                    capture_output=True, text=True, timeout=120
-                )
-
-                txt_path = "/tmp/" + os.path.basename(wav_path).rsplit(".", 1)[0] + ".txt"
-                
-                transcript = ""
-                if os.path.exists(txt_path):
-                    with open(txt_path, "r") as f:
-                        transcript = f.read().strip()
-
-                if not transcript and result.stdout:
-                    transcript = result.stdout.strip()
-                if not transcript:
-                    transcript = "(Could not transcribe)"
+                transcript, txt_path = run_whisper(wav_path)
 
-                print(f"📝 Transcript: {transcript}")
+                transcribe_ms = int((time.time() - received_at) * 1000)
+                print(f"📝 Transcript ({transcribe_ms}ms): {transcript}")
 
                 if transcribe_only:
-                    self.send_json({"transcript": transcript})
+                    self.send_json({"transcript": transcript, "transcribe_ms": transcribe_ms})
                     return
 
                 response_text = self.forward_to_clawdbot(transcript)
                 response_text = strip_markdown(response_text)  # Clean for Qin display
-                self.send_json({"transcript": transcript, "response": response_text})
+                remember_exchange(transcript, response_text)
+                self.send_json({"transcript": transcript, "response": response_text,
+                                "transcribe_ms": transcribe_ms})
 
             finally:
+                if ffmpeg and ffmpeg.poll() is None:
+                    ffmpeg.kill()
                 for path in [audio_path, wav_path, txt_path]:
                     try:
                         if path and os.path.exists(path):
@@ -446,55 +811,147 @@ class QinHandler(BaseHTTPRequestHandler):
             traceback.print_exc()
             self.send_json({"error": str(e)}, status=500)
 
+    def is_chunked(self):
+        return "chunked" in self.headers.get("Transfer-Encoding", "").lower()
+
+    def iter_body(self, chunk_size=8192):
+        """Yield the request body as it arrives (Content-Length or chunked)."""
+        if self.is_chunked():
+            while True:
+                size = int(self.rfile.readline().split(b";")[0].strip(), 16)
+                if size == 0:
+                    # Skip any trailers up to the terminating blank line
+                    while self.rfile.readline() not in (b"\r\n", b"\n", b""):
+                        pass
+                    return
+                yield self.rfile.read(size)
+                self.rfile.readline()  # CRLF after each chunk
+        else:
+            remaining = int(self.headers.get("Content-Length", 0))
+            while remaining > 0:
+                data = self.rfile.read(min(chunk_size, remaining))
+                if not data:
+                    return
+                remaining -= len(data)
+                yield data
+
     def handle_chat(self):
         """Receive text, forward to Clawdbot."""
         try:
-            content_length = int(self.headers.get("Content-Length", 0))
-            body = self.rfile.read(content_length).decode("utf-8")
+            body = self.read_body()
 
             try:
                 data = json.loads(body)
                 user_text = data.get("text", body)
             except json.JSONDecodeError:
+                data = None  # Plain-text body: no commit/prefetch/stream options
                 user_text = body.strip()
 
             if not user_text:
                 self.send_json({"error": "No text provided"}, status=400)
                 return
 
+            options = data if isinstance(data, dict) else {}
+            if options.get("commit"):
+                # The user picked a prefetched answer: record the turn in the real session
+                print(f"🔮 Commit: {user_text}")
+                self.commit_prefetch(user_text, options.get("response", ""))
+                self.send_json({"ok": True})
+                return
+            if options.get("prefetch"):
+                # Speculative request from the app's prefetch engine
+                print(f"🔮 Prefetch: {user_text}")
+                response_text = self.forward_to_clawdbot(user_text, read_only=True)
+                self.send_json(reply_payload(strip_markdown(response_text)))
+                return
+
             print(f"📱 Chat: {user_text}")
+            if options.get("stream"):
+                self.stream_chat(user_text)
+                return
             response_text = self.forward_to_clawdbot(user_text)
             response_text = strip_markdown(response_text)  # Clean for Qin display
-            self.send_json({"response": response_text})
+            remember_exchange(user_text, response_text)
+            self.send_json(reply_payload(response_text))
 
         except Exception as e:
             print(f"❌ Chat error: {e}")
             self.send_json({"error": str(e)}, status=500)
 
-    def forward_to_clawdbot(self, text):
-        """Send text to Clawdbot and get response via OpenAI-compatible API."""
-        try:
-            # Inject instruction for dynamic menus - PREEMPTIVE is the goal
-            # Read active context for smarter guessing
-            context_hint = ""
-            try:
-                sync_path = os.path.expanduser("~/clawd/memory/brain-sync.json")
-                if os.path.exists(sync_path):
-                    with open(sync_path) as f:
-                        sync = json.loads(f.read())
-                    threads = sync.get("activeThreads", [])[:3]
-                    decisions = sync.get("openDecisions", [])[:3]
-                    focus = sync.get("weekFocus", "")
-                    if threads or decisions:
-                        context_hint = f"\nUser's active threads: {'; '.join(threads[:3])}"
-                        if decisions:
-                            context_hint += f"\nOpen decisions: {'; '.join(decisions[:3])}"
-                        if focus:
-                            context_hint += f"\nWeek focus: {focus}"
-            except Exception:
-                pass
+    def stream_chat(self, user_text):
+        """Stream a chat reply as Server-Sent Events over chunked transfer.
 
-            enhanced_text = text + f"""
+        Each event is `data: {"delta": "..."}`, the next piece of the
+        markdown-stripped display text, so what the app shows and speaks while
+        streaming is a prefix of the final body. Text is held back while markup
+        could still change it (see settled_display_text). The last event is
+        `data: {"done": true, "response": "...", "body": ..., "options": [...]}`
+        carrying the full markdown-stripped reply, which the app uses for the final render.
+        """
+        self.send_response(200)
+        self.send_header("Content-Type", "text/event-stream; charset=utf-8")
+        self.send_header("Cache-Control", "no-cache")
+        self.send_header("Transfer-Encoding", "chunked")
+        self.end_headers()
+
+        parts = []
+        sent = ""
+        try:
+            for delta in self.stream_from_clawdbot(user_text):
+                parts.append(delta)
+                shown = settled_display_text("".join(parts))
+                # Only ever extend what was sent; a rewrite waits for the final event
+                if len(shown) > len(sent) and shown.startswith(sent):
+                    self.write_event({"delta": shown[len(sent):]})
+                    sent = shown
+            response_text = strip_markdown("".join(parts))
+        except Exception as e:
+            print(f"❌ Stream error: {e}")
+            response_text = strip_markdown("".join(parts)) or f"Error: {e}"
+        remember_exchange(user_text, response_text)
+        done = reply_payload(response_text)
+        done["done"] = True
+        self.write_event(done)
+        self.write_chunk(b"")
+
+    def write_event(self, data):
+        self.write_chunk(("data: " + json.dumps(data) + "\n\n").encode("utf-8"))
+
+    def write_chunk(self, data):
+        """Write one HTTP/1.1 chunk; an empty chunk terminates the body."""
+        self.wfile.write(f"{len(data):X}\r\n".encode("ascii") + data + b"\r\n")
+        self.wfile.flush()
+
+    def commit_prefetch(self, text, response):
+        """Tell the Qin session about a turn that was answered in a prefetch session."""
+        note = (f"[QIN: the user chose \"{text}\" and was shown this answer, prepared in advance:\n"
+                f"{response}\nTreat it as your reply to them. Answer only: OK]")
+        self.forward_to_clawdbot(note)
+        remember_exchange(text, response)
+
+    def build_clawdbot_request(self, text, stream=False, read_only=False):
+        """Wrap the user text with the Qin instructions and build the API request."""
+        # Inject instruction for dynamic menus - PREEMPTIVE is the goal
+        # Read active context for smarter guessing
+        context_hint = ""
+        try:
+            sync_path = os.path.expanduser("~/clawd/memory/brain-sync.json")
+            if os.path.exists(sync_path):
+                with open(sync_path) as f:
+                    sync = json.loads(f.read())
+                threads = sync.get("activeThreads", [])[:3]
+                decisions = sync.get("openDecisions", [])[:3]
+                focus = sync.get("weekFocus", "")
+                if threads or decisions:
+                    context_hint = f"\nUser's active threads: {'; '.join(threads[:3])}"
+                    if decisions:
+                        context_hint += f"\nOpen decisions: {'; '.join(decisions[:3])}"
+                    if focus:
+                        context_hint += f"\nWeek focus: {focus}"
+        except Exception:
+            pass
+
+        enhanced_text = text + f"""
 
 [QIN INTERFACE — 20-QUESTIONS MODE:
 User is on a tiny kosher phone. Can ONLY press numbers 1-7 or 0. NO TYPING.
@@ -514,32 +971,85 @@ Rules:
 Context: Mordechai, South African accent, in Israel. Direct, no fluff.
 Primary uses: deep thinking, brainstorming, news, Brain MCP, connecting ideas.
 {context_hint}]"""
-            
-            # OpenAI-compatible format
-            payload = json.dumps({
-                "model": "clawdbot:main",
-                "messages": [{"role": "user", "content": enhanced_text}],
-                "user": "qin"  # For session persistence
-            }).encode("utf-8")
-
-            headers = {
-                "Content-Type": "application/json",
-                "x-clawdbot-agent-id": "main"
-            }
-            if CLAWDBOT_TOKEN:
-                headers["Authorization"] = f"Bearer {CLAWDBOT_TOKEN}"
+        session = QIN_SESSION
+        if read_only:
+            # Own session: the real one only learns of this if the user picks it
+            session = f"{QIN_SESSION}-prefetch-{uuid.uuid4().hex[:12]}"
+            with last_exchange_lock:
+                previous = dict(last_exchange)
+            if previous["text"]:
+                enhanced_text += f"""
+
+[CONVERSATION SO FAR: the user said "{previous['text']}" and you answered:
+{previous['reply']}]"""
+            enhanced_text += """
+
+[SPECULATIVE PREFETCH: the user has not chosen this yet. Answer it, but do NOT
+take any action with side effects (no sending, replying, deleting, scheduling,
+reminders or notes). If it needs one, say what you would do and ask to confirm.]"""
+
+        # OpenAI-compatible format
+        body = {
+            "model": "clawdbot:main",
+            "messages": [{"role": "user", "content": enhanced_text}],
+            "user": session  # For session persistence
+        }
+        if stream:
+            body["stream"] = True
+        payload = json.dumps(body).encode("utf-8")
+
+        headers = {
+            "Content-Type": "application/json",
+            "x-clawdbot-agent-id": "main"
+        }
+        if CLAWDBOT_TOKEN:
+            headers["Authorization"] = f"Bearer {CLAWDBOT_TOKEN}"
+
+        return urllib.request.Request(CLAWDBOT_API, data=payload, headers=headers, method="POST")
 
-            req = urllib.request.Request(CLAWDBOT_API, data=payload, headers=headers, method="POST")
+    def stream_from_clawdbot(self, text):
+        """Yield reply text deltas as Clawdbot generates them."""
+        req = self.build_clawdbot_request(text, stream=True)
+        try:
+            resp = urllib.request.urlopen(req, timeout=120)
+        except urllib.error.URLError:
+            yield self.fallback_cli(text)
+            return
+        with resp:
+            if "text/event-stream" not in resp.headers.get("Content-Type", ""):
+                # Gateway ignored stream=true; treat it as one big delta
+                result = json.loads(resp.read().decode("utf-8"))
+                yield self.extract_content(result)
+                return
+            for raw in resp:
+                line = raw.decode("utf-8").strip()
+                if not line.startswith("data:"):
+                    continue
+                chunk = line[5:].strip()
+                if chunk == "[DONE]":
+                    break
+                choices = json.loads(chunk).get("choices") or [{}]
+                delta = choices[0].get("delta", {}).get("content")
+                if delta:
+                    yield delta
+
+    def extract_content(self, result):
+        # OpenAI format: response is in choices[0].message.content
+        if "choices" in result and len(result["choices"]) > 0:
+            return result["choices"][0]["message"]["content"]
+        return result.get("response", result.get("message", str(result)))
+
+    def forward_to_clawdbot(self, text, read_only=False):
+        """Send text to Clawdbot and get response via OpenAI-compatible API."""
+        try:
+            req = self.build_clawdbot_request(text, read_only=read_only)
 
             with urllib.request.urlopen(req, timeout=120) as resp:
                 result = json.loads(resp.read().decode("utf-8"))
-                # OpenAI format: response is in choices[0].message.content
-                if "choices" in result and len(result["choices"]) > 0:
-                    return result["choices"][0]["message"]["content"]
-                return result.get("response", result.get("message", str(result)))
+                return self.extract_content(result)
 
         except urllib.error.URLError:
-            return self.fallback_cli(text)
+            return "Error: Clawdbot unreachable" if read_only else self.fallback_cli(text)
         except Exception as e:
             return f"Error: {e}"
 
@@ -547,19 +1057,53 @@ Primary uses: deep thinking, brainstorming, news, Brain MCP, connecting ideas.
         """Fallback: use clawdbot CLI."""
         try:
             result = subprocess.run(
-                ["/opt/homebrew/bin/clawdbot", "agent", "--message", text, "--session-id", "qin"],
+                ["/opt/homebrew/bin/clawdbot", "agent", "--message", text, "--session-id", QIN_SESSION],
                 capture_output=True, text=True, timeout=120
             )
             return result.stdout.strip() or result.stderr.strip() or "No response"
         except Exception as e:
             return f"CLI error: {e}"
 
+    def read_body(self):
+        """The JSON request body as text, gunzipped if the app compressed it."""
+        content_length = int(self.headers.get("Content-Length", 0))
+        body = self.rfile.read(content_length)
+        if self.headers.get("Content-Encoding", "").lower() == "gzip":
+            body = gzip.decompress(body)
+        return body.decode("utf-8")
+
     def send_json(self, data, status=200):
+        body = json.dumps(data).encode("utf-8")
         self.send_response(status)
         self.send_header("Content-Type", "application/json")
+        self.send_body(body)
+
+    def send_body(self, body):
+        """Finish the headers and write body, gzipped if the client takes it and it's worth it."""
+        if len(body) >= GZIP_MIN_BYTES and "gzip" in self.headers.get("Accept-Encoding", "").lower():
+            body = gzip.compress(body, compresslevel=6)
+            self.send_header("Content-Encoding", "gzip")
+        self.send_header("Content-Length", str(len(body)))
+        self.send_header("Vary", "Accept-Encoding")
+        self.send_header("Accept-Encoding", "gzip")  # Request bodies may be gzipped too
         self.send_header("Access-Control-Allow-Origin", "*")
         self.end_headers()
-        self.wfile.write(json.dumps(data).encode("utf-8"))
+        self.wfile.write(body)
+
+    def send_json_etag(self, data):
+        """send_json, but answer 304 if the client already has this exact payload."""
+        body = json.dumps(data, sort_keys=True).encode("utf-8")
+        etag = '"' + hashlib.sha1(body).hexdigest()[:16] + '"'
+        if self.headers.get("If-None-Match") == etag:
+            self.send_response(304)
+            self.send_header("ETag", etag)
+            self.send_header("Content-Length", "0")
+            self.end_headers()
+            return
+        self.send_response(200)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("ETag", etag)
+        self.send_body(body)
 
 
 def get_local_ip():
@@ -580,7 +1124,8 @@ def main():
         print("⚠️  ffmpeg not found. Run: brew install ffmpeg")
 
     ip = get_local_ip()
-    server = HTTPServer(("0.0.0.0", PORT), QinHandler)
+    # Threaded: with keep-alive, one idle phone connection must not block the rest
+    server = ThreadingHTTPServer(("0.0.0.0", PORT), QinHandler)
 
     menu_preview = "\n".join([f"  {k}: {v['label']}" for k, v in MENU_CONFIG["items"].items()])
 
@@ -593,6 +1138,7 @@ def main():
 ║    POST http://{ip}:{PORT}/action   - Execute action
 ║    POST http://{ip}:{PORT}/audio    - Voice → Whisper → Chat
 ║    POST http://{ip}:{PORT}/chat     - Text → Chat
+║    POST http://{ip}:{PORT}/batch    - Offline outbox replay
 ╠═══════════════════════════════════════════════════════════════╣
 ║  Menu:
 {menu_preview}